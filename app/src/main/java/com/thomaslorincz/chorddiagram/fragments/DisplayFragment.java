@@ -32,7 +32,8 @@ public class DisplayFragment extends Fragment {
         final View v = inflater.inflate(R.layout.fragment_display, container, false);
         chordDiagram = v.findViewById(R.id.chord_diagram);
 
-        // Test data.
+        // Test data. Batching the changes lays the diagram out once instead of once per call.
+        chordDiagram.beginUpdate();
         chordDiagram.addItem("1", Color.BLUE);
         chordDiagram.addItem("2", Color.RED);
         chordDiagram.addItem("3", Color.GREEN);
@@ -55,6 +56,7 @@ public class DisplayFragment extends Fragment {
         chordDiagram.addLink("4", "5"); // Duplicates are not added to data set.
         chordDiagram.addLink("4", "5");
         chordDiagram.addLink("4", "5");
+        chordDiagram.endUpdate();
 
         return v;
     }
@@ -0,0 +1,87 @@
+package com.thomaslorincz.chord_diagram.benchmark;
+
+import com.thomaslorincz.chord_diagram.core.BezierTessellator;
+import com.thomaslorincz.chord_diagram.core.ChordGrid;
+import com.thomaslorincz.chord_diagram.core.GraphStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * Measures hit testing the chords of a laid out data set: indexing their tessellated paths in
+ * a grid, as each layout does, and finding the chord under a tap. Taps cycle through a fixed
+ * set of random points.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+public class ChordGridBenchmark {
+    private static final float SIZE = 1000.0f;
+    private static final float TAP_TOLERANCE = 8.0f;
+    private static final int NUM_TAPS = 1024; // A power of 2
+
+    @Param({"10", "100", "1000", "10000", "100000"})
+    public int numLinks;
+
+    private float[][] mPoints;
+    private int[] mNumSegments;
+    private ChordGrid mGrid;
+    private final float[] mTapXs = new float[NUM_TAPS];
+    private final float[] mTapYs = new float[NUM_TAPS];
+    private int mNextTap;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        GraphStore graph = SyntheticGraphs.build(numLinks);
+        graph.assignItemAngles();
+        graph.assignLinkAngles(true);
+        float centre = (SIZE / 2);
+        mPoints = new float[numLinks][];
+        mNumSegments = new int[numLinks];
+        for (int slot = 0; slot < numLinks; slot++) {
+            float x0 = getX(centre, graph.getEndpointAngle1(slot));
+            float y0 = getY(centre, graph.getEndpointAngle1(slot));
+            float x2 = getX(centre, graph.getEndpointAngle2(slot));
+            float y2 = getY(centre, graph.getEndpointAngle2(slot));
+            int segments = BezierTessellator.segmentCount(
+                    x0, y0, centre, centre, x2, y2, BezierTessellator.DEFAULT_TOLERANCE);
+            mPoints[slot] = new float[2 * (segments + 1)];
+            BezierTessellator.tessellate(x0, y0, centre, centre, x2, y2, segments, mPoints[slot], 0);
+            mNumSegments[slot] = segments;
+        }
+        mGrid = buildGrid();
+
+        Random random = new Random(SyntheticGraphs.SEED);
+        for (int i = 0; i < NUM_TAPS; i++) {
+            mTapXs[i] = (random.nextFloat() * SIZE);
+            mTapYs[i] = (random.nextFloat() * SIZE);
+        }
+    }
+
+    @Benchmark
+    public ChordGrid buildGrid() {
+        return new ChordGrid(mPoints, mNumSegments, numLinks, 0, 0, SIZE);
+    }
+
+    @Benchmark
+    public int findLink() {
+        int tap = mNextTap;
+        mNextTap = ((tap + 1) & (NUM_TAPS - 1));
+        return mGrid.findLink(mTapXs[tap], mTapYs[tap], TAP_TOLERANCE);
+    }
+
+    private static float getX(float centre, float theta) {
+        return (float) ((centre * Math.cos(Math.toRadians(theta))) + centre);
+    }
+
+    private static float getY(float centre, float theta) {
+        return (float) ((centre * Math.sin(Math.toRadians(theta))) + centre);
+    }
+}
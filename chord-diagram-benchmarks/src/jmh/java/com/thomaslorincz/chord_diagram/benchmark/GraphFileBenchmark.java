@@ -0,0 +1,57 @@
+package com.thomaslorincz.chord_diagram.benchmark;
+
+import com.thomaslorincz.chord_diagram.core.GraphFile;
+import com.thomaslorincz.chord_diagram.core.GraphStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Measures opening a laid out data set from a graph file, up to a million links, and reading
+ * one label from it. The file is written once, so after the first iteration it is read from
+ * the page cache.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+public class GraphFileBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    public int numLinks;
+
+    private File mFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        GraphStore graph = SyntheticGraphs.build(numLinks);
+        graph.assignItemAngles();
+        graph.assignLinkAngles(true);
+        graph.clearChanges();
+        mFile = File.createTempFile("graph", ".chrd");
+        GraphFile.write(graph, mFile);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    @Benchmark
+    public GraphStore map() throws IOException {
+        return GraphFile.map(mFile);
+    }
+
+    @Benchmark
+    public String mapAndGetLabel() throws IOException {
+        GraphStore graph = GraphFile.map(mFile);
+        return graph.getLabel(graph.getNumItems() - 1);
+    }
+}
@@ -0,0 +1,59 @@
+package com.thomaslorincz.chord_diagram.benchmark;
+
+import com.thomaslorincz.chord_diagram.core.EdgeListParser;
+import com.thomaslorincz.chord_diagram.core.GraphStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+/**
+ * Measures loading a whole data set: parsing an edge list held in memory, and adding the same
+ * items and links to a store directly.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+public class IngestionBenchmark {
+    @Param({"10", "100", "1000", "10000", "100000"})
+    public int numLinks;
+
+    private byte[] mEdgeList;
+    private String[] mLabels;
+    private int[][] mPairs;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mEdgeList = SyntheticGraphs.buildEdgeList(numLinks);
+        mLabels = new String[SyntheticGraphs.numItemsFor(numLinks)];
+        for (int i = 0; i < mLabels.length; i++) {
+            mLabels[i] = SyntheticGraphs.label(i);
+        }
+        mPairs = SyntheticGraphs.randomPairs(numLinks, SyntheticGraphs.SEED);
+    }
+
+    @Benchmark
+    public GraphStore parseEdgeList() throws IOException {
+        EdgeListParser parser = new EdgeListParser(',', true, SyntheticGraphs.PALETTE);
+        return parser.parse(new ByteArrayInputStream(mEdgeList), null);
+    }
+
+    @Benchmark
+    public GraphStore addLinks() {
+        GraphStore graph = new GraphStore();
+        for (int i = 0; i < mLabels.length; i++) {
+            graph.addItem(mLabels[i], SyntheticGraphs.PALETTE[i % SyntheticGraphs.PALETTE.length]);
+        }
+        for (int i = 0; i < numLinks; i++) {
+            graph.addLink(mPairs[0][i], mPairs[1][i]);
+        }
+        return graph;
+    }
+}
@@ -0,0 +1,43 @@
+package com.thomaslorincz.chord_diagram.benchmark;
+
+import com.thomaslorincz.chord_diagram.core.GraphStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures assigning the angles of the items and of the links where they meet their items,
+ * as a full layout of a new or reordered data set does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+public class LayoutBenchmark {
+    @Param({"10", "100", "1000", "10000", "100000"})
+    public int numLinks;
+
+    private GraphStore mGraph;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mGraph = SyntheticGraphs.build(numLinks);
+        mGraph.assignItemAngles();
+    }
+
+    @Benchmark
+    public float assignItemAngles() {
+        mGraph.assignItemAngles();
+        return mGraph.getEndAngle(0);
+    }
+
+    @Benchmark
+    public float assignLinkAngles() {
+        mGraph.assignLinkAngles(true);
+        return mGraph.getEndpointAngle1(0);
+    }
+}
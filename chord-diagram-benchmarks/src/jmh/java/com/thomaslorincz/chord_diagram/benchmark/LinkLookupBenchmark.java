@@ -0,0 +1,114 @@
+package com.thomaslorincz.chord_diagram.benchmark;
+
+import com.thomaslorincz.chord_diagram.core.GraphStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Measures finding the link between a pair of items, as addLink and deleteLink do before
+ * changing anything. Queries cycle through a fixed set of pairs that are all linked, or all
+ * unlinked, in a random order.
+ *
+ * The summedHash benchmarks run the same queries against the scheme the store replaced, a
+ * HashMap keyed by the sum of the hash codes of the two labels. That scheme also dropped any
+ * link whose key collided with an earlier one, so its map can hold fewer links.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+public class LinkLookupBenchmark {
+    private static final int NUM_QUERIES = 1024; // A power of 2
+
+    @Param({"10", "100", "1000", "10000", "100000"})
+    public int numLinks;
+
+    private GraphStore mGraph;
+    private final int[] mHitItems1 = new int[NUM_QUERIES];
+    private final int[] mHitItems2 = new int[NUM_QUERIES];
+    private final int[] mMissItems1 = new int[NUM_QUERIES];
+    private final int[] mMissItems2 = new int[NUM_QUERIES];
+    private int mNextQuery;
+
+    private Map<Integer, Integer> mSummedHashes;
+    private final String[] mHitLabels1 = new String[NUM_QUERIES];
+    private final String[] mHitLabels2 = new String[NUM_QUERIES];
+    private final String[] mMissLabels1 = new String[NUM_QUERIES];
+    private final String[] mMissLabels2 = new String[NUM_QUERIES];
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mGraph = SyntheticGraphs.build(numLinks);
+        Random random = new Random(SyntheticGraphs.SEED);
+        int numItems = mGraph.getNumItems();
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            int slot = random.nextInt(numLinks);
+            mHitItems1[i] = mGraph.getLinkItem1(slot);
+            mHitItems2[i] = mGraph.getLinkItem2(slot);
+
+            int item1;
+            int item2;
+            do {
+                item1 = random.nextInt(numItems);
+                item2 = random.nextInt(numItems);
+            } while ((item1 == item2) || (mGraph.getLinkSlot(item1, item2) != GraphStore.NO_ID));
+            mMissItems1[i] = item1;
+            mMissItems2[i] = item2;
+
+            mHitLabels1[i] = mGraph.getLabel(mHitItems1[i]);
+            mHitLabels2[i] = mGraph.getLabel(mHitItems2[i]);
+            mMissLabels1[i] = mGraph.getLabel(item1);
+            mMissLabels2[i] = mGraph.getLabel(item2);
+        }
+
+        mSummedHashes = new HashMap<>();
+        for (int slot = 0; slot < numLinks; slot++) {
+            int key = summedHash(mGraph.getLabel(mGraph.getLinkItem1(slot)),
+                    mGraph.getLabel(mGraph.getLinkItem2(slot)));
+            if (!mSummedHashes.containsKey(key)) {
+                mSummedHashes.put(key, slot);
+            }
+        }
+    }
+
+    @Benchmark
+    public int getLinkSlotHit() {
+        int query = mNextQuery;
+        mNextQuery = ((query + 1) & (NUM_QUERIES - 1));
+        return mGraph.getLinkSlot(mHitItems1[query], mHitItems2[query]);
+    }
+
+    @Benchmark
+    public int getLinkSlotMiss() {
+        int query = mNextQuery;
+        mNextQuery = ((query + 1) & (NUM_QUERIES - 1));
+        return mGraph.getLinkSlot(mMissItems1[query], mMissItems2[query]);
+    }
+
+    @Benchmark
+    public Integer summedHashHit() {
+        int query = mNextQuery;
+        mNextQuery = ((query + 1) & (NUM_QUERIES - 1));
+        return mSummedHashes.get(summedHash(mHitLabels1[query], mHitLabels2[query]));
+    }
+
+    @Benchmark
+    public Integer summedHashMiss() {
+        int query = mNextQuery;
+        mNextQuery = ((query + 1) & (NUM_QUERIES - 1));
+        return mSummedHashes.get(summedHash(mMissLabels1[query], mMissLabels2[query]));
+    }
+
+    private static int summedHash(String label1, String label2) {
+        return (label1.hashCode() + label2.hashCode());
+    }
+}
@@ -0,0 +1,74 @@
+package com.thomaslorincz.chord_diagram.benchmark;
+
+import com.thomaslorincz.chord_diagram.core.GraphStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * Measures loading an n x n flow matrix: building the store in one pass with
+ * {@link GraphStore#fromMatrix}, against adding a link for each pair with flow through the
+ * label lookups a caller of addLink(String, String) goes through. The density is the chance
+ * that each entry of the matrix has flow.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+public class MatrixBenchmark {
+    @Param({"500", "2000"})
+    public int numItems;
+
+    @Param({"1.0", "0.1"})
+    public double density;
+
+    private String[] mLabels;
+    private int[] mColours;
+    private float[] mMatrix;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(SyntheticGraphs.SEED);
+        mLabels = new String[numItems];
+        mColours = new int[numItems];
+        for (int i = 0; i < numItems; i++) {
+            mLabels[i] = SyntheticGraphs.label(i);
+            mColours[i] = SyntheticGraphs.PALETTE[i % SyntheticGraphs.PALETTE.length];
+        }
+        mMatrix = new float[numItems * numItems];
+        for (int i = 0; i < mMatrix.length; i++) {
+            if (random.nextDouble() < density) {
+                mMatrix[i] = random.nextFloat();
+            }
+        }
+    }
+
+    @Benchmark
+    public GraphStore fromMatrix() {
+        return GraphStore.fromMatrix(mLabels, mColours, mMatrix);
+    }
+
+    @Benchmark
+    public GraphStore addLinkPerPair() {
+        int n = numItems;
+        GraphStore graph = new GraphStore();
+        for (int i = 0; i < n; i++) {
+            graph.addItem(mLabels[i], mColours[i]);
+        }
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                float weight = (mMatrix[(i * n) + j] + mMatrix[(j * n) + i]);
+                if (weight > 0) {
+                    graph.addLink(graph.getItemId(mLabels[i]), graph.getItemId(mLabels[j]), weight);
+                }
+            }
+        }
+        return graph;
+    }
+}
@@ -0,0 +1,95 @@
+package com.thomaslorincz.chord_diagram.benchmark;
+
+import com.thomaslorincz.chord_diagram.core.GraphStore;
+
+import java.nio.charset.Charset;
+import java.util.Random;
+
+/**
+ * SyntheticGraphs generates reproducible random data sets of a given number of links for the
+ * benchmarks. The number of items grows with the square root of the number of links, so that
+ * about half of all possible pairs of items are linked and every size has a realistic mix of
+ * item degrees.
+ */
+final class SyntheticGraphs {
+    static final long SEED = 42;
+    static final int[] PALETTE = {0xFFE53935, 0xFF1E88E5, 0xFF43A047, 0xFFFDD835, 0xFF8E24AA};
+
+    private SyntheticGraphs() {}
+
+    static int numItemsFor(int numLinks) {
+        return Math.max(4, (int) Math.ceil(Math.sqrt(4.0 * numLinks)));
+    }
+
+    static String label(int item) {
+        return "Item " + item;
+    }
+
+    /**
+     * Returns random distinct pairs of items, as item ids in pairs[0] and pairs[1].
+     *
+     * @param numLinks The number of pairs.
+     * @param seed The seed of the random pairs.
+     * @return The pairs.
+     */
+    static int[][] randomPairs(int numLinks, long seed) {
+        int numItems = numItemsFor(numLinks);
+        // Pairs are only tracked for uniqueness here, through a scratch store.
+        GraphStore seen = new GraphStore();
+        for (int i = 0; i < numItems; i++) {
+            seen.addItem(label(i), 0);
+        }
+        Random random = new Random(seed);
+        int[][] pairs = new int[2][numLinks];
+        int numPairs = 0;
+        while (numPairs < numLinks) {
+            int item1 = random.nextInt(numItems);
+            int item2 = random.nextInt(numItems);
+            if ((item1 != item2) && (seen.addLink(item1, item2) != GraphStore.NO_ID)) {
+                pairs[0][numPairs] = item1;
+                pairs[1][numPairs] = item2;
+                numPairs++;
+            }
+        }
+        return pairs;
+    }
+
+    /**
+     * Builds a data set of random links with random weights.
+     *
+     * @param numLinks The number of links.
+     * @return The data set, not yet laid out.
+     */
+    static GraphStore build(int numLinks) {
+        int numItems = numItemsFor(numLinks);
+        int[][] pairs = randomPairs(numLinks, SEED);
+        Random random = new Random(SEED);
+        GraphStore graph = new GraphStore();
+        graph.reserve(numItems, numLinks);
+        for (int i = 0; i < numItems; i++) {
+            graph.addItem(label(i), PALETTE[i % PALETTE.length]);
+        }
+        for (int i = 0; i < numLinks; i++) {
+            graph.addLink(pairs[0][i], pairs[1][i], 1 + random.nextInt(100));
+        }
+        return graph;
+    }
+
+    /**
+     * Writes the same links as {@link #build(int)} as a comma separated edge list.
+     *
+     * @param numLinks The number of links.
+     * @return The UTF-8 bytes of the edge list, with a header row.
+     */
+    static byte[] buildEdgeList(int numLinks) {
+        int[][] pairs = randomPairs(numLinks, SEED);
+        Random random = new Random(SEED);
+        StringBuilder csv = new StringBuilder("source,target,weight\n");
+        for (int i = 0; i < numLinks; i++) {
+            csv.append(label(pairs[0][i])).append(',')
+                    .append(label(pairs[1][i])).append(',')
+                    .append(1 + random.nextInt(100)).append('\n');
+        }
+        return csv.toString().getBytes(Charset.forName("UTF-8"));
+    }
+}
@@ -0,0 +1,69 @@
+package com.thomaslorincz.chord_diagram.benchmark;
+
+import com.thomaslorincz.chord_diagram.core.BezierTessellator;
+import com.thomaslorincz.chord_diagram.core.GraphStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures flattening every chord of a laid out diagram into a polyline, as the view does
+ * when it builds the paths of the links. Chords run between their endpoint angles on a circle
+ * with their control point at its centre.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+public class TessellationBenchmark {
+    private static final float CENTRE = 540.0f;
+    private static final float RADIUS = 500.0f;
+
+    @Param({"10", "100", "1000", "10000", "100000"})
+    public int numLinks;
+
+    private float[] mStartXs;
+    private float[] mStartYs;
+    private float[] mEndXs;
+    private float[] mEndYs;
+    private final float[] mPoints = new float[2 * (BezierTessellator.MAX_SEGMENTS + 1)];
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        GraphStore graph = SyntheticGraphs.build(numLinks);
+        graph.assignItemAngles();
+        graph.assignLinkAngles(true);
+        mStartXs = new float[numLinks];
+        mStartYs = new float[numLinks];
+        mEndXs = new float[numLinks];
+        mEndYs = new float[numLinks];
+        for (int slot = 0; slot < numLinks; slot++) {
+            double angle1 = Math.toRadians(graph.getEndpointAngle1(slot));
+            double angle2 = Math.toRadians(graph.getEndpointAngle2(slot));
+            mStartXs[slot] = (float) (CENTRE + (RADIUS * Math.cos(angle1)));
+            mStartYs[slot] = (float) (CENTRE + (RADIUS * Math.sin(angle1)));
+            mEndXs[slot] = (float) (CENTRE + (RADIUS * Math.cos(angle2)));
+            mEndYs[slot] = (float) (CENTRE + (RADIUS * Math.sin(angle2)));
+        }
+    }
+
+    /**
+     * Returns the total number of segments, so the work cannot be optimized away.
+     */
+    @Benchmark
+    public int tessellateChords() {
+        int numSegments = 0;
+        for (int slot = 0; slot < numLinks; slot++) {
+            int segments = BezierTessellator.segmentCount(mStartXs[slot], mStartYs[slot],
+                    CENTRE, CENTRE, mEndXs[slot], mEndYs[slot], BezierTessellator.DEFAULT_TOLERANCE);
+            BezierTessellator.tessellate(mStartXs[slot], mStartYs[slot], CENTRE, CENTRE,
+                    mEndXs[slot], mEndYs[slot], segments, mPoints, 0);
+            numSegments += segments;
+        }
+        return numSegments;
+    }
+}
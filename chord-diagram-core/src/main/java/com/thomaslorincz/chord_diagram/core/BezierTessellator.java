@@ -0,0 +1,65 @@
+package com.thomaslorincz.chord_diagram.core;
+
+/**
+ * BezierTessellator flattens quadratic Bezier curves into polylines. The number of segments is
+ * chosen from a tolerance in pixels rather than fixed, so that short or nearly straight curves
+ * get few segments and long, tightly bent curves get more.
+ */
+public class BezierTessellator {
+    /**
+     * The default maximum distance, in pixels, between a curve and its polyline.
+     */
+    public static final float DEFAULT_TOLERANCE = 0.5f;
+
+    /**
+     * The largest number of segments a single curve is flattened into.
+     */
+    public static final int MAX_SEGMENTS = 100;
+
+    private BezierTessellator() {}
+
+    /**
+     * Returns the number of equal steps in t needed to keep a polyline within a tolerance of a
+     * quadratic Bezier curve. For n steps the error is at most |p0 - 2p1 + p2| / (4n^2).
+     *
+     * @param x0 The x coordinate of the start point.
+     * @param y0 The y coordinate of the start point.
+     * @param x1 The x coordinate of the control point.
+     * @param y1 The y coordinate of the control point.
+     * @param x2 The x coordinate of the end point.
+     * @param y2 The y coordinate of the end point.
+     * @param tolerance The maximum distance between the curve and the polyline, in pixels.
+     * @return The number of segments, between 1 and {@link #MAX_SEGMENTS}.
+     */
+    public static int segmentCount(float x0, float y0, float x1, float y1, float x2, float y2,
+                                   float tolerance) {
+        float ddx = (x0 - (2 * x1) + x2);
+        float ddy = (y0 - (2 * y1) + y2);
+        double deviation = Math.sqrt((ddx * ddx) + (ddy * ddy));
+        int segments = (int) Math.ceil(Math.sqrt(deviation / (4 * tolerance)));
+        return Math.max(1, Math.min(MAX_SEGMENTS, segments));
+    }
+
+    /**
+     * Writes the points of a flattened quadratic Bezier curve as x, y pairs.
+     *
+     * @param x0 The x coordinate of the start point.
+     * @param y0 The y coordinate of the start point.
+     * @param x1 The x coordinate of the control point.
+     * @param y1 The y coordinate of the control point.
+     * @param x2 The x coordinate of the end point.
+     * @param y2 The y coordinate of the end point.
+     * @param segments The number of segments, as returned by {@link #segmentCount}.
+     * @param out The array to write (segments + 1) points to.
+     * @param offset The index in out of the x coordinate of the first point.
+     */
+    public static void tessellate(float x0, float y0, float x1, float y1, float x2, float y2,
+                                  int segments, float[] out, int offset) {
+        for (int i = 0; i <= segments; i++) {
+            float t = ((float) i / segments);
+            float u = (1 - t);
+            out[offset + (2 * i)] = ((u * u * x0) + (2 * u * t * x1) + (t * t * x2));
+            out[offset + (2 * i) + 1] = ((u * u * y0) + (2 * u * t * y1) + (t * t * y2));
+        }
+    }
+}
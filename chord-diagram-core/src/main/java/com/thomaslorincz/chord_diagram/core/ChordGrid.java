@@ -0,0 +1,169 @@
+package com.thomaslorincz.chord_diagram.core;
+
+/**
+ * ChordGrid is a uniform grid over the square bounds of a diagram that indexes the line
+ * segments of its tessellated chords, so that the chord nearest to a point can be found by
+ * looking only at the segments that pass near it. Each cell lists the segments whose bounding
+ * boxes overlap it, packed into one array in the order of the cells.
+ */
+public class ChordGrid {
+    private static final int MIN_CELLS_PER_SIDE = 8;
+    private static final int MAX_CELLS_PER_SIDE = 256;
+    private static final int SEGMENTS_PER_CELL = 4; // Aimed for on average
+
+    private final float[][] mPoints; // Points of each chord as x, y pairs, or null if empty
+    private final int[] mNumSegments; // Number of segments of each chord
+    private final float mLeft;
+    private final float mTop;
+    private final float mCellSize;
+    private final int mCellsPerSide;
+
+    // The segments in cell c are mEntrySlots[i] and mEntrySegments[i] for
+    // mCellStarts[c] <= i < mCellStarts[c + 1].
+    private final int[] mCellStarts;
+    private final int[] mEntrySlots;
+    private final int[] mEntrySegments;
+
+    /**
+     * Construct a ChordGrid
+     *
+     * @param points The points of the chord in each slot, as x, y pairs, or null for empty
+     *               slots. The arrays are kept, not copied.
+     * @param numSegments The number of segments of the chord in each slot.
+     * @param numSlots The number of slots.
+     * @param left The left edge of the square the chords lie in.
+     * @param top The top edge of the square the chords lie in.
+     * @param size The width and height of the square the chords lie in.
+     */
+    public ChordGrid(float[][] points, int[] numSegments, int numSlots, float left, float top,
+                     float size) {
+        mPoints = points;
+        mNumSegments = numSegments;
+        mLeft = left;
+        mTop = top;
+
+        long totalSegments = 0;
+        double totalExtent = 0; // Sum of the widths and heights of the segments
+        for (int slot = 0; slot < numSlots; slot++) {
+            float[] slotPoints = points[slot];
+            for (int i = 0; (slotPoints != null) && (i < (2 * numSegments[slot])); i += 2) {
+                totalExtent += Math.abs(slotPoints[i + 2] - slotPoints[i])
+                        + Math.abs(slotPoints[i + 3] - slotPoints[i + 1]);
+            }
+            totalSegments += (slotPoints != null) ? numSegments[slot] : 0;
+        }
+        // Aim for a few segments per cell, but keep cells at least as large as an average
+        // segment, or each segment's bounding box would be listed in many cells.
+        int cellsPerSide = (int) Math.sqrt((double) totalSegments / SEGMENTS_PER_CELL);
+        if (totalExtent > 0) {
+            double meanSide = (totalExtent / (2 * totalSegments));
+            cellsPerSide = (int) Math.min(cellsPerSide, Math.ceil(size / meanSide));
+        }
+        mCellsPerSide = Math.max(MIN_CELLS_PER_SIDE, Math.min(MAX_CELLS_PER_SIDE, cellsPerSide));
+        mCellSize = Math.max(size, 1.0f) / mCellsPerSide;
+
+        // Count the entries of each cell, then fill them in a second pass.
+        mCellStarts = new int[(mCellsPerSide * mCellsPerSide) + 1];
+        for (int slot = 0; slot < numSlots; slot++) {
+            for (int segment = 0; (points[slot] != null) && (segment < numSegments[slot]);
+                    segment++) {
+                addSegment(slot, segment, null, null);
+            }
+        }
+        int numEntries = 0;
+        for (int cell = 0; cell < (mCellStarts.length - 1); cell++) {
+            int count = mCellStarts[cell];
+            mCellStarts[cell] = numEntries;
+            numEntries += count;
+        }
+        mCellStarts[mCellStarts.length - 1] = numEntries;
+        mEntrySlots = new int[numEntries];
+        mEntrySegments = new int[numEntries];
+        for (int slot = 0; slot < numSlots; slot++) {
+            for (int segment = 0; (points[slot] != null) && (segment < numSegments[slot]);
+                    segment++) {
+                addSegment(slot, segment, mEntrySlots, mEntrySegments);
+            }
+        }
+        // Filling advanced each start to the start of the next cell, so shift them back.
+        System.arraycopy(mCellStarts, 0, mCellStarts, 1, mCellStarts.length - 2);
+        mCellStarts[0] = 0;
+    }
+
+    /**
+     * Returns the slot of the chord nearest to a point, if it is within a distance.
+     *
+     * @param x The x coordinate of the point.
+     * @param y The y coordinate of the point.
+     * @param tolerance The largest distance from the point to a chord that counts as a hit.
+     * @return The slot of the nearest chord, or {@link GraphStore#NO_ID} if none is close.
+     */
+    public int findLink(float x, float y, float tolerance) {
+        int firstColumn = cellIndex(x - tolerance, mLeft);
+        int lastColumn = cellIndex(x + tolerance, mLeft);
+        int firstRow = cellIndex(y - tolerance, mTop);
+        int lastRow = cellIndex(y + tolerance, mTop);
+        int nearestSlot = GraphStore.NO_ID;
+        float nearestDistanceSquared = (tolerance * tolerance);
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                int cell = ((row * mCellsPerSide) + column);
+                for (int i = mCellStarts[cell]; i < mCellStarts[cell + 1]; i++) {
+                    float distanceSquared = segmentDistanceSquared(
+                            mPoints[mEntrySlots[i]], mEntrySegments[i], x, y);
+                    if (distanceSquared <= nearestDistanceSquared) {
+                        nearestDistanceSquared = distanceSquared;
+                        nearestSlot = mEntrySlots[i];
+                    }
+                }
+            }
+        }
+        return nearestSlot;
+    }
+
+    /**
+     * Adds a segment to every cell its bounding box overlaps. With null entry arrays, only
+     * counts it in those cells.
+     */
+    private void addSegment(int slot, int segment, int[] entrySlots, int[] entrySegments) {
+        float[] points = mPoints[slot];
+        int i = (2 * segment);
+        int firstColumn = cellIndex(Math.min(points[i], points[i + 2]), mLeft);
+        int lastColumn = cellIndex(Math.max(points[i], points[i + 2]), mLeft);
+        int firstRow = cellIndex(Math.min(points[i + 1], points[i + 3]), mTop);
+        int lastRow = cellIndex(Math.max(points[i + 1], points[i + 3]), mTop);
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                int cell = ((row * mCellsPerSide) + column);
+                if (entrySlots != null) {
+                    int entry = mCellStarts[cell]++;
+                    entrySlots[entry] = slot;
+                    entrySegments[entry] = segment;
+                } else {
+                    mCellStarts[cell]++;
+                }
+            }
+        }
+    }
+
+    private int cellIndex(float coordinate, float origin) {
+        int index = (int) Math.floor((coordinate - origin) / mCellSize);
+        return Math.max(0, Math.min(mCellsPerSide - 1, index));
+    }
+
+    private static float segmentDistanceSquared(float[] points, int segment, float x, float y) {
+        int i = (2 * segment);
+        float x0 = points[i];
+        float y0 = points[i + 1];
+        float dx = (points[i + 2] - x0);
+        float dy = (points[i + 3] - y0);
+        float lengthSquared = ((dx * dx) + (dy * dy));
+        float t = 0.0f;
+        if (lengthSquared > 0) {
+            t = Math.max(0.0f, Math.min(1.0f, (((x - x0) * dx) + ((y - y0) * dy)) / lengthSquared));
+        }
+        float nearestX = (x0 + (t * dx)) - x;
+        float nearestY = (y0 + (t * dy)) - y;
+        return ((nearestX * nearestX) + (nearestY * nearestY));
+    }
+}
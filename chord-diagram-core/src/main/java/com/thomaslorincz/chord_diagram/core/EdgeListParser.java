@@ -0,0 +1,284 @@
+package com.thomaslorincz.chord_diagram.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * EdgeListParser streams a delimited edge list, such as CSV or TSV, into a {@link GraphStore}.
+ * Each row is a link: the label of its first item, the label of its second item and an
+ * optional weight. Items are created the first time their label appears, so labels are
+ * interned as the file is read. Input is read in fixed size chunks of UTF-8 bytes, so memory
+ * use beyond the store itself is bounded by the chunk size and the longest row.
+ *
+ * Fields may be quoted with double quotes, in which case they may contain the delimiter, and
+ * a doubled quote stands for a quote. Blank rows, rows linking an item to itself and rows
+ * with no flow are skipped. Rows for a pair of items that is already linked add their weight
+ * to the existing link.
+ */
+public class EdgeListParser {
+    /**
+     * Notified as rows are read.
+     */
+    public interface ProgressListener {
+        /**
+         * Called after each chunk of input is parsed.
+         *
+         * @param bytesRead The number of bytes read so far.
+         * @param rowsRead The number of rows read so far.
+         */
+        void onProgress(long bytesRead, int rowsRead);
+    }
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int DEFAULT_BUFFER_SIZE = (64 * 1024);
+    private static final int MAX_FIELDS = 3;
+
+    private final byte mDelimiter;
+    private final boolean mHasHeader;
+    private final int[] mPalette;
+    private final int mBufferSize;
+
+    // Start and end of each field of the current row, in mBuffer
+    private final int[] mFieldStarts = new int[MAX_FIELDS];
+    private final int[] mFieldEnds = new int[MAX_FIELDS];
+    private final boolean[] mFieldQuoted = new boolean[MAX_FIELDS];
+    private byte[] mBuffer;
+
+    /**
+     * Construct an EdgeListParser
+     *
+     * @param delimiter The character between fields, such as ',' or '\t'. Must be ASCII.
+     * @param hasHeader True to skip the first row.
+     * @param palette The colours given to new items, in turn. Must not be empty.
+     */
+    public EdgeListParser(char delimiter, boolean hasHeader, int[] palette) {
+        this(delimiter, hasHeader, palette, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Construct an EdgeListParser with a given read buffer size
+     *
+     * @param delimiter The character between fields, such as ',' or '\t'. Must be ASCII.
+     * @param hasHeader True to skip the first row.
+     * @param palette The colours given to new items, in turn. Must not be empty.
+     * @param bufferSize The number of bytes read at a time. The buffer grows to fit a longer
+     *                   row.
+     */
+    public EdgeListParser(char delimiter, boolean hasHeader, int[] palette, int bufferSize) {
+        if ((delimiter > 0x7F) || (delimiter == '"') || (delimiter == '\n')
+                || (delimiter == '\r')) {
+            throw new IllegalArgumentException("Unsupported delimiter " + delimiter);
+        }
+        if (palette.length == 0) {
+            throw new IllegalArgumentException("Empty palette");
+        }
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Bad buffer size " + bufferSize);
+        }
+        mDelimiter = (byte) delimiter;
+        mHasHeader = hasHeader;
+        mPalette = palette.clone();
+        mBufferSize = bufferSize;
+    }
+
+    /**
+     * Reads an edge list to the end of the stream. The stream is not closed. If the thread is
+     * interrupted, parsing stops between chunks.
+     *
+     * @param in The edge list.
+     * @param listener Notified after each chunk, or null.
+     * @return The items and links of the edge list.
+     * @throws IOException If the stream cannot be read or a row is malformed.
+     * @throws InterruptedIOException If the thread was interrupted.
+     */
+    public GraphStore parse(InputStream in, ProgressListener listener) throws IOException {
+        GraphStore graph = new GraphStore();
+        mBuffer = new byte[mBufferSize];
+        int length = 0; // Bytes of mBuffer holding unparsed input
+        long bytesRead = 0;
+        int rowsRead = 0;
+        int lineNumber = 0;
+        boolean endOfStream = false;
+        while (!endOfStream) {
+            if (Thread.interrupted()) {
+                throw new InterruptedIOException("Edge list parsing interrupted");
+            }
+            if (length == mBuffer.length) {
+                // A single row fills the buffer.
+                mBuffer = Arrays.copyOf(mBuffer, mBuffer.length * 2);
+            }
+            int count = in.read(mBuffer, length, mBuffer.length - length);
+            if (count < 0) {
+                endOfStream = true;
+                if ((length > 0) && (mBuffer[length - 1] != '\n')) {
+                    if (length == mBuffer.length) {
+                        mBuffer = Arrays.copyOf(mBuffer, length + 1);
+                    }
+                    mBuffer[length++] = '\n'; // Terminate the last row
+                }
+            } else {
+                bytesRead += count;
+                length += count;
+            }
+
+            // Parse every complete row in the buffer.
+            int rowStart = 0;
+            int rowEnd;
+            while ((rowEnd = findRowEnd(rowStart, length)) >= 0) {
+                lineNumber++;
+                int numFields = splitRow(rowStart, rowEnd, lineNumber);
+                if ((numFields > 0) && ((lineNumber > 1) || !mHasHeader)) {
+                    addRow(graph, numFields, lineNumber);
+                    rowsRead++;
+                }
+                rowStart = (rowEnd + 1);
+            }
+            // Keep the partial row at the end for the next read.
+            length -= rowStart;
+            if (endOfStream && (length > 0)) {
+                // Only a quote left open can keep the last row from ending.
+                throw new IOException("Line " + (lineNumber + 1) + ": unterminated quote");
+            }
+            System.arraycopy(mBuffer, rowStart, mBuffer, 0, length);
+
+            if (listener != null) {
+                listener.onProgress(bytesRead, rowsRead);
+            }
+        }
+        mBuffer = null;
+        return graph;
+    }
+
+    /**
+     * Returns the index of the newline that ends the row starting at an index, or -1 if the
+     * row is not complete. Newlines inside quoted fields do not end a row. As in
+     * {@link #splitRow}, only a quote at the start of a field opens a quoted field, and a
+     * quote anywhere else in an unquoted field is part of its value.
+     */
+    private int findRowEnd(int start, int length) {
+        boolean fieldStart = true; // At the first byte of a field
+        boolean quoted = false; // Inside a quoted field
+        boolean closed = false; // Just after the closing quote of a quoted field
+        for (int i = start; i < length; i++) {
+            byte b = mBuffer[i];
+            if (quoted) {
+                if (b == '"') {
+                    quoted = false;
+                    closed = true; // Unless the next byte is a quote, escaping this one
+                }
+                continue;
+            }
+            if ((b == '"') && (fieldStart || closed)) {
+                quoted = true;
+            } else if (b == '\n') {
+                return i;
+            }
+            fieldStart = (b == mDelimiter);
+            closed = false;
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the fields of a row, excluding the newline and any carriage return before it.
+     *
+     * @return The number of fields, or 0 for a blank row.
+     */
+    private int splitRow(int start, int end, int lineNumber) throws IOException {
+        if ((end > start) && (mBuffer[end - 1] == '\r')) {
+            end--;
+        }
+        if (end == start) {
+            return 0;
+        }
+        int numFields = 0;
+        int i = start;
+        while (true) {
+            if (numFields == MAX_FIELDS) {
+                throw new IOException("Line " + lineNumber + ": more than " + MAX_FIELDS
+                        + " fields");
+            }
+            boolean quoted = ((i < end) && (mBuffer[i] == '"'));
+            int fieldStart = quoted ? (i + 1) : i;
+            int fieldEnd;
+            if (quoted) {
+                i = fieldStart;
+                while (true) {
+                    if (i >= end) {
+                        throw new IOException("Line " + lineNumber + ": unterminated quote");
+                    }
+                    if (mBuffer[i] == '"') {
+                        if (((i + 1) < end) && (mBuffer[i + 1] == '"')) {
+                            i += 2; // An escaped quote
+                            continue;
+                        }
+                        break;
+                    }
+                    i++;
+                }
+                fieldEnd = i;
+                i++; // Past the closing quote
+                if ((i < end) && (mBuffer[i] != mDelimiter)) {
+                    throw new IOException("Line " + lineNumber
+                            + ": expected a delimiter after a closing quote");
+                }
+            } else {
+                while ((i < end) && (mBuffer[i] != mDelimiter)) {
+                    i++;
+                }
+                fieldEnd = i;
+            }
+            mFieldStarts[numFields] = fieldStart;
+            mFieldEnds[numFields] = fieldEnd;
+            mFieldQuoted[numFields] = quoted;
+            numFields++;
+            if (i >= end) {
+                return numFields;
+            }
+            i++; // Past the delimiter
+        }
+    }
+
+    private void addRow(GraphStore graph, int numFields, int lineNumber) throws IOException {
+        if (numFields < 2) {
+            throw new IOException("Line " + lineNumber + ": expected two labels");
+        }
+        float weight = 1.0f;
+        if (numFields == 3) {
+            String field = decodeField(2);
+            try {
+                weight = Float.parseFloat(field.trim());
+            } catch (NumberFormatException e) {
+                throw new IOException("Line " + lineNumber + ": bad weight " + field);
+            }
+        }
+        int item1 = internItem(graph, decodeField(0));
+        int item2 = internItem(graph, decodeField(1));
+        if ((item1 == item2) || !(weight > 0)) {
+            return;
+        }
+        int slot = graph.getLinkSlot(item1, item2);
+        if (slot == GraphStore.NO_ID) {
+            graph.addLink(item1, item2, weight);
+        } else {
+            graph.addLinkWeight(slot, weight);
+        }
+    }
+
+    private String decodeField(int field) {
+        int start = mFieldStarts[field];
+        String value = new String(mBuffer, start, mFieldEnds[field] - start, UTF_8);
+        return mFieldQuoted[field] ? value.replace("\"\"", "\"") : value;
+    }
+
+    private int internItem(GraphStore graph, String label) {
+        int id = graph.getItemId(label);
+        if (id == GraphStore.NO_ID) {
+            id = graph.addItem(label, mPalette[graph.getNumItems() % mPalette.length]);
+        }
+        return id;
+    }
+}
@@ -0,0 +1,58 @@
+package com.thomaslorincz.chord_diagram.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * GraphFile writes a {@link GraphStore} to a file in its binary form, and opens such a file by
+ * mapping it into memory. Opening copies the primitive arrays out of the mapping in bulk and
+ * reuses the stored link index table as it is, so nothing is parsed or rehashed. Labels stay
+ * in the mapping until they are needed.
+ */
+public class GraphFile {
+    private GraphFile() {}
+
+    /**
+     * Writes a store to a file, replacing its contents.
+     *
+     * @param graph The store to write.
+     * @param file The file to write to.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void write(GraphStore graph, File file) throws IOException {
+        long size = graph.getBinarySize();
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.setLength(size);
+            FileChannel channel = randomAccessFile.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            graph.writeTo(buffer);
+            buffer.force();
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Opens a file written by {@link #write}. The file must not be changed while the store
+     * read from it is in use, since labels are decoded from the mapping.
+     *
+     * @param file The file to open.
+     * @return The store held by the file.
+     * @throws IOException If the file cannot be read or does not hold a store.
+     */
+    public static GraphStore map(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            // The mapping stays valid after the channel is closed.
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return GraphStore.readFrom(buffer);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+}
@@ -0,0 +1,1176 @@
+package com.thomaslorincz.chord_diagram.core;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * GraphStore holds the items and links of a chord diagram, and their assigned angles, in
+ * primitive arrays. Item labels are interned to dense int ids that follow insertion order.
+ * Links are stored in slots that also follow insertion order, and are found by their pair of
+ * items through a {@link LinkIndex}. Deleted link slots are left empty until enough of them
+ * build up to be worth compacting.
+ *
+ * Deleting an item shifts the ids of the items after it, so links refer to their items by key
+ * instead: a number given to each item when it is added that stays the same until the item is
+ * deleted. Deleting an item then only touches its own links and the id of each later item,
+ * rather than every link. Keys of deleted items are reused, and are renumbered to match the
+ * ids whenever the links are compacted.
+ *
+ * Each item also keeps the slots of its links in slot order. That is the order in which
+ * {@link #assignLinkAngles(boolean)} spreads them across the item's arc, so when links are
+ * added or deleted, {@link #updateLinkAngles()} only has to redistribute the endpoints on the
+ * arcs of the items whose links changed. Adding or deleting an item resizes every arc, and so
+ * moves every endpoint, so it needs a full layout: one pass over the items and one over the
+ * links, which is no more than shifting each angle would cost.
+ *
+ * A store can be written to and read from a compact binary form (see {@link #writeTo} and
+ * {@link #readFrom}). A store read from a memory mapped file decodes its labels lazily, the
+ * first time each is needed.
+ */
+public class GraphStore {
+    /**
+     * Returned when an item or link does not exist.
+     */
+    public static final int NO_ID = -1;
+
+    /**
+     * The number of bytes of primitive array storage used by each link slot.
+     */
+    static final int BYTES_PER_LINK = (5 * 4);
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    // Binary form
+    private static final int MAGIC = 0x43485244; // "CHRD"
+    private static final int VERSION = 1;
+    private static final int FLAG_ANGLES = 1; // Item and endpoint angles follow the links
+    private static final int FLAG_SPREAD = 2; // The endpoint angles were spread
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // Items, indexed by id
+    private Map<String, Integer> mItemIds = new HashMap<>(); // Null until labels are decoded
+    private String[] mLabels = new String[INITIAL_CAPACITY]; // Null entries not decoded yet
+    private ByteBuffer mLabelBytes; // Undecoded UTF-8 labels, or null
+    private int[] mLabelOffsets; // Start of each label in mLabelBytes, and the end of the last
+    private int[] mColours = new int[INITIAL_CAPACITY];
+    private int[] mNumConnections = new int[INITIAL_CAPACITY];
+    private int[] mNumUnassigned = new int[INITIAL_CAPACITY]; // Scratch for assignLinkAngles()
+    private float[] mStartAngles = new float[INITIAL_CAPACITY];
+    private float[] mEndAngles = new float[INITIAL_CAPACITY];
+    private int[][] mIncidentSlots = new int[INITIAL_CAPACITY][]; // Sized by mNumConnections
+    private int[] mItemKeys = new int[INITIAL_CAPACITY];
+    private int mNumItems;
+
+    // Item keys. Every key below mNumItems + mNumFreeKeys is either in use or free.
+    private int[] mKeyIds = new int[INITIAL_CAPACITY]; // Id of the item with each key
+    private int[] mFreeKeys = new int[INITIAL_CAPACITY]; // Keys of deleted items, to reuse
+    private int mNumFreeKeys;
+
+    // Links, indexed by slot. A link refers to its items by key.
+    private final LinkIndex mLinkIndex = new LinkIndex();
+    private int[] mLinkItems1 = new int[INITIAL_CAPACITY];
+    private int[] mLinkItems2 = new int[INITIAL_CAPACITY];
+    private float[] mEndpointAngles1 = new float[INITIAL_CAPACITY];
+    private float[] mEndpointAngles2 = new float[INITIAL_CAPACITY];
+    private float[] mLinkWeights = new float[INITIAL_CAPACITY];
+    private int mNumLinkSlots;
+    private int mNumLinks;
+
+    // Changes since the last full layout or call to clearChanges()
+    private boolean mLayoutValid; // False until a full layout has run since items changed
+    private boolean mSpread; // The argument of the last call to assignLinkAngles()
+    private boolean[] mItemChanged = new boolean[INITIAL_CAPACITY];
+    private int[] mChangedItems = new int[INITIAL_CAPACITY];
+    private int mNumChangedItems;
+    private int[] mRemovedSlots = new int[INITIAL_CAPACITY];
+    private int mNumRemovedSlots;
+    private boolean mSlotsMoved;
+
+    /**
+     * Builds a store from a dense flow matrix. Item i gets labels[i] and colours[i], and there
+     * is a link between items i and j if there is any flow between them in either direction.
+     * Its weight is the total flow, matrix[i * n + j] + matrix[j * n + i]. The diagonal is
+     * ignored. Links are added in row-major order of their upper-triangle entries.
+     *
+     * The matrix is read once, and the links found are kept so that every array of the store,
+     * the link index and each item's list of links can be allocated at its final size before
+     * they are added. Since each pair of items appears once, the links are added without
+     * looking each one up first. The store is built in O(n^2) time.
+     *
+     * @param labels The labels of the n items. Must be distinct.
+     * @param colours The colours of the n items.
+     * @param matrix The n * n flow matrix, in row-major order. Entries must not be negative.
+     * @return The new store.
+     * @throws IllegalArgumentException If the arrays do not match in size or labels repeat.
+     */
+    public static GraphStore fromMatrix(String[] labels, int[] colours, float[] matrix) {
+        int n = labels.length;
+        if ((colours.length != n) || (matrix.length != ((long) n * n))) {
+            throw new IllegalArgumentException("Expected " + n + " colours and an " + n + "x"
+                    + n + " matrix, got " + colours.length + " colours and "
+                    + matrix.length + " entries");
+        }
+        // Read the matrix once, keeping the second item and weight of each link in row order.
+        int[] degrees = new int[n];
+        int[] rowEnds = new int[n];
+        int[] columns = new int[Math.max(INITIAL_CAPACITY, n)];
+        float[] weights = new float[columns.length];
+        int numLinks = 0;
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                float weight = (matrix[(i * n) + j] + matrix[(j * n) + i]);
+                if (weight > 0) {
+                    if (numLinks == columns.length) {
+                        columns = Arrays.copyOf(columns, numLinks * 2);
+                        weights = Arrays.copyOf(weights, numLinks * 2);
+                    }
+                    columns[numLinks] = j;
+                    weights[numLinks] = weight;
+                    numLinks++;
+                    degrees[i]++;
+                    degrees[j]++;
+                }
+            }
+            rowEnds[i] = numLinks;
+        }
+
+        GraphStore graph = new GraphStore();
+        graph.reserve(n, numLinks);
+        graph.addItems(labels, colours, degrees);
+        int link = 0;
+        for (int i = 0; i < n; i++) {
+            for (; link < rowEnds[i]; link++) {
+                graph.appendLink(i, columns[link], weights[link]);
+            }
+        }
+        return graph;
+    }
+
+    /**
+     * Builds a store from a sparse flow matrix given as (row, column, value) entries. Entries
+     * for the same pair of items, in either order, are summed into the weight of one link.
+     * Entries on the diagonal and entries with no flow are ignored. Links are added in the
+     * order their first entry appears.
+     *
+     * @param labels The labels of the n items. Must be distinct.
+     * @param colours The colours of the n items.
+     * @param rows The row of each entry, between 0 and n - 1.
+     * @param columns The column of each entry, between 0 and n - 1.
+     * @param values The value of each entry. Must not be negative.
+     * @return The new store.
+     * @throws IllegalArgumentException If the arrays do not match in size, labels repeat or an
+     *                                  entry is out of range.
+     */
+    public static GraphStore fromSparseMatrix(String[] labels, int[] colours, int[] rows,
+                                              int[] columns, float[] values) {
+        int n = labels.length;
+        int numEntries = values.length;
+        if ((colours.length != n) || (rows.length != numEntries)
+                || (columns.length != numEntries)) {
+            throw new IllegalArgumentException("Expected " + n + " colours and "
+                    + numEntries + " rows and columns");
+        }
+        int[] degrees = new int[n];
+        for (int k = 0; k < numEntries; k++) {
+            if ((rows[k] < 0) || (rows[k] >= n) || (columns[k] < 0) || (columns[k] >= n)) {
+                throw new IllegalArgumentException("Entry " + k + " (" + rows[k] + ", "
+                        + columns[k] + ") is outside an " + n + "x" + n + " matrix");
+            }
+            if ((rows[k] != columns[k]) && (values[k] > 0)) {
+                degrees[rows[k]]++; // An upper bound, since entries may repeat a pair
+                degrees[columns[k]]++;
+            }
+        }
+
+        GraphStore graph = new GraphStore();
+        graph.reserve(n, numEntries);
+        graph.addItems(labels, colours, degrees);
+        for (int k = 0; k < numEntries; k++) {
+            if ((rows[k] == columns[k]) || (values[k] <= 0)) {
+                continue;
+            }
+            int slot = graph.getLinkSlot(rows[k], columns[k]);
+            if (slot == NO_ID) {
+                graph.addLink(rows[k], columns[k], values[k]);
+            } else {
+                graph.addLinkWeight(slot, values[k]);
+            }
+        }
+        return graph;
+    }
+
+    /**
+     * Adds the items of a matrix, with each item's list of links sized for its degree.
+     */
+    private void addItems(String[] labels, int[] colours, int[] degrees) {
+        for (int i = 0; i < labels.length; i++) {
+            if (addItem(labels[i], colours[i]) == NO_ID) {
+                throw new IllegalArgumentException("Duplicate label " + labels[i]);
+            }
+            mIncidentSlots[i] = new int[Math.max(2, degrees[i])];
+        }
+    }
+
+    /**
+     * Grows the item and link storage to hold at least the given numbers of items and link
+     * slots without regrowing.
+     *
+     * @param numItems The number of items to make room for.
+     * @param numLinkSlots The number of link slots to make room for.
+     */
+    public void reserve(int numItems, int numLinkSlots) {
+        if (numItems > mLabels.length) {
+            growItems(numItems);
+        }
+        if (numLinkSlots > mLinkItems1.length) {
+            growLinks(numLinkSlots);
+        }
+        mLinkIndex.reserve(numLinkSlots);
+    }
+
+    /**
+     * Returns a deep copy of this store, which can be laid out independently of it.
+     *
+     * @return A copy of the items, links and angles.
+     */
+    public GraphStore copy() {
+        GraphStore copy = new GraphStore();
+        if (mItemIds != null) {
+            copy.mItemIds.putAll(mItemIds);
+        } else {
+            // Share the undecoded labels, which are never written to.
+            copy.mItemIds = null;
+            copy.mLabelBytes = mLabelBytes;
+            copy.mLabelOffsets = mLabelOffsets;
+        }
+        copy.mLabels = mLabels.clone();
+        copy.mColours = mColours.clone();
+        copy.mNumConnections = mNumConnections.clone();
+        copy.mNumUnassigned = new int[mNumUnassigned.length];
+        copy.mStartAngles = mStartAngles.clone();
+        copy.mEndAngles = mEndAngles.clone();
+        copy.mIncidentSlots = new int[mIncidentSlots.length][];
+        for (int id = 0; id < mNumItems; id++) {
+            copy.mIncidentSlots[id] = mIncidentSlots[id].clone();
+        }
+        copy.mItemKeys = mItemKeys.clone();
+        copy.mKeyIds = mKeyIds.clone();
+        copy.mFreeKeys = mFreeKeys.clone();
+        copy.mNumFreeKeys = mNumFreeKeys;
+        copy.mItemChanged = new boolean[mItemChanged.length];
+        copy.mChangedItems = new int[mChangedItems.length];
+        copy.mNumItems = mNumItems;
+        copy.mLinkIndex.copyFrom(mLinkIndex);
+        copy.mLinkItems1 = mLinkItems1.clone();
+        copy.mLinkItems2 = mLinkItems2.clone();
+        copy.mEndpointAngles1 = mEndpointAngles1.clone();
+        copy.mEndpointAngles2 = mEndpointAngles2.clone();
+        copy.mLinkWeights = mLinkWeights.clone();
+        copy.mNumLinkSlots = mNumLinkSlots;
+        copy.mNumLinks = mNumLinks;
+        copy.mLayoutValid = hasLayout();
+        copy.mSpread = mSpread;
+        return copy;
+    }
+
+    public int getNumItems() {
+        return mNumItems;
+    }
+
+    /**
+     * Returns the id of an item.
+     *
+     * @param label The label of the item.
+     * @return The id of the item, or {@link #NO_ID} if there is no item with that label.
+     */
+    public int getItemId(String label) {
+        decodeLabels();
+        Integer id = mItemIds.get(label);
+        return (id == null) ? NO_ID : id;
+    }
+
+    public String getLabel(int id) {
+        String label = mLabels[id];
+        if (label == null) {
+            ByteBuffer bytes = mLabelBytes.duplicate(); // Copies may decode on other threads
+            bytes.position(mLabelOffsets[id]);
+            bytes.limit(mLabelOffsets[id + 1]);
+            label = UTF_8.decode(bytes).toString();
+            mLabels[id] = label;
+        }
+        return label;
+    }
+
+    /**
+     * Decodes every label that has not been decoded yet and indexes the items by label. Any
+     * lookup by label or change to the items needs this first.
+     */
+    private void decodeLabels() {
+        if (mItemIds != null) {
+            return;
+        }
+        Map<String, Integer> itemIds = new HashMap<>();
+        for (int id = 0; id < mNumItems; id++) {
+            itemIds.put(getLabel(id), id);
+        }
+        mItemIds = itemIds;
+        mLabelBytes = null;
+        mLabelOffsets = null;
+    }
+
+    public int getColour(int id) {
+        return mColours[id];
+    }
+
+    public int getNumConnections(int id) {
+        return mNumConnections[id];
+    }
+
+    /**
+     * Returns the slot of one of the links of an item. The links of an item are in slot order.
+     *
+     * @param id The id of the item.
+     * @param index The index of the link, less than {@link #getNumConnections(int)}.
+     * @return The slot of the link.
+     */
+    public int getIncidentSlot(int id, int index) {
+        return mIncidentSlots[id][index];
+    }
+
+    public float getStartAngle(int id) {
+        return mStartAngles[id];
+    }
+
+    public float getEndAngle(int id) {
+        return mEndAngles[id];
+    }
+
+    public float getCenterAngle(int id) {
+        return ((mStartAngles[id] + mEndAngles[id]) / 2);
+    }
+
+    /**
+     * Returns the item whose arc contains an angle. Items are laid out in id order around the
+     * circle, so their start angles are sorted and the item is found by binary search.
+     *
+     * @param angle The angle, in degrees, between 0 and 360.
+     * @return The id of the item, or {@link #NO_ID} if there are no items.
+     */
+    public int findItemAt(float angle) {
+        int low = 0;
+        int high = (mNumItems - 1);
+        if (high < 0) {
+            return NO_ID;
+        }
+        // Find the last item that starts at or before the angle.
+        while (low < high) {
+            int mid = ((low + high + 1) >>> 1);
+            if (mStartAngles[mid] <= angle) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Adds an item after all existing items.
+     *
+     * @param label The label of the item.
+     * @param colour The colour of the item.
+     * @return The id of the new item, or {@link #NO_ID} if an item with that label exists.
+     */
+    public int addItem(String label, int colour) {
+        decodeLabels();
+        if (mItemIds.containsKey(label)) {
+            return NO_ID;
+        }
+        if (mNumItems == mLabels.length) {
+            growItems(mNumItems * 2);
+        }
+        int key = (mNumFreeKeys > 0) ? mFreeKeys[--mNumFreeKeys] : mNumItems;
+        int id = mNumItems++;
+        mItemKeys[id] = key;
+        mKeyIds[key] = id;
+        mItemIds.put(label, id);
+        mLabels[id] = label;
+        mColours[id] = colour;
+        mNumConnections[id] = 0;
+        mIncidentSlots[id] = new int[2];
+        mLayoutValid = false; // Every item's arc changes
+        return id;
+    }
+
+    private void growItems(int capacity) {
+        mLabels = Arrays.copyOf(mLabels, capacity);
+        mColours = Arrays.copyOf(mColours, capacity);
+        mNumConnections = Arrays.copyOf(mNumConnections, capacity);
+        mNumUnassigned = Arrays.copyOf(mNumUnassigned, capacity);
+        mStartAngles = Arrays.copyOf(mStartAngles, capacity);
+        mEndAngles = Arrays.copyOf(mEndAngles, capacity);
+        mIncidentSlots = Arrays.copyOf(mIncidentSlots, capacity);
+        mItemKeys = Arrays.copyOf(mItemKeys, capacity);
+        mKeyIds = Arrays.copyOf(mKeyIds, capacity);
+        mFreeKeys = Arrays.copyOf(mFreeKeys, capacity);
+        mItemChanged = Arrays.copyOf(mItemChanged, capacity);
+        mChangedItems = Arrays.copyOf(mChangedItems, capacity);
+    }
+
+    /**
+     * Deletes an item and every link to it. The ids of all later items shift down by one, so
+     * iteration order is preserved. The links are found through the item's own list, so this
+     * takes O(degree) time for the links plus O(n) time to shift the later items.
+     *
+     * @param id The id of the item to delete.
+     */
+    public void deleteItem(int id) {
+        decodeLabels();
+        int key = mItemKeys[id];
+        int[] slots = mIncidentSlots[id];
+        for (int index = 0; index < mNumConnections[id]; index++) {
+            int slot = slots[index];
+            if (mLinkItems1[slot] == NO_ID) {
+                continue; // The second occurrence of a link from the item to itself
+            }
+            // The item's own list is discarded, so only the other item's list needs updating.
+            int otherKey = (mLinkItems1[slot] == key) ? mLinkItems2[slot] : mLinkItems1[slot];
+            if (otherKey != key) {
+                removeIncidentSlot(mKeyIds[otherKey], slot);
+            }
+            clearLinkSlot(slot);
+        }
+
+        mItemIds.remove(mLabels[id]);
+        int numMoved = (mNumItems - id - 1);
+        System.arraycopy(mLabels, id + 1, mLabels, id, numMoved);
+        System.arraycopy(mColours, id + 1, mColours, id, numMoved);
+        System.arraycopy(mNumConnections, id + 1, mNumConnections, id, numMoved);
+        System.arraycopy(mStartAngles, id + 1, mStartAngles, id, numMoved);
+        System.arraycopy(mEndAngles, id + 1, mEndAngles, id, numMoved);
+        System.arraycopy(mIncidentSlots, id + 1, mIncidentSlots, id, numMoved);
+        System.arraycopy(mItemKeys, id + 1, mItemKeys, id, numMoved);
+        mNumItems--;
+        mLabels[mNumItems] = null;
+        mIncidentSlots[mNumItems] = null;
+        for (int i = id; i < mNumItems; i++) {
+            mItemIds.put(mLabels[i], i);
+            mKeyIds[mItemKeys[i]] = i;
+        }
+        mKeyIds[key] = NO_ID;
+        mFreeKeys[mNumFreeKeys++] = key;
+        // Every item's arc changes, and the ids of the changed items have shifted.
+        mLayoutValid = false;
+        clearChangedItems();
+        compactLinksIfSparse();
+    }
+
+    public int getNumLinks() {
+        return mNumLinks;
+    }
+
+    /**
+     * Returns the number of link slots. Slots below this number are either links, or empty if
+     * {@link #getLinkItem1(int)} returns {@link #NO_ID}.
+     *
+     * @return The number of link slots in use.
+     */
+    public int getNumLinkSlots() {
+        return mNumLinkSlots;
+    }
+
+    public int getLinkItem1(int slot) {
+        int key = mLinkItems1[slot];
+        return (key == NO_ID) ? NO_ID : mKeyIds[key];
+    }
+
+    public int getLinkItem2(int slot) {
+        int key = mLinkItems2[slot];
+        return (key == NO_ID) ? NO_ID : mKeyIds[key];
+    }
+
+    public float getEndpointAngle1(int slot) {
+        return mEndpointAngles1[slot];
+    }
+
+    public float getEndpointAngle2(int slot) {
+        return mEndpointAngles2[slot];
+    }
+
+    public float getLinkWeight(int slot) {
+        return mLinkWeights[slot];
+    }
+
+    /**
+     * Adds to the weight of a link, such as when more flow between its items is found.
+     *
+     * @param slot The slot of the link.
+     * @param weight The weight to add.
+     */
+    public void addLinkWeight(int slot, float weight) {
+        mLinkWeights[slot] += weight;
+    }
+
+    /**
+     * Returns the number of bytes of storage currently allocated for links, including the
+     * link index and the lists of the links of each item.
+     *
+     * @return The size of the link arrays, the link index and the item link lists, in bytes.
+     */
+    public long getLinkMemoryBytes() {
+        long incidentSlots = 0;
+        for (int id = 0; id < mNumItems; id++) {
+            incidentSlots += mIncidentSlots[id].length;
+        }
+        return (((long) mLinkItems1.length * BYTES_PER_LINK)
+                + mLinkIndex.getMemoryBytes()
+                + (incidentSlots * 4));
+    }
+
+    /**
+     * Returns the slot of the link between two items, in either order.
+     *
+     * @param item1 The id of one item.
+     * @param item2 The id of the other item.
+     * @return The slot of the link, or {@link #NO_ID} if there is no such link.
+     */
+    public int getLinkSlot(int item1, int item2) {
+        return mLinkIndex.get(mItemKeys[item1], mItemKeys[item2]);
+    }
+
+    /**
+     * Adds a link between two different items after all existing links. Links are undirected,
+     * so a link from b to a already exists if there is a link from a to b. The link has a
+     * weight of 1.
+     *
+     * @param item1 The id of the first item.
+     * @param item2 The id of the second item.
+     * @return The slot of the new link, or {@link #NO_ID} if the link already exists.
+     */
+    public int addLink(int item1, int item2) {
+        return addLink(item1, item2, 1.0f);
+    }
+
+    /**
+     * Adds a weighted link between two different items, after all existing links.
+     *
+     * @param item1 The id of the first item.
+     * @param item2 The id of the second item.
+     * @param weight The weight of the link, such as the flow between the items.
+     * @return The slot of the new link, or {@link #NO_ID} if the link already exists.
+     */
+    public int addLink(int item1, int item2, float weight) {
+        int key1 = mItemKeys[item1];
+        int key2 = mItemKeys[item2];
+        if (mLinkIndex.get(key1, key2) != NO_ID) {
+            return NO_ID;
+        }
+        return appendLink(item1, item2, weight);
+    }
+
+    /**
+     * Adds a link that is known not to exist yet, after all existing links.
+     */
+    private int appendLink(int item1, int item2, float weight) {
+        int key1 = mItemKeys[item1];
+        int key2 = mItemKeys[item2];
+        if (mNumLinkSlots == mLinkItems1.length) {
+            growLinks(mNumLinkSlots * 2);
+        }
+        int slot = mNumLinkSlots++;
+        mLinkIndex.put(key1, key2, slot);
+        mLinkItems1[slot] = key1;
+        mLinkItems2[slot] = key2;
+        mLinkWeights[slot] = weight;
+        appendIncidentSlot(item1, slot);
+        appendIncidentSlot(item2, slot);
+        mNumLinks++;
+        return slot;
+    }
+
+    private void growLinks(int capacity) {
+        mLinkItems1 = Arrays.copyOf(mLinkItems1, capacity);
+        mLinkItems2 = Arrays.copyOf(mLinkItems2, capacity);
+        mEndpointAngles1 = Arrays.copyOf(mEndpointAngles1, capacity);
+        mEndpointAngles2 = Arrays.copyOf(mEndpointAngles2, capacity);
+        mLinkWeights = Arrays.copyOf(mLinkWeights, capacity);
+    }
+
+    /**
+     * Deletes the link between two items.
+     *
+     * @param item1 The id of the first item.
+     * @param item2 The id of the second item.
+     * @return True if a link was deleted, false if there was no such link.
+     */
+    public boolean deleteLink(int item1, int item2) {
+        int slot = getLinkSlot(item1, item2);
+        if (slot == NO_ID) {
+            return false;
+        }
+        deleteLinkSlot(slot);
+        compactLinksIfSparse();
+        return true;
+    }
+
+    private void deleteLinkSlot(int slot) {
+        removeIncidentSlot(mKeyIds[mLinkItems1[slot]], slot);
+        removeIncidentSlot(mKeyIds[mLinkItems2[slot]], slot);
+        clearLinkSlot(slot);
+    }
+
+    /**
+     * Empties a link slot, without removing it from the lists of the links of its items.
+     */
+    private void clearLinkSlot(int slot) {
+        mLinkIndex.remove(mLinkItems1[slot], mLinkItems2[slot]);
+        mLinkItems1[slot] = NO_ID;
+        mLinkItems2[slot] = NO_ID;
+        mNumLinks--;
+        if (mNumRemovedSlots == mRemovedSlots.length) {
+            mRemovedSlots = Arrays.copyOf(mRemovedSlots, mNumRemovedSlots * 2);
+        }
+        mRemovedSlots[mNumRemovedSlots++] = slot;
+    }
+
+    /**
+     * Adds a slot to the end of the links of an item. Slots are allocated in increasing order,
+     * so this keeps the links of the item in slot order.
+     */
+    private void appendIncidentSlot(int id, int slot) {
+        int[] slots = mIncidentSlots[id];
+        if (mNumConnections[id] == slots.length) {
+            slots = Arrays.copyOf(slots, slots.length * 2);
+            mIncidentSlots[id] = slots;
+        }
+        slots[mNumConnections[id]++] = slot;
+        markChanged(id);
+    }
+
+    /**
+     * Removes a slot from the links of an item, keeping the rest in slot order.
+     */
+    private void removeIncidentSlot(int id, int slot) {
+        int[] slots = mIncidentSlots[id];
+        int numSlots = mNumConnections[id];
+        for (int i = 0; i < numSlots; i++) {
+            if (slots[i] == slot) {
+                System.arraycopy(slots, i + 1, slots, i, numSlots - i - 1);
+                mNumConnections[id]--;
+                markChanged(id);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Moves all links to the front of the slot arrays once more than half of the slots are
+     * empty, so that iterating over the slots stays proportional to the number of links.
+     */
+    private void compactLinksIfSparse() {
+        if ((mNumLinkSlots - mNumLinks) > mNumLinks) {
+            compactLinks();
+        }
+    }
+
+    /**
+     * Moves every link down into the empty slots before it, keeping the links in order, and
+     * renumbers the item keys to match the ids.
+     */
+    private void compactLinks() {
+        mLinkIndex.clear();
+        int numLinks = 0;
+        for (int slot = 0; slot < mNumLinkSlots; slot++) {
+            if (mLinkItems1[slot] == NO_ID) {
+                continue;
+            }
+            mLinkItems1[numLinks] = mKeyIds[mLinkItems1[slot]];
+            mLinkItems2[numLinks] = mKeyIds[mLinkItems2[slot]];
+            mEndpointAngles1[numLinks] = mEndpointAngles1[slot];
+            mEndpointAngles2[numLinks] = mEndpointAngles2[slot];
+            mLinkWeights[numLinks] = mLinkWeights[slot];
+            mLinkIndex.put(mLinkItems1[numLinks], mLinkItems2[numLinks], numLinks);
+            numLinks++;
+        }
+        mNumLinkSlots = numLinks;
+        resetItemKeys();
+
+        // Every link may have moved, so rebuild the lists of slots.
+        fillIncidentSlots();
+        mNumRemovedSlots = 0;
+        mSlotsMoved = true;
+    }
+
+    /**
+     * Makes the key of every item its id. Any links must already refer to their items by id.
+     */
+    private void resetItemKeys() {
+        for (int id = 0; id < mNumItems; id++) {
+            mItemKeys[id] = id;
+            mKeyIds[id] = id;
+        }
+        mNumFreeKeys = 0;
+    }
+
+    /**
+     * Fills the list of slots of each item from the links, and counts its connections. Going
+     * through the slots in order keeps each list in slot order. Every list must already be
+     * large enough.
+     */
+    private void fillIncidentSlots() {
+        Arrays.fill(mNumConnections, 0, mNumItems, 0);
+        for (int slot = 0; slot < mNumLinkSlots; slot++) {
+            int item1 = mLinkItems1[slot];
+            if (item1 == NO_ID) {
+                continue;
+            }
+            item1 = mKeyIds[item1];
+            int item2 = mKeyIds[mLinkItems2[slot]];
+            mIncidentSlots[item1][mNumConnections[item1]++] = slot;
+            mIncidentSlots[item2][mNumConnections[item2]++] = slot;
+        }
+    }
+
+    /**
+     * Divides the circle evenly between the items, in id order.
+     */
+    public void assignItemAngles() {
+        float startAngle = 0.0f;
+        float endAngle;
+        for (int id = 0; id < mNumItems; id++) {
+            mStartAngles[id] = startAngle;
+            endAngle = (startAngle + (360.0f / mNumItems));
+            mEndAngles[id] = endAngle;
+            startAngle = endAngle;
+        }
+    }
+
+    /**
+     * Assigns the angles at which each link meets its two items.
+     *
+     * @param spread True to spread the links of an item evenly across its arc, in slot order.
+     *               False to have every link meet the item at its start angle.
+     */
+    public void assignLinkAngles(boolean spread) {
+        mLayoutValid = true;
+        mSpread = spread;
+        System.arraycopy(mNumConnections, 0, mNumUnassigned, 0, mNumItems);
+        for (int slot = 0; slot < mNumLinkSlots; slot++) {
+            int item1 = mLinkItems1[slot];
+            if (item1 == NO_ID) {
+                continue;
+            }
+            item1 = mKeyIds[item1];
+            int item2 = mKeyIds[mLinkItems2[slot]];
+            if (spread) {
+                mEndpointAngles1[slot] = nextEndpointAngle(item1);
+                mEndpointAngles2[slot] = nextEndpointAngle(item2);
+            } else {
+                mEndpointAngles1[slot] = mStartAngles[item1];
+                mEndpointAngles2[slot] = mStartAngles[item2];
+            }
+        }
+    }
+
+    /**
+     * Returns true if {@link #updateLinkAngles()} can bring the link angles up to date. This is
+     * the case when a full layout has run since items were last added or deleted, with the
+     * same spread.
+     *
+     * @param spread The spread argument a full layout would use.
+     * @return True if the layout can be updated incrementally.
+     */
+    public boolean canUpdateLinkAngles(boolean spread) {
+        return (mLayoutValid && (spread == mSpread));
+    }
+
+    /**
+     * Returns true if every item and link angle is up to date, because a full layout has run
+     * and no links have changed since.
+     *
+     * @return True if the store is laid out.
+     */
+    public boolean hasLayout() {
+        return (mLayoutValid && (mNumChangedItems == 0));
+    }
+
+    /**
+     * Reassigns the link angles on the arcs of the items whose links changed since the last
+     * layout. The result is the same as {@link #assignLinkAngles(boolean)}, in O(degree) per
+     * changed item instead of O(links).
+     */
+    public void updateLinkAngles() {
+        for (int i = 0; i < mNumChangedItems; i++) {
+            int id = mChangedItems[i];
+            int[] slots = mIncidentSlots[id];
+            for (int index = 0; index < mNumConnections[id]; index++) {
+                int slot = slots[index];
+                float angle;
+                if (mSpread) {
+                    float sweepAngle = (mEndAngles[id] - mStartAngles[id]);
+                    float distribution = (sweepAngle / (mNumConnections[id] + 1));
+                    angle = (mStartAngles[id] + (distribution * (index + 1)));
+                } else {
+                    angle = mStartAngles[id];
+                }
+                // A link from an item to itself appears twice in a row, first for its first end.
+                boolean secondOfSelfLink = ((index > 0) && (slots[index - 1] == slot));
+                boolean firstEnd = ((mLinkItems1[slot] == mItemKeys[id]) && !secondOfSelfLink);
+                if (firstEnd) {
+                    mEndpointAngles1[slot] = angle;
+                } else {
+                    mEndpointAngles2[slot] = angle;
+                }
+            }
+        }
+    }
+
+    public int getNumChangedItems() {
+        return mNumChangedItems;
+    }
+
+    /**
+     * Returns one of the items whose links were added or deleted since the last call to
+     * {@link #clearChanges()}.
+     *
+     * @param index The index of the changed item, less than {@link #getNumChangedItems()}.
+     * @return The id of the item.
+     */
+    public int getChangedItem(int index) {
+        return mChangedItems[index];
+    }
+
+    public int getNumRemovedSlots() {
+        return mNumRemovedSlots;
+    }
+
+    /**
+     * Returns one of the slots emptied since the last call to {@link #clearChanges()}.
+     *
+     * @param index The index of the removed slot, less than {@link #getNumRemovedSlots()}.
+     * @return The slot.
+     */
+    public int getRemovedSlot(int index) {
+        return mRemovedSlots[index];
+    }
+
+    /**
+     * Returns true if links were moved to new slots since the last call to
+     * {@link #clearChanges()}, in which case anything indexed by slot must be rebuilt.
+     *
+     * @return True if the slots of the links have changed.
+     */
+    public boolean haveSlotsMoved() {
+        return mSlotsMoved;
+    }
+
+    /**
+     * Forgets the changes recorded since the last call, once anything that depends on them
+     * has been brought up to date.
+     */
+    public void clearChanges() {
+        clearChangedItems();
+        mNumRemovedSlots = 0;
+        mSlotsMoved = false;
+    }
+
+    private void markChanged(int id) {
+        if (!mItemChanged[id]) {
+            mItemChanged[id] = true;
+            mChangedItems[mNumChangedItems++] = id;
+        }
+    }
+
+    private void clearChangedItems() {
+        for (int i = 0; i < mNumChangedItems; i++) {
+            mItemChanged[mChangedItems[i]] = false;
+        }
+        mNumChangedItems = 0;
+    }
+
+    private float nextEndpointAngle(int id) {
+        float sweepAngle = (mEndAngles[id] - mStartAngles[id]);
+        float distribution = (sweepAngle / (mNumConnections[id] + 1));
+        int angleIndex = ((mNumConnections[id] - mNumUnassigned[id]) + 1);
+        mNumUnassigned[id]--;
+        return (mStartAngles[id] + (distribution * angleIndex));
+    }
+
+    /**
+     * Returns the number of bytes {@link #writeTo} writes.
+     *
+     * @return The size of the binary form of the store.
+     */
+    public long getBinarySize() {
+        long labelLength = 0;
+        for (int id = 0; id < mNumItems; id++) {
+            labelLength += getLabel(id).getBytes(UTF_8).length;
+        }
+        long numFloats = (hasLayout() ? ((2L * mNumItems) + (2L * mNumLinks)) : 0);
+        return ((8 * 4)
+                + mLinkIndex.getMemoryBytes()
+                + (2L * 4 * mNumItems)
+                + (5L * 4 * mNumLinks)
+                + (4 * numFloats)
+                + (4L * (mNumItems + 1))
+                + labelLength);
+    }
+
+    /**
+     * Writes the store in its binary form. Empty link slots are left out. If the store is laid
+     * out, its angles are written too, so that a store read back does not need laying out
+     * again. The binary form holds, in order:
+     * <ul>
+     * <li>A header of eight ints: magic, version, flags, number of items, number of links,
+     * capacity of the link index, length of the label table in bytes and padding.</li>
+     * <li>The keys (longs) and values (ints) of the link index table.</li>
+     * <li>The colour of each item, and the two item ids and the weight of each link.</li>
+     * <li>The number of links of each item, then the slots of the links of each item in
+     * turn.</li>
+     * <li>If laid out, the start and end angle of each item and the two endpoint angles of
+     * each link.</li>
+     * <li>The offset of each label in the label table, then the end offset of the last.</li>
+     * <li>The label table, of UTF-8 labels one after another.</li>
+     * </ul>
+     * Numbers are little-endian, the byte order of the devices that read them, so that they
+     * can be copied in bulk. The long keys start on an eight byte boundary.
+     *
+     * @param out The buffer to write to, from its current position, with at least
+     *            {@link #getBinarySize()} bytes remaining.
+     */
+    public void writeTo(ByteBuffer out) {
+        if ((mNumLinks != mNumLinkSlots) || !keysMatchIds()) {
+            GraphStore compacted = copy();
+            compacted.compactLinks(); // Keeps the capacity of the index, and numbers items by id
+            compacted.writeTo(out);
+            return;
+        }
+        byte[][] labels = new byte[mNumItems][];
+        int labelLength = 0;
+        for (int id = 0; id < mNumItems; id++) {
+            labels[id] = getLabel(id).getBytes(UTF_8);
+            labelLength += labels[id].length;
+        }
+        boolean hasLayout = hasLayout();
+        int flags = (hasLayout ? FLAG_ANGLES : 0) | ((hasLayout && mSpread) ? FLAG_SPREAD : 0);
+
+        out.order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(MAGIC);
+        out.putInt(VERSION);
+        out.putInt(flags);
+        out.putInt(mNumItems);
+        out.putInt(mNumLinks);
+        out.putInt(mLinkIndex.getCapacity());
+        out.putInt(labelLength);
+        out.putInt(0);
+        mLinkIndex.writeTo(out);
+        writeInts(out, mColours, mNumItems);
+        writeInts(out, mLinkItems1, mNumLinks);
+        writeInts(out, mLinkItems2, mNumLinks);
+        writeFloats(out, mLinkWeights, mNumLinks);
+        writeInts(out, mNumConnections, mNumItems);
+        for (int id = 0; id < mNumItems; id++) {
+            writeInts(out, mIncidentSlots[id], mNumConnections[id]);
+        }
+        if (hasLayout) {
+            writeFloats(out, mStartAngles, mNumItems);
+            writeFloats(out, mEndAngles, mNumItems);
+            writeFloats(out, mEndpointAngles1, mNumLinks);
+            writeFloats(out, mEndpointAngles2, mNumLinks);
+        }
+        int offset = 0;
+        for (int id = 0; id < mNumItems; id++) {
+            out.putInt(offset);
+            offset += labels[id].length;
+        }
+        out.putInt(offset);
+        for (int id = 0; id < mNumItems; id++) {
+            out.put(labels[id]);
+        }
+    }
+
+    /**
+     * Reads a store in the binary form written by {@link #writeTo}. The primitive arrays are
+     * copied out of the buffer in bulk, and the labels are left in it to be decoded when they
+     * are first needed, so the buffer must not change while the store is in use.
+     *
+     * @param in The buffer to read from, from its current position.
+     * @return The store.
+     * @throws IOException If the buffer does not hold a consistent store in a supported version.
+     */
+    public static GraphStore readFrom(ByteBuffer in) throws IOException {
+        try {
+            in.order(ByteOrder.LITTLE_ENDIAN);
+            if (in.getInt() != MAGIC) {
+                throw new IOException("Not a chord diagram file");
+            }
+            int version = in.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported chord diagram file version " + version);
+            }
+            int flags = in.getInt();
+            int numItems = in.getInt();
+            int numLinks = in.getInt();
+            int indexCapacity = in.getInt();
+            int labelLength = in.getInt();
+            in.getInt();
+            if ((numItems < 0) || (numLinks < 0) || (labelLength < 0)) {
+                throw new IOException("Corrupt chord diagram file header");
+            }
+
+            GraphStore graph = new GraphStore();
+            graph.growItems(Math.max(INITIAL_CAPACITY, numItems));
+            graph.growLinks(Math.max(INITIAL_CAPACITY, numLinks));
+            graph.mLinkIndex.readFrom(in, indexCapacity, numLinks);
+            readInts(in, graph.mColours, numItems);
+            readInts(in, graph.mLinkItems1, numLinks);
+            readInts(in, graph.mLinkItems2, numLinks);
+            readFloats(in, graph.mLinkWeights, numLinks);
+            readInts(in, graph.mNumConnections, numItems);
+            for (int id = 0; id < numItems; id++) {
+                int numConnections = graph.mNumConnections[id];
+                graph.mIncidentSlots[id] = new int[Math.max(2, numConnections)];
+                readInts(in, graph.mIncidentSlots[id], numConnections);
+            }
+            if ((flags & FLAG_ANGLES) != 0) {
+                readFloats(in, graph.mStartAngles, numItems);
+                readFloats(in, graph.mEndAngles, numItems);
+                readFloats(in, graph.mEndpointAngles1, numLinks);
+                readFloats(in, graph.mEndpointAngles2, numLinks);
+                graph.mLayoutValid = true;
+                graph.mSpread = ((flags & FLAG_SPREAD) != 0);
+            }
+            graph.mLabelOffsets = new int[numItems + 1];
+            readInts(in, graph.mLabelOffsets, numItems + 1);
+            graph.mLabelBytes = in.slice(); // Byte order does not matter to UTF-8
+            graph.mLabelBytes.limit(labelLength);
+            in.position(in.position() + labelLength);
+            checkReadLinks(graph, numItems, numLinks, labelLength);
+            graph.mLinkIndex.checkLinks(graph.mLinkItems1, graph.mLinkItems2, numLinks);
+            checkReadLabels(graph.mLabelBytes, graph.mLabelOffsets, numItems);
+            graph.mItemIds = null;
+            graph.mNumItems = numItems;
+            graph.resetItemKeys();
+            graph.mNumLinkSlots = numLinks;
+            graph.mNumLinks = numLinks;
+            return graph;
+        } catch (BufferUnderflowException | IllegalArgumentException
+                | IndexOutOfBoundsException | NegativeArraySizeException e) {
+            throw new IOException("Truncated or corrupt chord diagram file", e);
+        }
+    }
+
+    /**
+     * Checks that the links and labels read by {@link #readFrom} refer only to what was read,
+     * so that a corrupt file fails to open rather than failing later, when it is drawn.
+     */
+    private static void checkReadLinks(GraphStore graph, int numItems, int numLinks,
+                                       int labelLength) throws IOException {
+        for (int slot = 0; slot < numLinks; slot++) {
+            int item1 = graph.mLinkItems1[slot];
+            int item2 = graph.mLinkItems2[slot];
+            if ((item1 < 0) || (item1 >= numItems) || (item2 < 0) || (item2 >= numItems)) {
+                throw new IOException("Link " + slot + " joins missing items " + item1
+                        + " and " + item2);
+            }
+        }
+        for (int id = 0; id < numItems; id++) {
+            int[] incidentSlots = graph.mIncidentSlots[id];
+            for (int index = 0; index < graph.mNumConnections[id]; index++) {
+                int slot = incidentSlots[index];
+                if ((slot < 0) || (slot >= numLinks)
+                        || ((graph.mLinkItems1[slot] != id) && (graph.mLinkItems2[slot] != id))) {
+                    throw new IOException("Item " + id + " lists link " + slot
+                            + ", which does not join it");
+                }
+            }
+        }
+        int[] labelOffsets = graph.mLabelOffsets;
+        for (int id = 0; id < numItems; id++) {
+            if ((labelOffsets[id] < 0) || (labelOffsets[id] > labelOffsets[id + 1])
+                    || (labelOffsets[id + 1] > labelLength)) {
+                throw new IOException("Label " + id + " is outside the labels");
+            }
+        }
+    }
+
+    /**
+     * Checks that no two labels read by {@link #readFrom} are the same. The UTF-8 bytes of the
+     * labels are hashed and compared where they lie, so no label is decoded.
+     */
+    private static void checkReadLabels(ByteBuffer labelBytes, int[] labelOffsets,
+                                        int numItems) throws IOException {
+        int capacity = Integer.highestOneBit(Math.max(1, numItems) * 2) * 2;
+        int mask = (capacity - 1);
+        int[] table = new int[capacity]; // Item id + 1, or zero if empty
+        for (int id = 0; id < numItems; id++) {
+            int hash = 0;
+            for (int i = labelOffsets[id]; i < labelOffsets[id + 1]; i++) {
+                hash = (31 * hash) + labelBytes.get(i);
+            }
+            int i = ((hash ^ (hash >>> 16)) & mask);
+            while (table[i] != 0) {
+                if (labelsEqual(labelBytes, labelOffsets, table[i] - 1, id)) {
+                    throw new IOException("Items " + (table[i] - 1) + " and " + id
+                            + " have the same label");
+                }
+                i = ((i + 1) & mask);
+            }
+            table[i] = (id + 1);
+        }
+    }
+
+    private static boolean labelsEqual(ByteBuffer labelBytes, int[] labelOffsets, int id1,
+                                       int id2) {
+        int start1 = labelOffsets[id1];
+        int start2 = labelOffsets[id2];
+        int length = (labelOffsets[id1 + 1] - start1);
+        if ((labelOffsets[id2 + 1] - start2) != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (labelBytes.get(start1 + i) != labelBytes.get(start2 + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if the key of every item is its id, so that links refer to items by id.
+     */
+    private boolean keysMatchIds() {
+        for (int id = 0; id < mNumItems; id++) {
+            if (mItemKeys[id] != id) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void writeInts(ByteBuffer out, int[] values, int length) {
+        out.asIntBuffer().put(values, 0, length);
+        out.position(out.position() + (length * 4));
+    }
+
+    private static void writeFloats(ByteBuffer out, float[] values, int length) {
+        out.asFloatBuffer().put(values, 0, length);
+        out.position(out.position() + (length * 4));
+    }
+
+    private static void readInts(ByteBuffer in, int[] values, int length) {
+        in.asIntBuffer().get(values, 0, length);
+        in.position(in.position() + (length * 4));
+    }
+
+    private static void readFloats(ByteBuffer in, float[] values, int length) {
+        in.asFloatBuffer().get(values, 0, length);
+        in.position(in.position() + (length * 4));
+    }
+}
@@ -0,0 +1,288 @@
+package com.thomaslorincz.chord_diagram.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * LinkIndex maps unordered pairs of item ids to link slots. It is an open-addressing hash map
+ * with primitive long keys and linear probing, so inserts, lookups and deletes are O(1) on
+ * average, never collide two different pairs and never box.
+ */
+class LinkIndex {
+    /**
+     * The number of bytes of storage used by each entry of the table.
+     */
+    static final int BYTES_PER_ENTRY = (8 + 4);
+
+    private static final long EMPTY = -1L;
+    private static final int INITIAL_CAPACITY = 16; // Must be a power of two
+
+    private long[] mKeys = newKeys(INITIAL_CAPACITY);
+    private int[] mValues = new int[INITIAL_CAPACITY];
+    private int mSize;
+
+    /**
+     * Returns the key of the link between two items. The key does not depend on the order of
+     * the items.
+     *
+     * @param item1 The id of one item.
+     * @param item2 The id of the other item.
+     * @return The key of the pair.
+     */
+    static long pairKey(int item1, int item2) {
+        int low = Math.min(item1, item2);
+        int high = Math.max(item1, item2);
+        return (((long) low << 32) | (high & 0xFFFFFFFFL));
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    int getCapacity() {
+        return mKeys.length;
+    }
+
+    /**
+     * Returns the number of bytes of storage currently allocated for the table. The table is
+     * kept at most half full, so this is between two and four entries per link.
+     *
+     * @return The size of the table, in bytes.
+     */
+    long getMemoryBytes() {
+        return ((long) mKeys.length * BYTES_PER_ENTRY);
+    }
+
+    /**
+     * Returns the slot of the link between two items.
+     *
+     * @param item1 The id of one item.
+     * @param item2 The id of the other item.
+     * @return The slot of the link, or {@link GraphStore#NO_ID} if there is no such link.
+     */
+    int get(int item1, int item2) {
+        long key = pairKey(item1, item2);
+        int mask = (mKeys.length - 1);
+        for (int i = (hash(key) & mask); ; i = ((i + 1) & mask)) {
+            if (mKeys[i] == key) {
+                return mValues[i];
+            }
+            if (mKeys[i] == EMPTY) {
+                return GraphStore.NO_ID;
+            }
+        }
+    }
+
+    /**
+     * Maps the link between two items to a slot, replacing any previous mapping.
+     *
+     * @param item1 The id of one item.
+     * @param item2 The id of the other item.
+     * @param slot The slot of the link.
+     */
+    void put(int item1, int item2, int slot) {
+        if ((mSize + 1) > (mKeys.length / 2)) {
+            rehash(mKeys.length * 2);
+        }
+        long key = pairKey(item1, item2);
+        int mask = (mKeys.length - 1);
+        int i = (hash(key) & mask);
+        while ((mKeys[i] != EMPTY) && (mKeys[i] != key)) {
+            i = ((i + 1) & mask);
+        }
+        if (mKeys[i] == EMPTY) {
+            mKeys[i] = key;
+            mSize++;
+        }
+        mValues[i] = slot;
+    }
+
+    /**
+     * Removes the link between two items.
+     *
+     * @param item1 The id of one item.
+     * @param item2 The id of the other item.
+     * @return The slot the link was mapped to, or {@link GraphStore#NO_ID} if it was not.
+     */
+    int remove(int item1, int item2) {
+        long key = pairKey(item1, item2);
+        int mask = (mKeys.length - 1);
+        int i = (hash(key) & mask);
+        while (mKeys[i] != key) {
+            if (mKeys[i] == EMPTY) {
+                return GraphStore.NO_ID;
+            }
+            i = ((i + 1) & mask);
+        }
+        int slot = mValues[i];
+        mSize--;
+
+        // Shift later entries of the probe sequence back so that no tombstone is needed.
+        int gap = i;
+        for (int j = ((i + 1) & mask); mKeys[j] != EMPTY; j = ((j + 1) & mask)) {
+            int home = (hash(mKeys[j]) & mask);
+            // Move the entry at j into the gap unless its home lies cyclically in (gap, j].
+            boolean homeAfterGap = (gap <= j) ? ((gap < home) && (home <= j)) : ((gap < home) || (home <= j));
+            if (!homeAfterGap) {
+                mKeys[gap] = mKeys[j];
+                mValues[gap] = mValues[j];
+                gap = j;
+            }
+        }
+        mKeys[gap] = EMPTY;
+        return slot;
+    }
+
+    /**
+     * Grows the table so that it can hold a number of links without rehashing.
+     *
+     * @param size The number of links to make room for.
+     */
+    void reserve(int size) {
+        int capacity = capacityFor(Math.max(size, mSize));
+        if (capacity > mKeys.length) {
+            rehash(capacity);
+        }
+    }
+
+    /**
+     * Returns the smallest capacity of a table holding a number of links. Inserting links
+     * one by one into an empty table gives a table of this capacity.
+     *
+     * @param size The number of links.
+     * @return The capacity.
+     */
+    static int capacityFor(int size) {
+        int capacity = INITIAL_CAPACITY;
+        while (size > (capacity / 2)) {
+            capacity *= 2;
+        }
+        return capacity;
+    }
+
+    /**
+     * Replaces the contents of this index with a copy of another.
+     *
+     * @param other The index to copy.
+     */
+    void copyFrom(LinkIndex other) {
+        mKeys = other.mKeys.clone();
+        mValues = other.mValues.clone();
+        mSize = other.mSize;
+    }
+
+    /**
+     * Writes the table as it is, keys then values, so that it can be read back without
+     * rehashing.
+     *
+     * @param out The buffer to write to, from its current position.
+     */
+    void writeTo(ByteBuffer out) {
+        out.asLongBuffer().put(mKeys);
+        out.position(out.position() + (mKeys.length * 8));
+        out.asIntBuffer().put(mValues);
+        out.position(out.position() + (mValues.length * 4));
+    }
+
+    /**
+     * Replaces the contents of this index with a table written by {@link #writeTo}.
+     *
+     * @param in The buffer to read from, from its current position.
+     * @param capacity The capacity of the written table.
+     * @param size The number of entries in the written table.
+     * @throws IllegalArgumentException If the capacity is not a power of two that can hold
+     *                                  the entries.
+     */
+    void readFrom(ByteBuffer in, int capacity, int size) {
+        if ((Integer.bitCount(capacity) != 1) || (size > (capacity / 2))) {
+            throw new IllegalArgumentException("Bad link index capacity " + capacity);
+        }
+        mKeys = new long[capacity];
+        mValues = new int[capacity];
+        in.asLongBuffer().get(mKeys);
+        in.position(in.position() + (capacity * 8));
+        in.asIntBuffer().get(mValues);
+        in.position(in.position() + (capacity * 4));
+        mSize = size;
+    }
+
+    /**
+     * Checks that a table read by {@link #readFrom} maps the pair of items of each link, and
+     * nothing else, to the link's slot, and that a lookup finds every entry. Runs in time
+     * proportional to the capacity of the table.
+     *
+     * @param items1 The first item of each link.
+     * @param items2 The second item of each link.
+     * @param numLinks The number of links, which fill slots 0 to numLinks - 1.
+     * @throws IOException If the table does not match the links.
+     */
+    void checkLinks(int[] items1, int[] items2, int numLinks) throws IOException {
+        int mask = (mKeys.length - 1);
+        int numEntries = 0;
+        for (int i = 0; i < mKeys.length; i++) {
+            long key = mKeys[i];
+            if (key == EMPTY) {
+                continue;
+            }
+            int slot = mValues[i];
+            if ((slot < 0) || (slot >= numLinks) || (key != pairKey(items1[slot], items2[slot]))) {
+                throw new IOException("Link index entry " + i + " does not match link " + slot);
+            }
+            // A lookup probes from the key's home, so nothing before the entry may be empty or
+            // hold the same key.
+            for (int j = (hash(key) & mask); j != i; j = ((j + 1) & mask)) {
+                if ((mKeys[j] == EMPTY) || (mKeys[j] == key)) {
+                    throw new IOException("Link index entry " + i + " cannot be found");
+                }
+            }
+            numEntries++;
+        }
+        // Entries have distinct keys, so each names a different link.
+        if ((numEntries != numLinks) || (mSize != numLinks)) {
+            throw new IOException("Link index holds " + numEntries + " of " + numLinks + " links");
+        }
+    }
+
+    void clear() {
+        Arrays.fill(mKeys, EMPTY);
+        mSize = 0;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = mKeys;
+        int[] oldValues = mValues;
+        mKeys = newKeys(capacity);
+        mValues = new int[capacity];
+        int mask = (capacity - 1);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int j = (hash(oldKeys[i]) & mask);
+                while (mKeys[j] != EMPTY) {
+                    j = ((j + 1) & mask);
+                }
+                mKeys[j] = oldKeys[i];
+                mValues[j] = oldValues[i];
+            }
+        }
+    }
+
+    private static long[] newKeys(int capacity) {
+        long[] keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        return keys;
+    }
+
+    /**
+     * Mixes the bits of a key (the finalizer of MurmurHash3), since pair keys of neighbouring
+     * ids differ only in their low bits.
+     */
+    private static int hash(long key) {
+        key ^= (key >>> 33);
+        key *= 0xff51afd7ed558ccdL;
+        key ^= (key >>> 33);
+        key *= 0xc4ceb3fe1a85ec53L;
+        key ^= (key >>> 33);
+        return (int) key;
+    }
+}
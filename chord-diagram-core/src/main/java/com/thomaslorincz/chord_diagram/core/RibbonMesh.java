@@ -0,0 +1,357 @@
+package com.thomaslorincz.chord_diagram.core;
+
+import java.util.Arrays;
+
+/**
+ * RibbonMesh builds weighted ribbon chords as a single triangle strip. Each item's arc is
+ * divided among its links in proportion to their weights, in the order of its incident links,
+ * and each link becomes a band joining its share of one arc to its share of the other. The
+ * two sides of a band are quadratic Bezier curves with their control point at the centre,
+ * flattened to a tolerance as {@link BezierTessellator} does for line chords.
+ *
+ * Every band is a run of the strip, joined to the next by two repeated vertices that form
+ * degenerate triangles, so the whole mesh can be drawn in one call, and the bands of one item
+ * can be copied out the same way to draw them over it. Vertex colours blend from the colour
+ * of a link's first item to the colour of its second along the band. The ends of a band are
+ * straight, so very wide bands are slightly flattened where they meet their arcs.
+ */
+public class RibbonMesh {
+    private static final int INITIAL_CAPACITY = 64;
+
+    // Angles of each link's share of the arcs of its first and second items, by slot
+    private float[] mBandStarts1 = new float[INITIAL_CAPACITY];
+    private float[] mBandEnds1 = new float[INITIAL_CAPACITY];
+    private float[] mBandStarts2 = new float[INITIAL_CAPACITY];
+    private float[] mBandEnds2 = new float[INITIAL_CAPACITY];
+    private int[] mBandSegments = new int[INITIAL_CAPACITY]; // Zero for empty slots
+    private int[] mBandFirstVertices = new int[INITIAL_CAPACITY]; // Where each band starts
+    private boolean[] mSlotMarks = new boolean[INITIAL_CAPACITY]; // Scratch, clear between uses
+    private int mNumBandSlots;
+
+    // The strip, as x, y pairs and one colour per vertex
+    private float[] mVertices = new float[0];
+    private int[] mColours = new int[0];
+    private int mNumVertices;
+    private int mNumBands;
+    private int mMaxItemVertices;
+
+    public int getNumVertices() {
+        return mNumVertices;
+    }
+
+    public int getNumBands() {
+        return mNumBands;
+    }
+
+    /**
+     * Returns the vertices of the strip as x, y pairs. Only the first 2 * getNumVertices()
+     * values are part of the mesh.
+     *
+     * @return The vertex array, which is reused by the next build.
+     */
+    public float[] getVertices() {
+        return mVertices;
+    }
+
+    /**
+     * Returns the colour of each vertex of the strip, as ARGB. The array is as long as the
+     * vertex array, since Canvas.drawVertices checks the colours against the number of vertex
+     * values rather than the number of vertices.
+     *
+     * @return The colour array, which is reused by the next build.
+     */
+    public int[] getColours() {
+        return mColours;
+    }
+
+    /**
+     * Returns the angle of the middle of a link's share of its first item's arc, where the
+     * centre line of its band starts.
+     *
+     * @param slot The slot of a link in the store the mesh was built from.
+     */
+    public float getBandMidAngle1(int slot) {
+        return ((mBandStarts1[slot] + mBandEnds1[slot]) / 2);
+    }
+
+    /**
+     * Returns the angle of the middle of a link's share of its second item's arc, where the
+     * centre line of its band ends.
+     *
+     * @param slot The slot of a link in the store the mesh was built from.
+     */
+    public float getBandMidAngle2(int slot) {
+        return ((mBandStarts2[slot] + mBandEnds2[slot]) / 2);
+    }
+
+    /**
+     * Returns an upper bound on the number of vertices {@link #copyItemBands} writes for any
+     * one item of the store the mesh was built from.
+     */
+    public int getMaxItemVertices() {
+        return mMaxItemVertices;
+    }
+
+    /**
+     * Copies the bands of an item's links into a strip of their own, joined as in the mesh, so
+     * that they can be drawn over it in one call. Links the mesh was not built with are
+     * skipped, and copying stops at the first band that does not fit.
+     *
+     * @param graph The store, whose links of the item are copied.
+     * @param item The id of the item.
+     * @param alpha The alpha given to every copied vertex, from 0 to 255.
+     * @param vertices Receives the strip as x, y pairs.
+     * @param colours Receives the colour of each vertex. Must be as long as vertices.
+     * @return The number of vertices written.
+     */
+    public int copyItemBands(GraphStore graph, int item, int alpha, float[] vertices,
+                             int[] colours) {
+        int alphaMask = (alpha << 24);
+        int numConnections = graph.getNumConnections(item);
+        int vertex = 0;
+        for (int index = 0; index < numConnections; index++) {
+            int slot = graph.getIncidentSlot(item, index);
+            // A link from an item to itself appears twice, but is copied once.
+            if ((slot >= mNumBandSlots) || (mBandSegments[slot] == 0) || mSlotMarks[slot]) {
+                continue;
+            }
+            int first = mBandFirstVertices[slot];
+            int numBandVertices = (2 * (mBandSegments[slot] + 1));
+            int join = (vertex > 0) ? 2 : 0;
+            if ((2 * (vertex + join + numBandVertices)) > vertices.length) {
+                break;
+            }
+            mSlotMarks[slot] = true;
+            if (join > 0) {
+                // Repeat the last vertex of the previous band, and the first of this one.
+                copyVertex(vertices, colours, vertex - 1, vertex);
+                vertex++;
+                System.arraycopy(mVertices, 2 * first, vertices, 2 * vertex, 2);
+                colours[vertex] = ((mColours[first] & 0x00FFFFFF) | alphaMask);
+                vertex++;
+            }
+            System.arraycopy(mVertices, 2 * first, vertices, 2 * vertex, 2 * numBandVertices);
+            for (int i = 0; i < numBandVertices; i++) {
+                colours[vertex + i] = ((mColours[first + i] & 0x00FFFFFF) | alphaMask);
+            }
+            vertex += numBandVertices;
+        }
+        for (int index = 0; index < numConnections; index++) {
+            int slot = graph.getIncidentSlot(item, index);
+            if (slot < mNumBandSlots) {
+                mSlotMarks[slot] = false;
+            }
+        }
+        return vertex;
+    }
+
+    /**
+     * Builds the mesh of a laid out store.
+     *
+     * @param graph The store, with item angles assigned.
+     * @param centreX The x coordinate of the centre of the diagram.
+     * @param centreY The y coordinate of the centre of the diagram.
+     * @param radius The radius at which the ribbons meet the arcs.
+     * @param tolerance The maximum distance between a side of a band and its curve, in pixels.
+     * @param alpha The alpha given to every vertex, from 0 to 255.
+     * @return True if the mesh was built, false if the thread was interrupted first.
+     */
+    public boolean build(GraphStore graph, float centreX, float centreY, float radius,
+                         float tolerance, int alpha) {
+        int numLinkSlots = graph.getNumLinkSlots();
+        ensureBandCapacity(numLinkSlots);
+        assignBands(graph, numLinkSlots);
+
+        // Size the strip first, so it is filled without regrowing.
+        int numVertices = 0;
+        int numBands = 0;
+        for (int slot = 0; slot < numLinkSlots; slot++) {
+            if ((slot % 1024 == 0) && Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+            mBandSegments[slot] = 0;
+            if (graph.getLinkItem1(slot) == GraphStore.NO_ID) {
+                continue;
+            }
+            float midAngle1 = getBandMidAngle1(slot);
+            float midAngle2 = getBandMidAngle2(slot);
+            int segments = BezierTessellator.segmentCount(
+                    getX(centreX, midAngle1, radius), getY(centreY, midAngle1, radius),
+                    centreX, centreY,
+                    getX(centreX, midAngle2, radius), getY(centreY, midAngle2, radius),
+                    tolerance);
+            mBandSegments[slot] = segments;
+            numVertices += (2 * (segments + 1));
+            if (numBands > 0) {
+                numVertices += 2; // Degenerate join to the previous band
+            }
+            numBands++;
+        }
+        if (mVertices.length < (2 * numVertices)) {
+            mVertices = new float[2 * numVertices];
+            mColours = new int[2 * numVertices];
+        }
+
+        int vertex = 0;
+        for (int slot = 0; slot < numLinkSlots; slot++) {
+            if (mBandSegments[slot] == 0) {
+                continue;
+            }
+            if ((slot % 1024 == 0) && Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+            int alphaMask = (alpha << 24);
+            int colour1 = ((graph.getColour(graph.getLinkItem1(slot)) & 0x00FFFFFF) | alphaMask);
+            int colour2 = ((graph.getColour(graph.getLinkItem2(slot)) & 0x00FFFFFF) | alphaMask);
+            if (vertex > 0) {
+                // Repeat the last vertex of the previous band, and the first of this one.
+                copyVertex(mVertices, mColours, vertex - 1, vertex);
+                vertex++;
+                setVertex(vertex, getX(centreX, mBandStarts1[slot], radius),
+                        getY(centreY, mBandStarts1[slot], radius), colour1);
+                vertex++;
+            }
+            mBandFirstVertices[slot] = vertex;
+            vertex = addBand(slot, vertex, centreX, centreY, radius, colour1, colour2);
+        }
+        mNumVertices = vertex;
+        mNumBands = numBands;
+        mNumBandSlots = numLinkSlots;
+        mMaxItemVertices = findMaxItemVertices(graph);
+        return true;
+    }
+
+    /**
+     * Returns the most vertices the bands of any one item take when copied with their joins.
+     * A link from an item to itself is counted twice, so this is an upper bound.
+     */
+    private int findMaxItemVertices(GraphStore graph) {
+        int max = 0;
+        for (int id = 0; id < graph.getNumItems(); id++) {
+            int numVertices = 0;
+            for (int index = 0; index < graph.getNumConnections(id); index++) {
+                int segments = mBandSegments[graph.getIncidentSlot(id, index)];
+                if (segments > 0) {
+                    numVertices += ((2 * (segments + 1)) + ((numVertices > 0) ? 2 : 0));
+                }
+            }
+            max = Math.max(max, numVertices);
+        }
+        return max;
+    }
+
+    /**
+     * Divides the arc of each item among its links in proportion to their weights. Items whose
+     * links all weigh nothing divide their arc evenly.
+     */
+    private void assignBands(GraphStore graph, int numLinkSlots) {
+        for (int id = 0; id < graph.getNumItems(); id++) {
+            int numConnections = graph.getNumConnections(id);
+            float totalWeight = 0;
+            for (int index = 0; index < numConnections; index++) {
+                totalWeight += Math.max(0, graph.getLinkWeight(graph.getIncidentSlot(id, index)));
+            }
+            float startAngle = graph.getStartAngle(id);
+            float sweepAngle = (graph.getEndAngle(id) - startAngle);
+            float angle = startAngle;
+            for (int index = 0; index < numConnections; index++) {
+                int slot = graph.getIncidentSlot(id, index);
+                float share = (totalWeight > 0)
+                        ? (Math.max(0, graph.getLinkWeight(slot)) / totalWeight)
+                        : (1.0f / numConnections);
+                float endAngle = (angle + (sweepAngle * share));
+                // A link from an item to itself appears twice, first for its first end.
+                if ((graph.getLinkItem1(slot) == id) && !mSlotMarks[slot]) {
+                    mBandStarts1[slot] = angle;
+                    mBandEnds1[slot] = endAngle;
+                    mSlotMarks[slot] = true;
+                } else {
+                    mBandStarts2[slot] = angle;
+                    mBandEnds2[slot] = endAngle;
+                }
+                angle = endAngle;
+            }
+        }
+        Arrays.fill(mSlotMarks, 0, numLinkSlots, false);
+    }
+
+    /**
+     * Writes one band as pairs of vertices across it, from its first end to its second. One
+     * side runs from the start of the first end to the end of the second, and the other from
+     * the end of the first to the start of the second, so the band does not twist.
+     *
+     * @return The index of the vertex after the band.
+     */
+    private int addBand(int slot, int vertex, float centreX, float centreY, float radius,
+                        int colour1, int colour2) {
+        float ax0 = getX(centreX, mBandStarts1[slot], radius);
+        float ay0 = getY(centreY, mBandStarts1[slot], radius);
+        float ax2 = getX(centreX, mBandEnds2[slot], radius);
+        float ay2 = getY(centreY, mBandEnds2[slot], radius);
+        float bx0 = getX(centreX, mBandEnds1[slot], radius);
+        float by0 = getY(centreY, mBandEnds1[slot], radius);
+        float bx2 = getX(centreX, mBandStarts2[slot], radius);
+        float by2 = getY(centreY, mBandStarts2[slot], radius);
+        int segments = mBandSegments[slot];
+        for (int i = 0; i <= segments; i++) {
+            float t = ((float) i / segments);
+            float u = (1 - t);
+            float w0 = (u * u);
+            float w1 = (2 * u * t);
+            float w2 = (t * t);
+            int colour = blend(colour1, colour2, t);
+            setVertex(vertex++, (w0 * ax0) + (w1 * centreX) + (w2 * ax2),
+                    (w0 * ay0) + (w1 * centreY) + (w2 * ay2), colour);
+            setVertex(vertex++, (w0 * bx0) + (w1 * centreX) + (w2 * bx2),
+                    (w0 * by0) + (w1 * centreY) + (w2 * by2), colour);
+        }
+        return vertex;
+    }
+
+    private void setVertex(int vertex, float x, float y, int colour) {
+        mVertices[2 * vertex] = x;
+        mVertices[(2 * vertex) + 1] = y;
+        mColours[vertex] = colour;
+    }
+
+    private static void copyVertex(float[] vertices, int[] colours, int from, int to) {
+        vertices[2 * to] = vertices[2 * from];
+        vertices[(2 * to) + 1] = vertices[(2 * from) + 1];
+        colours[to] = colours[from];
+    }
+
+    private void ensureBandCapacity(int numLinkSlots) {
+        if (mBandSegments.length < numLinkSlots) {
+            int capacity = Math.max(numLinkSlots, mBandSegments.length * 2);
+            mBandStarts1 = new float[capacity];
+            mBandEnds1 = new float[capacity];
+            mBandStarts2 = new float[capacity];
+            mBandEnds2 = new float[capacity];
+            mBandSegments = new int[capacity];
+            mBandFirstVertices = new int[capacity];
+            mSlotMarks = new boolean[capacity];
+        }
+    }
+
+    /**
+     * Blends two ARGB colours channel by channel.
+     */
+    static int blend(int colour1, int colour2, float t) {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 8) {
+            int channel1 = ((colour1 >>> shift) & 0xFF);
+            int channel2 = ((colour2 >>> shift) & 0xFF);
+            int channel = Math.round(channel1 + ((channel2 - channel1) * t));
+            result |= (channel << shift);
+        }
+        return result;
+    }
+
+    private static float getX(float centreX, float theta, float radius) {
+        return (float) ((radius * Math.cos(Math.toRadians(theta))) + centreX);
+    }
+
+    private static float getY(float centreY, float theta, float radius) {
+        return (float) ((radius * Math.sin(Math.toRadians(theta))) + centreY);
+    }
+}
@@ -0,0 +1,82 @@
+package com.thomaslorincz.chord_diagram.core;
+
+import java.util.Arrays;
+
+/**
+ * RollingPercentiles keeps the most recent samples of a measurement, such as the time taken to
+ * draw each frame, and reports percentiles over them. Samples are kept in a ring buffer and are
+ * only sorted when a percentile is asked for, so adding a sample is O(1) and never allocates.
+ */
+public class RollingPercentiles {
+    private final long[] mSamples;
+    private final long[] mSorted; // Scratch for getPercentile()
+    private int mNumSamples;
+    private int mNextSample;
+    private long mTotalSamples;
+    private boolean mSortedValid;
+
+    /**
+     * Construct a RollingPercentiles
+     *
+     * @param capacity The number of most recent samples to keep.
+     */
+    public RollingPercentiles(int capacity) {
+        mSamples = new long[capacity];
+        mSorted = new long[capacity];
+    }
+
+    public void add(long value) {
+        mSamples[mNextSample] = value;
+        mNextSample = ((mNextSample + 1) % mSamples.length);
+        mNumSamples = Math.min(mNumSamples + 1, mSamples.length);
+        mTotalSamples++;
+        mSortedValid = false;
+    }
+
+    /**
+     * Returns the number of samples kept, at most the capacity.
+     *
+     * @return The number of samples percentiles are taken over.
+     */
+    public int getNumSamples() {
+        return mNumSamples;
+    }
+
+    /**
+     * Returns the number of samples added since construction or the last call to
+     * {@link #clear()}, including those that have since been dropped.
+     *
+     * @return The number of samples added.
+     */
+    public long getTotalSamples() {
+        return mTotalSamples;
+    }
+
+    /**
+     * Returns a percentile of the kept samples, by the nearest rank method: the smallest
+     * sample that at least the given percentage of samples are less than or equal to.
+     *
+     * @param percentile The percentile, between 0 and 100.
+     * @return The percentile, or 0 if there are no samples.
+     */
+    public long getPercentile(double percentile) {
+        if (mNumSamples == 0) {
+            return 0;
+        }
+        if (!mSortedValid) {
+            System.arraycopy(mSamples, 0, mSorted, 0, mNumSamples);
+            Arrays.sort(mSorted, 0, mNumSamples);
+            mSortedValid = true;
+        }
+        int rank = (int) Math.ceil((percentile / 100) * mNumSamples);
+        rank = Math.max(1, Math.min(mNumSamples, rank));
+        return mSorted[rank - 1];
+    }
+
+    public void clear() {
+        mNumSamples = 0;
+        mNextSample = 0;
+        mTotalSamples = 0;
+        mSortedValid = false;
+    }
+}
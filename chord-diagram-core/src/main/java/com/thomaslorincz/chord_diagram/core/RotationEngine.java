@@ -0,0 +1,243 @@
+package com.thomaslorincz.chord_diagram.core;
+
+/**
+ * RotationEngine turns drags and flings into a rotation of the diagram, in float degrees. While
+ * the diagram is dragged, the rotation follows each drag exactly and the engine records it with
+ * its time, so that on release it can estimate how fast the diagram was turning. A fast enough
+ * release starts a fling that slows down under exponential friction, advanced once per display
+ * frame. Frames are only requested while a fling is running, so an idle engine does no work.
+ *
+ * The engine does not depend on the Android framework. Its host supplies frames, typically
+ * from a Choreographer, and applies the rotation.
+ */
+public class RotationEngine {
+    /**
+     * Applies the rotation and supplies frames to an engine.
+     */
+    public interface Host {
+        /**
+         * Called when the rotation changes.
+         *
+         * @param rotation The rotation, in degrees. Not limited to [0, 360).
+         */
+        void onRotate(float rotation);
+
+        /**
+         * Called when a drag ends without a fling, or when a fling comes to rest.
+         *
+         * @param rotation The final rotation, in degrees. Not limited to [0, 360).
+         */
+        void onSettle(float rotation);
+
+        /**
+         * Requests a call to {@link #doFrame(long)} on the next display frame.
+         */
+        void scheduleFrame();
+
+        /**
+         * Withdraws a request made with {@link #scheduleFrame()}.
+         */
+        void cancelFrame();
+    }
+
+    /**
+     * The span of drag samples the release velocity is estimated from, in milliseconds.
+     */
+    public static final long VELOCITY_WINDOW_MILLIS = 100;
+
+    /**
+     * The slowest release, in degrees per second, that starts a fling.
+     */
+    public static final float MIN_FLING_VELOCITY = 30.0f;
+
+    /**
+     * A fling comes to rest once it slows below this speed, in degrees per second.
+     */
+    public static final float REST_VELOCITY = 5.0f;
+
+    /**
+     * The rate at which a fling slows down, per second. The velocity falls by a factor of e
+     * every 1 / FRICTION seconds.
+     */
+    public static final float FRICTION = 3.0f;
+
+    private static final int MAX_SAMPLES = 16;
+
+    private final Host mHost;
+    private float mRotation;
+
+    // Drag samples, in a ring buffer
+    private final long[] mSampleTimes = new long[MAX_SAMPLES];
+    private final float[] mSampleRotations = new float[MAX_SAMPLES];
+    private int mNumSamples;
+    private int mNextSample;
+    private boolean mDragging;
+
+    // Fling state
+    private boolean mFlinging;
+    private float mVelocity; // Degrees per second
+    private long mLastFrameNanos; // 0 until the first frame of the fling
+
+    /**
+     * Construct a RotationEngine
+     *
+     * @param host The host to apply the rotation and supply frames.
+     */
+    public RotationEngine(Host host) {
+        mHost = host;
+    }
+
+    public float getRotation() {
+        return mRotation;
+    }
+
+    public float getVelocity() {
+        return mVelocity;
+    }
+
+    public boolean isDragging() {
+        return mDragging;
+    }
+
+    public boolean isFlinging() {
+        return mFlinging;
+    }
+
+    /**
+     * Stops any fling and starts tracking a new drag from a rotation.
+     *
+     * @param rotation The current rotation, in degrees.
+     * @param timeMillis The time the drag started, in milliseconds.
+     */
+    public void startDrag(float rotation, long timeMillis) {
+        stop();
+        mRotation = rotation;
+        mDragging = true;
+        mNumSamples = 0;
+        addSample(timeMillis);
+    }
+
+    /**
+     * Turns the diagram by an angle as part of a drag.
+     *
+     * @param deltaDegrees The angle to turn by, in degrees.
+     * @param timeMillis The time of the motion, in milliseconds.
+     */
+    public void dragBy(float deltaDegrees, long timeMillis) {
+        if (!mDragging) {
+            return;
+        }
+        mRotation += deltaDegrees;
+        addSample(timeMillis);
+        mHost.onRotate(mRotation);
+    }
+
+    /**
+     * Ends a drag. If the diagram was still turning fast enough, it flings on at the speed it
+     * was turning. Otherwise it settles where it is.
+     *
+     * @param timeMillis The time of the release, in milliseconds.
+     */
+    public void release(long timeMillis) {
+        if (!mDragging) {
+            return;
+        }
+        mDragging = false;
+        float velocity = estimateVelocity(timeMillis);
+        if (Math.abs(velocity) >= MIN_FLING_VELOCITY) {
+            mVelocity = velocity;
+            mFlinging = true;
+            mLastFrameNanos = 0;
+            mHost.scheduleFrame();
+        } else {
+            mVelocity = 0;
+            mHost.onSettle(mRotation);
+        }
+    }
+
+    /**
+     * Stops any drag or fling where it is, without settling.
+     */
+    public void stop() {
+        if (mFlinging) {
+            mFlinging = false;
+            mHost.cancelFrame();
+        }
+        mDragging = false;
+        mVelocity = 0;
+    }
+
+    /**
+     * Advances a fling to the time of a display frame.
+     *
+     * @param frameTimeNanos The time the frame started, in nanoseconds.
+     */
+    public void doFrame(long frameTimeNanos) {
+        if (!mFlinging) {
+            return;
+        }
+        if (mLastFrameNanos != 0) {
+            float seconds = ((frameTimeNanos - mLastFrameNanos) / 1e9f);
+            if (seconds > 0) {
+                // Integrate the exponential slowdown exactly, so the path of the fling does not
+                // depend on the frame rate.
+                float decay = (float) Math.exp(-FRICTION * seconds);
+                mRotation += ((mVelocity / FRICTION) * (1 - decay));
+                mVelocity *= decay;
+                mHost.onRotate(mRotation);
+            }
+        }
+        mLastFrameNanos = frameTimeNanos;
+        if (Math.abs(mVelocity) < REST_VELOCITY) {
+            mFlinging = false;
+            mVelocity = 0;
+            mHost.onSettle(mRotation);
+        } else {
+            mHost.scheduleFrame();
+        }
+    }
+
+    private void addSample(long timeMillis) {
+        mSampleTimes[mNextSample] = timeMillis;
+        mSampleRotations[mNextSample] = mRotation;
+        mNextSample = ((mNextSample + 1) % MAX_SAMPLES);
+        mNumSamples = Math.min(mNumSamples + 1, MAX_SAMPLES);
+    }
+
+    /**
+     * Estimates the angular velocity at a time as the least squares slope of the rotation over
+     * the samples taken within {@link #VELOCITY_WINDOW_MILLIS} before it.
+     *
+     * @return The velocity, in degrees per second, or 0 if the diagram had stopped turning.
+     */
+    private float estimateVelocity(long timeMillis) {
+        // Times are taken relative to the release, and rotations relative to the last sample,
+        // to keep the sums small.
+        int last = ((mNextSample + MAX_SAMPLES - 1) % MAX_SAMPLES);
+        float lastRotation = mSampleRotations[last];
+        double sumT = 0;
+        double sumR = 0;
+        double sumTT = 0;
+        double sumTR = 0;
+        int n = 0;
+        for (int i = 0; i < mNumSamples; i++) {
+            int sample = ((last + MAX_SAMPLES - i) % MAX_SAMPLES);
+            long age = (timeMillis - mSampleTimes[sample]);
+            if (age > VELOCITY_WINDOW_MILLIS) {
+                break;
+            }
+            double t = (-age / 1000.0);
+            double r = (mSampleRotations[sample] - lastRotation);
+            sumT += t;
+            sumR += r;
+            sumTT += (t * t);
+            sumTR += (t * r);
+            n++;
+        }
+        double denominator = ((n * sumTT) - (sumT * sumT));
+        if ((n < 2) || (denominator <= 0)) {
+            return 0;
+        }
+        return (float) (((n * sumTR) - (sumT * sumR)) / denominator);
+    }
+}
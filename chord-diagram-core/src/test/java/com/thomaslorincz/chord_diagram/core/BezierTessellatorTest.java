@@ -0,0 +1,49 @@
+package com.thomaslorincz.chord_diagram.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link BezierTessellator}.
+ */
+public class BezierTessellatorTest {
+    @Test
+    public void segmentCount_scalesWithCurveSize() throws Exception {
+        // A straight chord through the centre needs a single segment.
+        assertEquals(1, BezierTessellator.segmentCount(0, 100, 100, 100, 200, 100, 0.5f));
+
+        int small = BezierTessellator.segmentCount(0, 0, 50, 50, 100, 0, 0.5f);
+        int large = BezierTessellator.segmentCount(0, 0, 500, 500, 1000, 0, 0.5f);
+        assertTrue(small < large);
+        assertTrue(large <= BezierTessellator.MAX_SEGMENTS);
+
+        // A coarser tolerance never needs more segments.
+        assertTrue(BezierTessellator.segmentCount(0, 0, 500, 500, 1000, 0, 4.0f) < large);
+    }
+
+    @Test
+    public void tessellate_staysWithinTolerance() throws Exception {
+        float tolerance = 0.5f;
+        float x0 = 10, y0 = 400, x1 = 250, y1 = 250, x2 = 480, y2 = 30;
+        int segments = BezierTessellator.segmentCount(x0, y0, x1, y1, x2, y2, tolerance);
+        float[] points = new float[2 * (segments + 1)];
+        BezierTessellator.tessellate(x0, y0, x1, y1, x2, y2, segments, points, 0);
+
+        assertEquals(x0, points[0], 0.0f);
+        assertEquals(y0, points[1], 0.0f);
+        assertEquals(x2, points[2 * segments], 0.001f);
+        assertEquals(y2, points[(2 * segments) + 1], 0.001f);
+
+        // Check the midpoint of every segment against the curve.
+        for (int i = 0; i < segments; i++) {
+            float t = ((i + 0.5f) / segments);
+            float u = (1 - t);
+            float curveX = ((u * u * x0) + (2 * u * t * x1) + (t * t * x2));
+            float curveY = ((u * u * y0) + (2 * u * t * y1) + (t * t * y2));
+            float lineX = ((points[2 * i] + points[2 * (i + 1)]) / 2);
+            float lineY = ((points[(2 * i) + 1] + points[(2 * (i + 1)) + 1]) / 2);
+            assertTrue(Math.hypot(curveX - lineX, curveY - lineY) <= tolerance);
+        }
+    }
+}
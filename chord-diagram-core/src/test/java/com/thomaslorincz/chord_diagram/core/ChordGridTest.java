@@ -0,0 +1,130 @@
+package com.thomaslorincz.chord_diagram.core;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link ChordGrid}.
+ */
+public class ChordGridTest {
+    private static final float SIZE = 1000.0f;
+    private static final float TOLERANCE = 8.0f;
+
+    @Test
+    public void findLink_matchesBruteForce() throws Exception {
+        Random random = new Random(16);
+        int numSlots = 500;
+        float[][] points = new float[numSlots][];
+        int[] numSegments = new int[numSlots];
+        tessellateRandomChords(random, points, numSegments);
+        numSegments[7] = 0; // An empty slot keeps its points but has no segments
+        ChordGrid grid = new ChordGrid(points, numSegments, numSlots, 0, 0, SIZE);
+
+        for (int i = 0; i < 5000; i++) {
+            float x = (random.nextFloat() * SIZE);
+            float y = (random.nextFloat() * SIZE);
+            int expected = bruteForce(points, numSegments, x, y);
+            int actual = grid.findLink(x, y, TOLERANCE);
+            if (expected == GraphStore.NO_ID) {
+                assertEquals(GraphStore.NO_ID, actual);
+            } else {
+                // Ties between chords may resolve either way, so compare distances.
+                assertNotEquals(GraphStore.NO_ID, actual);
+                assertEquals(distance(points[expected], numSegments[expected], x, y),
+                        distance(points[actual], numSegments[actual], x, y), 1e-3f);
+            }
+        }
+    }
+
+    @Test
+    public void findLink_outsideBounds() throws Exception {
+        float[][] points = {{0, 0, SIZE, SIZE}};
+        ChordGrid grid = new ChordGrid(points, new int[] {1}, 1, 0, 0, SIZE);
+        assertEquals(0, grid.findLink(-2, -2, TOLERANCE));
+        assertEquals(GraphStore.NO_ID, grid.findLink(-20, 0, TOLERANCE));
+        assertEquals(0, grid.findLink(SIZE + 1, SIZE, TOLERANCE));
+    }
+
+    /**
+     * Checks taps on a diagram with 50k chords. Building the grid and tapping are timed by
+     * ChordGridBenchmark in chord-diagram-benchmarks.
+     */
+    @Test
+    public void findLink_50kLinks() throws Exception {
+        Random random = new Random(50000);
+        int numSlots = 50000;
+        float[][] points = new float[numSlots][];
+        int[] numSegments = new int[numSlots];
+        tessellateRandomChords(random, points, numSegments);
+        ChordGrid grid = new ChordGrid(points, numSegments, numSlots, 0, 0, SIZE);
+
+        int hits = 0;
+        for (int i = 0; i < 25; i++) { // Each tap is checked against every chord
+            float x = (random.nextFloat() * SIZE);
+            float y = (random.nextFloat() * SIZE);
+            int expected = bruteForce(points, numSegments, x, y);
+            int actual = grid.findLink(x, y, TOLERANCE);
+            assertEquals(expected == GraphStore.NO_ID, actual == GraphStore.NO_ID);
+            if (actual != GraphStore.NO_ID) {
+                assertEquals(distance(points[expected], numSegments[expected], x, y),
+                        distance(points[actual], numSegments[actual], x, y), 1e-3f);
+                hits++;
+            }
+        }
+        assertTrue(hits > 0);
+    }
+
+    /**
+     * Tessellates chords between random points on a circle inscribed in the bounds, bent
+     * towards its centre as the diagram draws them.
+     */
+    private static void tessellateRandomChords(Random random, float[][] points,
+                                               int[] numSegments) {
+        float centre = (SIZE / 2);
+        for (int slot = 0; slot < points.length; slot++) {
+            double angle1 = (random.nextDouble() * 2 * Math.PI);
+            double angle2 = (random.nextDouble() * 2 * Math.PI);
+            float x0 = (float) (centre + (centre * Math.cos(angle1)));
+            float y0 = (float) (centre + (centre * Math.sin(angle1)));
+            float x2 = (float) (centre + (centre * Math.cos(angle2)));
+            float y2 = (float) (centre + (centre * Math.sin(angle2)));
+            int segments = BezierTessellator.segmentCount(
+                    x0, y0, centre, centre, x2, y2, BezierTessellator.DEFAULT_TOLERANCE);
+            points[slot] = new float[2 * (segments + 1)];
+            BezierTessellator.tessellate(x0, y0, centre, centre, x2, y2, segments, points[slot], 0);
+            numSegments[slot] = segments;
+        }
+    }
+
+    private static int bruteForce(float[][] points, int[] numSegments, float x, float y) {
+        int nearest = GraphStore.NO_ID;
+        float nearestDistance = TOLERANCE;
+        for (int slot = 0; slot < points.length; slot++) {
+            float distance = distance(points[slot], numSegments[slot], x, y);
+            if (distance <= nearestDistance) {
+                nearestDistance = distance;
+                nearest = slot;
+            }
+        }
+        return nearest;
+    }
+
+    private static float distance(float[] points, int numSegments, float x, float y) {
+        float nearest = Float.MAX_VALUE;
+        for (int i = 0; i < numSegments; i++) {
+            float x0 = points[2 * i];
+            float y0 = points[(2 * i) + 1];
+            float dx = (points[(2 * i) + 2] - x0);
+            float dy = (points[(2 * i) + 3] - y0);
+            float lengthSquared = ((dx * dx) + (dy * dy));
+            float t = (lengthSquared > 0)
+                    ? Math.max(0, Math.min(1, (((x - x0) * dx) + ((y - y0) * dy)) / lengthSquared))
+                    : 0;
+            nearest = Math.min(nearest, (float) Math.hypot(x0 + (t * dx) - x, y0 + (t * dy) - y));
+        }
+        return nearest;
+    }
+}
@@ -0,0 +1,130 @@
+package com.thomaslorincz.chord_diagram.core;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link EdgeListParser}.
+ */
+public class EdgeListParserTest {
+    private static final int[] PALETTE = {10, 20, 30};
+
+    @Test
+    public void parse_csvWithHeaderAndQuotes() throws Exception {
+        String csv = "source,target,weight\r\n"
+                + "a,b,2\r\n"
+                + "\"c, inc.\",a,1.5\r\n"
+                + "\r\n"
+                + "b,a,3\r\n"
+                + "a,a,4\r\n"
+                + "\"say \"\"hi\"\"\",b";
+        GraphStore graph = parse(new EdgeListParser(',', true, PALETTE), csv);
+
+        assertEquals(4, graph.getNumItems());
+        assertEquals("c, inc.", graph.getLabel(2));
+        assertEquals("say \"hi\"", graph.getLabel(3));
+        assertEquals(30, graph.getColour(2));
+        assertEquals(10, graph.getColour(3));
+        assertEquals(3, graph.getNumLinks());
+        assertEquals(5.0f, graph.getLinkWeight(graph.getLinkSlot(0, 1)), 0.0f);
+        assertEquals(1.5f, graph.getLinkWeight(graph.getLinkSlot(2, 0)), 0.0f);
+        assertEquals(1.0f, graph.getLinkWeight(graph.getLinkSlot(3, 1)), 0.0f);
+    }
+
+    @Test
+    public void parse_rowsSpanningChunks() throws Exception {
+        StringBuilder tsv = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            tsv.append("Item ").append(i % 37).append('\t')
+                    .append("Another item ").append(i % 91).append('\n');
+        }
+        // A row longer than the buffer makes it grow.
+        StringBuilder longLabel = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            longLabel.append("long");
+        }
+        tsv.append(longLabel).append("\tItem 0\n");
+
+        final int[] progress = new int[2];
+        EdgeListParser parser = new EdgeListParser('\t', false, PALETTE, 16);
+        GraphStore graph = parser.parse(stream(tsv.toString()),
+                new EdgeListParser.ProgressListener() {
+                    @Override
+                    public void onProgress(long bytesRead, int rowsRead) {
+                        progress[0]++;
+                        progress[1] = rowsRead;
+                    }
+                });
+
+        assertEquals(37 + 91 + 1, graph.getNumItems());
+        assertEquals(1001, progress[1]);
+        assertTrue(progress[0] > 1);
+        assertNotEquals(GraphStore.NO_ID, graph.getItemId(longLabel.toString()));
+        GraphStore expected = parse(new EdgeListParser('\t', false, PALETTE), tsv.toString());
+        assertEquals(expected.getNumLinks(), graph.getNumLinks());
+        for (int slot = 0; slot < graph.getNumLinkSlots(); slot++) {
+            assertEquals(expected.getLinkItem1(slot), graph.getLinkItem1(slot));
+            assertEquals(expected.getLinkItem2(slot), graph.getLinkItem2(slot));
+        }
+    }
+
+    @Test
+    public void parse_multiByteLabels() throws Exception {
+        GraphStore graph = parse(new EdgeListParser(',', false, PALETTE, 4), "Zürich,東京\n");
+        assertEquals("Zürich", graph.getLabel(0));
+        assertEquals("東京", graph.getLabel(1));
+    }
+
+    @Test
+    public void parse_quotesInsideUnquotedFields() throws Exception {
+        // Only a quote at the start of a field opens a quoted field, so the quotes in 12" pipe
+        // are part of its label and do not hide the rows after it.
+        String csv = "12\" pipe,valve\n"
+                + "valve,\"multi\nline \"\"label\"\"\"\n"
+                + "6\" pipe,12\" pipe\n";
+        GraphStore graph = parse(new EdgeListParser(',', false, PALETTE, 8), csv);
+
+        assertEquals(4, graph.getNumItems());
+        assertEquals("12\" pipe", graph.getLabel(0));
+        assertEquals("multi\nline \"label\"", graph.getLabel(2));
+        assertEquals("6\" pipe", graph.getLabel(3));
+        assertEquals(3, graph.getNumLinks());
+        assertNotEquals(GraphStore.NO_ID, graph.getLinkSlot(3, 0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsEmptyPalette() throws Exception {
+        new EdgeListParser(',', false, new int[0]);
+    }
+
+    @Test
+    public void parse_malformedRowsFail() throws Exception {
+        assertParseFails("a,b\nc\n", "Line 2");
+        assertParseFails("a,b,heavy\n", "bad weight");
+        assertParseFails("\"a,b\n", "unterminated quote");
+        assertParseFails("a,b,1,2\n", "more than 3 fields");
+    }
+
+    private static void assertParseFails(String csv, String message) {
+        try {
+            parse(new EdgeListParser(',', false, PALETTE), csv);
+            fail("Expected an IOException for " + csv);
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(message));
+        }
+    }
+
+    private static GraphStore parse(EdgeListParser parser, String text) throws IOException {
+        return parser.parse(stream(text), null);
+    }
+
+    private static InputStream stream(String text) {
+        return new ByteArrayInputStream(text.getBytes(Charset.forName("UTF-8")));
+    }
+}
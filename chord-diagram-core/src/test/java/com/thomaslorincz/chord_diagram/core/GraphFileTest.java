@@ -0,0 +1,283 @@
+package com.thomaslorincz.chord_diagram.core;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link GraphFile} and the binary form of {@link GraphStore}.
+ */
+public class GraphFileTest {
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void roundTrip_withoutLayout() throws Exception {
+        GraphStore graph = randomGraph(new Random(14), 40, 300);
+        GraphStore read = writeAndMap(graph);
+
+        assertSameGraph(graph, read, false);
+        assertFalse(read.hasLayout());
+    }
+
+    @Test
+    public void roundTrip_withLayoutAndEmptySlots() throws Exception {
+        Random random = new Random(15);
+        GraphStore graph = randomGraph(random, 40, 300);
+        for (int i = 0; i < 50; i++) {
+            graph.deleteLink(random.nextInt(40), random.nextInt(40));
+        }
+        graph.assignItemAngles();
+        graph.assignLinkAngles(true);
+        graph.clearChanges();
+        GraphStore read = writeAndMap(graph);
+
+        assertSameGraph(graph, read, true);
+        assertTrue(read.hasLayout());
+        assertTrue(read.canUpdateLinkAngles(true));
+        assertFalse(read.canUpdateLinkAngles(false));
+    }
+
+    @Test
+    public void labelsDecodeLazily() throws Exception {
+        GraphStore graph = new GraphStore();
+        graph.addItem("Zürich", 1);
+        graph.addItem("東京", 2);
+        graph.addItem("", 3);
+        graph.addLink(1, 2);
+        GraphStore read = writeAndMap(graph);
+
+        // Read the labels out of order before anything needs them all.
+        assertEquals("東京", read.getLabel(1));
+        assertEquals("", read.getLabel(2));
+        GraphStore copy = read.copy();
+        assertEquals("Zürich", copy.getLabel(0));
+        assertEquals(1, read.getItemId("東京"));
+
+        // Changing the items decodes the rest first.
+        assertEquals(3, copy.addItem("Oslo", 4));
+        copy.deleteItem(0);
+        assertEquals(0, copy.getItemId("東京"));
+        assertEquals(1, copy.getNumLinks());
+    }
+
+    @Test(expected = IOException.class)
+    public void map_rejectsOtherFiles() throws Exception {
+        File file = mFolder.newFile();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write("source,target\na,b\n".getBytes("UTF-8"));
+        out.close();
+        GraphFile.map(file);
+    }
+
+    @Test(expected = IOException.class)
+    public void map_rejectsTruncatedFiles() throws Exception {
+        File file = mFolder.newFile();
+        GraphFile.write(randomGraph(new Random(16), 10, 20), file);
+        new java.io.RandomAccessFile(file, "rw").setLength(file.length() / 2);
+        GraphFile.map(file);
+    }
+
+    @Test
+    public void readFrom_rejectsDanglingLinks() throws Exception {
+        GraphStore graph = randomGraph(new Random(17), 10, 20);
+        int numItems = graph.getNumItems();
+        int numLinks = graph.getNumLinks();
+        ByteBuffer bytes = toBytes(graph);
+        int indexCapacity = bytes.getInt(20);
+        int linkItems1 = (32 + (indexCapacity * LinkIndex.BYTES_PER_ENTRY) + (numItems * 4));
+        int firstIncidentSlot = (linkItems1 + (numLinks * 4 * 3) + (numItems * 4));
+
+        assertReadFails(bytes, linkItems1, numItems, "missing items");
+        assertReadFails(bytes, linkItems1 + (numLinks * 4), -1, "missing items");
+        assertReadFails(bytes, firstIncidentSlot, numLinks, "does not join it");
+        // Slot 0 joins items 0 and something else, so some item does not have it.
+        int outsider = 0;
+        while ((graph.getLinkItem1(0) == outsider) || (graph.getLinkItem2(0) == outsider)) {
+            outsider++;
+        }
+        int slotOfOutsider = firstIncidentSlot;
+        for (int id = 0; id < outsider; id++) {
+            slotOfOutsider += (4 * graph.getNumConnections(id));
+        }
+        if (graph.getNumConnections(outsider) > 0) {
+            assertReadFails(bytes, slotOfOutsider, 0, "does not join it");
+        }
+        assertEquals(numLinks, GraphStore.readFrom(bytes.duplicate()).getNumLinks());
+    }
+
+    @Test
+    public void readFrom_rejectsCorruptLinkIndex() throws Exception {
+        GraphStore graph = randomGraph(new Random(18), 10, 20);
+        int numLinks = graph.getNumLinks();
+        ByteBuffer bytes = toBytes(graph);
+        int indexCapacity = bytes.getInt(20);
+        int keys = 32;
+        int values = (keys + (indexCapacity * 8));
+        int entry = 0;
+        while (bytes.getLong(keys + (entry * 8)) == -1L) {
+            entry++;
+        }
+        int slot = bytes.getInt(values + (entry * 4));
+
+        assertReadFails(bytes, values + (entry * 4), numLinks, "does not match");
+        assertReadFails(bytes, values + (entry * 4), (slot + 1) % numLinks, "does not match");
+        assertReadFails(bytes, keys + (entry * 8), -1L, "holds " + (numLinks - 1));
+        assertEquals(slot, GraphStore.readFrom(bytes.duplicate())
+                .getLinkSlot(graph.getLinkItem1(slot), graph.getLinkItem2(slot)));
+    }
+
+    @Test
+    public void readFrom_rejectsDuplicateLabels() throws Exception {
+        GraphStore graph = new GraphStore();
+        graph.addItem("ab", 0);
+        graph.addItem("ac", 0);
+        graph.addLink(0, 1);
+        ByteBuffer bytes = toBytes(graph);
+        bytes.put(bytes.limit() - 1, (byte) 'b'); // The labels are last, so this makes "ab"
+        try {
+            GraphStore.readFrom(bytes);
+            fail("Expected an IOException for duplicate labels");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("same label"));
+        }
+    }
+
+    private static ByteBuffer toBytes(GraphStore graph) {
+        ByteBuffer bytes = ByteBuffer.allocate((int) graph.getBinarySize());
+        graph.writeTo(bytes);
+        bytes.flip();
+        return bytes.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Reads a copy of the binary form with one int replaced, and checks that it fails.
+     */
+    private static void assertReadFails(ByteBuffer bytes, int offset, int value, String message) {
+        ByteBuffer corrupt = ByteBuffer.allocate(bytes.capacity()).order(ByteOrder.LITTLE_ENDIAN);
+        corrupt.put(bytes.duplicate());
+        corrupt.putInt(offset, value);
+        corrupt.flip();
+        assertReadFails(corrupt, offset, message);
+    }
+
+    /**
+     * Reads a copy of the binary form with one long replaced, and checks that it fails.
+     */
+    private static void assertReadFails(ByteBuffer bytes, int offset, long value, String message) {
+        ByteBuffer corrupt = ByteBuffer.allocate(bytes.capacity()).order(ByteOrder.LITTLE_ENDIAN);
+        corrupt.put(bytes.duplicate());
+        corrupt.putLong(offset, value);
+        corrupt.flip();
+        assertReadFails(corrupt, offset, message);
+    }
+
+    private static void assertReadFails(ByteBuffer corrupt, int offset, String message) {
+        try {
+            GraphStore.readFrom(corrupt);
+            fail("Expected an IOException for a change at " + offset);
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(message));
+        }
+    }
+
+    /**
+     * Opens a laid out diagram with a million links. Opening is timed by GraphFileBenchmark in
+     * chord-diagram-benchmarks.
+     */
+    @Test
+    public void map_millionLinks() throws Exception {
+        int numItems = 1415;
+        GraphStore graph = new GraphStore();
+        for (int i = 0; i < numItems; i++) {
+            graph.addItem("Item " + i, i);
+        }
+        for (int i = 0; i < numItems; i++) {
+            for (int j = i + 1; j < numItems; j++) {
+                graph.addLink(i, j, (i + j));
+            }
+        }
+        graph.assignItemAngles();
+        graph.assignLinkAngles(true);
+        graph.clearChanges();
+        File file = mFolder.newFile();
+        GraphFile.write(graph, file);
+
+        GraphStore read = GraphFile.map(file);
+        assertEquals(graph.getNumLinks(), read.getNumLinks());
+        assertEquals(graph.getNumLinks() - 1, read.getLinkSlot(numItems - 1, numItems - 2));
+        assertTrue(read.hasLayout());
+        assertEquals(graph.getEndpointAngle2(graph.getNumLinks() - 1),
+                read.getEndpointAngle2(read.getNumLinks() - 1), 0.0f);
+        assertEquals("Item " + (numItems - 1), read.getLabel(numItems - 1));
+    }
+
+    private GraphStore writeAndMap(GraphStore graph) throws IOException {
+        File file = mFolder.newFile();
+        GraphFile.write(graph, file);
+        return GraphFile.map(file);
+    }
+
+    private static GraphStore randomGraph(Random random, int numItems, int numLinks) {
+        GraphStore graph = new GraphStore();
+        for (int i = 0; i < numItems; i++) {
+            graph.addItem("Item " + i, random.nextInt());
+        }
+        for (int i = 0; i < numLinks; i++) {
+            int item1 = random.nextInt(numItems);
+            int item2 = random.nextInt(numItems);
+            if (item1 != item2) {
+                graph.addLink(item1, item2, random.nextFloat());
+            }
+        }
+        return graph;
+    }
+
+    /**
+     * Checks that two stores hold the same items and the same links in the same order. Empty
+     * slots are not written, so slots are compared in order of the links they hold.
+     */
+    private static void assertSameGraph(GraphStore expected, GraphStore actual,
+                                        boolean compareAngles) {
+        assertEquals(expected.getNumItems(), actual.getNumItems());
+        for (int id = 0; id < expected.getNumItems(); id++) {
+            assertEquals(expected.getLabel(id), actual.getLabel(id));
+            assertEquals(expected.getColour(id), actual.getColour(id));
+            assertEquals(expected.getNumConnections(id), actual.getNumConnections(id));
+            if (compareAngles) {
+                assertEquals(expected.getStartAngle(id), actual.getStartAngle(id), 0.0f);
+                assertEquals(expected.getEndAngle(id), actual.getEndAngle(id), 0.0f);
+            }
+        }
+        assertEquals(expected.getNumLinks(), actual.getNumLinks());
+        assertEquals(actual.getNumLinks(), actual.getNumLinkSlots());
+        int actualSlot = 0;
+        for (int slot = 0; slot < expected.getNumLinkSlots(); slot++) {
+            int item1 = expected.getLinkItem1(slot);
+            if (item1 == GraphStore.NO_ID) {
+                continue;
+            }
+            int item2 = expected.getLinkItem2(slot);
+            assertEquals(item1, actual.getLinkItem1(actualSlot));
+            assertEquals(item2, actual.getLinkItem2(actualSlot));
+            assertEquals(actualSlot, actual.getLinkSlot(item2, item1));
+            assertEquals(expected.getLinkWeight(slot), actual.getLinkWeight(actualSlot), 0.0f);
+            if (compareAngles) {
+                assertEquals(expected.getEndpointAngle1(slot),
+                        actual.getEndpointAngle1(actualSlot), 0.0f);
+                assertEquals(expected.getEndpointAngle2(slot),
+                        actual.getEndpointAngle2(actualSlot), 0.0f);
+            }
+            actualSlot++;
+        }
+    }
+}
@@ -0,0 +1,491 @@
+package com.thomaslorincz.chord_diagram.core;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link GraphStore}.
+ */
+public class GraphStoreTest {
+    @Test
+    public void addItem_internsLabelsInInsertionOrder() throws Exception {
+        GraphStore graph = new GraphStore();
+        assertEquals(0, graph.addItem("a", 1));
+        assertEquals(1, graph.addItem("b", 2));
+        assertEquals(2, graph.addItem("c", 3));
+        assertEquals(GraphStore.NO_ID, graph.addItem("b", 4));
+
+        assertEquals(3, graph.getNumItems());
+        assertEquals(1, graph.getItemId("b"));
+        assertEquals("c", graph.getLabel(2));
+        assertEquals(2, graph.getColour(1));
+        assertEquals(GraphStore.NO_ID, graph.getItemId("d"));
+    }
+
+    @Test
+    public void deleteItem_preservesOrderAndDropsLinks() throws Exception {
+        GraphStore graph = new GraphStore();
+        for (String label : new String[] {"a", "b", "c", "d"}) {
+            graph.addItem(label, 0);
+        }
+        graph.addLink(graph.getItemId("a"), graph.getItemId("b"));
+        graph.addLink(graph.getItemId("b"), graph.getItemId("c"));
+        graph.addLink(graph.getItemId("c"), graph.getItemId("d"));
+
+        graph.deleteItem(graph.getItemId("b"));
+
+        assertEquals(3, graph.getNumItems());
+        assertEquals("a", graph.getLabel(0));
+        assertEquals("c", graph.getLabel(1));
+        assertEquals("d", graph.getLabel(2));
+        assertEquals(2, graph.getItemId("d"));
+        assertEquals(1, graph.getNumLinks());
+        assertEquals(0, graph.getNumConnections(graph.getItemId("a")));
+        assertEquals(1, graph.getNumConnections(graph.getItemId("c")));
+
+        int slot = firstLinkSlot(graph);
+        assertEquals(graph.getItemId("c"), graph.getLinkItem1(slot));
+        assertEquals(graph.getItemId("d"), graph.getLinkItem2(slot));
+    }
+
+    @Test
+    public void assignAngles_spreadsLinksAcrossArcs() throws Exception {
+        GraphStore graph = new GraphStore();
+        for (String label : new String[] {"a", "b", "c", "d"}) {
+            graph.addItem(label, 0);
+        }
+        graph.addLink(0, 1);
+        graph.addLink(0, 2);
+
+        graph.assignItemAngles();
+        graph.assignLinkAngles(true);
+
+        assertEquals(90.0f, graph.getStartAngle(1), 0.0f);
+        assertEquals(180.0f, graph.getEndAngle(1), 0.0f);
+        assertEquals(135.0f, graph.getCenterAngle(1), 0.0f);
+        // Item a has two links, so they meet its arc at one and two thirds of the way along.
+        assertEquals(30.0f, graph.getEndpointAngle1(0), 0.001f);
+        assertEquals(60.0f, graph.getEndpointAngle1(1), 0.001f);
+        assertEquals(135.0f, graph.getEndpointAngle2(0), 0.001f);
+        assertEquals(225.0f, graph.getEndpointAngle2(1), 0.001f);
+
+        graph.assignLinkAngles(false);
+        assertEquals(0.0f, graph.getEndpointAngle1(1), 0.0f);
+        assertEquals(180.0f, graph.getEndpointAngle2(1), 0.0f);
+    }
+
+    /**
+     * Applies random adds and deletes of items and links to a store and to a simple reference
+     * model, checking after every change that the store holds the same items and links and
+     * that every item's list of links and count of connections agree with the model.
+     */
+    @Test
+    public void randomChurn_matchesReferenceModel() throws Exception {
+        Random random = new Random(18);
+        GraphStore graph = new GraphStore();
+        List<String> labels = new ArrayList<>(); // Labels in id order
+        Set<String> links = new HashSet<>(); // Pairs of labels, in sorted order
+        int nextLabel = 0;
+        for (int step = 0; step < 20000; step++) {
+            int op = random.nextInt(100);
+            if ((op < 10) || (labels.size() < 2)) {
+                String label = "Item " + nextLabel++;
+                assertEquals(labels.size(), graph.addItem(label, nextLabel));
+                labels.add(label);
+            } else if (op < 16) {
+                int id = random.nextInt(labels.size());
+                String label = labels.remove(id);
+                graph.deleteItem(id);
+                for (String other : new ArrayList<>(labels)) {
+                    links.remove(pair(label, other));
+                }
+                links.remove(pair(label, label));
+            } else if (op < 70) {
+                int item1 = random.nextInt(labels.size());
+                int item2 = (random.nextInt(50) == 0) ? item1 : random.nextInt(labels.size());
+                boolean added = links.add(pair(labels.get(item1), labels.get(item2)));
+                assertEquals(added, graph.addLink(item1, item2) != GraphStore.NO_ID);
+            } else {
+                int item1 = random.nextInt(labels.size());
+                int item2 = random.nextInt(labels.size());
+                boolean removed = links.remove(pair(labels.get(item1), labels.get(item2)));
+                assertEquals(removed, graph.deleteLink(item1, item2));
+            }
+            if (random.nextInt(20) == 0) {
+                if (!graph.canUpdateLinkAngles(true)) {
+                    graph.assignItemAngles();
+                    graph.assignLinkAngles(true);
+                } else {
+                    graph.updateLinkAngles();
+                }
+                graph.clearChanges();
+            }
+            assertMatchesModel(graph, labels, links);
+        }
+
+        // Churn leaves the keys of the links out of step with the ids, which writing undoes.
+        ByteBuffer buffer = ByteBuffer.allocate((int) graph.getBinarySize());
+        graph.writeTo(buffer);
+        buffer.flip();
+        assertMatchesModel(GraphStore.readFrom(buffer), labels, links);
+    }
+
+    private static void assertMatchesModel(GraphStore graph, List<String> labels,
+                                           Set<String> links) {
+        assertEquals(labels.size(), graph.getNumItems());
+        assertEquals(links.size(), graph.getNumLinks());
+        int numEmptySlots = (graph.getNumLinkSlots() - graph.getNumLinks());
+        assertTrue("Too many empty slots", numEmptySlots <= Math.max(graph.getNumLinks(), 1));
+
+        int[] degrees = new int[labels.size()];
+        Set<String> found = new HashSet<>();
+        for (int slot = 0; slot < graph.getNumLinkSlots(); slot++) {
+            int item1 = graph.getLinkItem1(slot);
+            if (item1 == GraphStore.NO_ID) {
+                continue;
+            }
+            int item2 = graph.getLinkItem2(slot);
+            String link = pair(labels.get(item1), labels.get(item2));
+            assertTrue("Phantom link " + link, links.contains(link));
+            assertTrue(found.add(link));
+            assertEquals(slot, graph.getLinkSlot(item2, item1));
+            degrees[item1]++;
+            degrees[item2]++;
+        }
+
+        for (int id = 0; id < labels.size(); id++) {
+            assertEquals(labels.get(id), graph.getLabel(id));
+            assertEquals(id, graph.getItemId(labels.get(id)));
+            assertEquals(degrees[id], graph.getNumConnections(id));
+            int previous = -1;
+            for (int index = 0; index < graph.getNumConnections(id); index++) {
+                int slot = graph.getIncidentSlot(id, index);
+                assertTrue((graph.getLinkItem1(slot) == id) || (graph.getLinkItem2(slot) == id));
+                boolean selfLink = (graph.getLinkItem1(slot) == graph.getLinkItem2(slot));
+                assertTrue("Links out of slot order", (slot > previous)
+                        || (selfLink && (slot == previous)));
+                previous = slot;
+            }
+        }
+    }
+
+    private static String pair(String label1, String label2) {
+        return (label1.compareTo(label2) < 0) ? (label1 + '\n' + label2) : (label2 + '\n' + label1);
+    }
+
+    @Test
+    public void findItemAt_searchesStartAngles() throws Exception {
+        GraphStore graph = new GraphStore();
+        assertEquals(GraphStore.NO_ID, graph.findItemAt(10.0f));
+        for (int i = 0; i < 7; i++) {
+            graph.addItem("Item " + i, 0);
+        }
+        graph.assignItemAngles();
+
+        for (int id = 0; id < 7; id++) {
+            assertEquals(id, graph.findItemAt(graph.getStartAngle(id)));
+            assertEquals(id, graph.findItemAt(graph.getCenterAngle(id)));
+        }
+        assertEquals(0, graph.findItemAt(0.0f));
+        assertEquals(6, graph.findItemAt(359.99f));
+    }
+
+    @Test
+    public void deleteLink_compactsSparseSlots() throws Exception {
+        GraphStore graph = new GraphStore();
+        for (int i = 0; i < 20; i++) {
+            graph.addItem("Item " + i, 0);
+        }
+        for (int i = 1; i < 20; i++) {
+            graph.addLink(0, i);
+        }
+        int numLinks = graph.getNumLinks();
+        for (int i = 1; i < 15; i++) {
+            graph.deleteLink(0, i);
+        }
+        assertEquals(numLinks - 14, graph.getNumLinks());
+        assertTrue(graph.getNumLinkSlots() <= (2 * graph.getNumLinks()));
+        assertEquals(graph.getItemId("Item 15"), graph.getLinkItem2(firstLinkSlot(graph)));
+    }
+
+    @Test
+    public void copy_isIndependent() throws Exception {
+        GraphStore graph = new GraphStore();
+        graph.addItem("a", 0);
+        graph.addItem("b", 0);
+        graph.addLink(0, 1);
+
+        GraphStore copy = graph.copy();
+        copy.addItem("c", 0);
+        copy.addLink(1, 2);
+        copy.assignItemAngles();
+
+        assertEquals(2, graph.getNumItems());
+        assertEquals(1, graph.getNumLinks());
+        assertEquals(GraphStore.NO_ID, graph.getItemId("c"));
+        assertEquals(0.0f, graph.getEndAngle(0), 0.0f);
+        assertEquals(3, copy.getNumItems());
+        assertEquals(2, copy.getNumLinks());
+        assertEquals(0, copy.getLinkSlot(1, 0));
+    }
+
+    @Test
+    public void deleteLink_updatesConnectionCounts() throws Exception {
+        GraphStore graph = new GraphStore();
+        graph.addItem("a", 0);
+        graph.addItem("b", 0);
+        graph.addItem("c", 0);
+        graph.addLink(0, 1);
+        graph.addLink(0, 2);
+
+        assertTrue(graph.deleteLink(1, 0));
+        assertFalse(graph.deleteLink(0, 1));
+        assertEquals(1, graph.getNumConnections(0));
+        assertEquals(0, graph.getNumConnections(1));
+        assertEquals(1, graph.getNumConnections(2));
+    }
+
+    @Test
+    public void updateLinkAngles_matchesFullLayout() throws Exception {
+        Random random = new Random(11);
+        GraphStore graph = new GraphStore();
+        int numItems = 30;
+        for (int i = 0; i < numItems; i++) {
+            graph.addItem("Item " + i, i);
+        }
+        for (boolean spread : new boolean[] {true, false}) {
+            graph.assignItemAngles();
+            graph.assignLinkAngles(spread);
+            graph.clearChanges();
+            for (int round = 0; round < 200; round++) {
+                // A few changes between layouts, sometimes enough deletes to compact the slots.
+                int numChanges = (random.nextInt(8) == 0) ? 200 : (1 + random.nextInt(3));
+                for (int i = 0; i < numChanges; i++) {
+                    int item1 = random.nextInt(numItems);
+                    int item2 = random.nextInt(numItems);
+                    if (item1 == item2) {
+                        continue;
+                    }
+                    if (random.nextInt(3) == 0) {
+                        graph.deleteLink(item1, item2);
+                    } else {
+                        graph.addLink(item1, item2);
+                    }
+                }
+
+                assertTrue(graph.canUpdateLinkAngles(spread));
+                graph.updateLinkAngles();
+                GraphStore expected = graph.copy();
+                expected.assignItemAngles();
+                expected.assignLinkAngles(spread);
+                for (int slot = 0; slot < graph.getNumLinkSlots(); slot++) {
+                    if (graph.getLinkItem1(slot) != GraphStore.NO_ID) {
+                        assertEquals(expected.getEndpointAngle1(slot),
+                                graph.getEndpointAngle1(slot), 0.0f);
+                        assertEquals(expected.getEndpointAngle2(slot),
+                                graph.getEndpointAngle2(slot), 0.0f);
+                    }
+                }
+                graph.clearChanges();
+            }
+        }
+
+        assertFalse(graph.canUpdateLinkAngles(true));
+        graph.addItem("Item " + numItems, 0);
+        assertFalse(graph.canUpdateLinkAngles(false));
+    }
+
+    /**
+     * Adding or deleting an item moves every arc and every endpoint, so no part of the old
+     * layout can be kept and a full layout is as cheap as any update.
+     */
+    @Test
+    public void itemChanges_moveEveryAngle() throws Exception {
+        GraphStore graph = new GraphStore();
+        int numItems = 12;
+        for (int i = 0; i < numItems; i++) {
+            graph.addItem("Item " + i, i);
+        }
+        for (int i = 0; i < numItems; i++) {
+            graph.addLink(i, (i + 1) % numItems);
+            graph.addLink(i, (i + 5) % numItems);
+        }
+        graph.assignItemAngles();
+        graph.assignLinkAngles(true);
+        graph.clearChanges();
+
+        GraphStore added = graph.copy();
+        added.addItem("Item " + numItems, 0); // Without links of its own
+        assertFalse(added.canUpdateLinkAngles(true));
+        added.assignItemAngles();
+        added.assignLinkAngles(true);
+        assertEveryAngleMoved(graph, added, 0);
+
+        GraphStore deleted = graph.copy();
+        deleted.deleteItem(numItems - 1);
+        assertFalse(deleted.canUpdateLinkAngles(true));
+        deleted.assignItemAngles();
+        deleted.assignLinkAngles(true);
+        for (int id = 1; id < (numItems - 1); id++) {
+            assertNotEquals(graph.getStartAngle(id), deleted.getStartAngle(id), 0.0f);
+        }
+        for (int id = 0; id < (numItems - 1); id++) {
+            assertNotEquals(graph.getEndAngle(id), deleted.getEndAngle(id), 0.0f);
+        }
+    }
+
+    /**
+     * Checks that every item but the first starts at a new angle, every item ends at a new
+     * angle, and every link that is still in the same slot meets its items at new angles.
+     */
+    private static void assertEveryAngleMoved(GraphStore before, GraphStore after, int firstId) {
+        for (int id = firstId + 1; id < before.getNumItems(); id++) {
+            assertNotEquals(before.getStartAngle(id), after.getStartAngle(id), 0.0f);
+        }
+        for (int id = firstId; id < before.getNumItems(); id++) {
+            assertNotEquals(before.getEndAngle(id), after.getEndAngle(id), 0.0f);
+        }
+        for (int slot = 0; slot < before.getNumLinkSlots(); slot++) {
+            assertNotEquals(before.getEndpointAngle1(slot), after.getEndpointAngle1(slot), 0.0f);
+            assertNotEquals(before.getEndpointAngle2(slot), after.getEndpointAngle2(slot), 0.0f);
+        }
+    }
+
+    @Test
+    public void memoryPerLink() throws Exception {
+        GraphStore graph = new GraphStore();
+        int numItems = 500;
+        for (int i = 0; i < numItems; i++) {
+            graph.addItem("Item " + i, i);
+        }
+        for (int i = 0; i < numItems; i++) {
+            for (int j = i + 1; j < numItems; j++) {
+                graph.addLink(i, j);
+            }
+        }
+
+        int numLinks = graph.getNumLinks();
+        double arrayBytesPerLink = ((double) graph.getLinkMemoryBytes() / numLinks);
+
+        // The link arrays and each item's list of links grow by doubling, so at most half of
+        // their capacity is unused, and the link index is kept between a quarter and a half full.
+        assertEquals((numItems * (numItems - 1)) / 2, numLinks);
+        assertTrue(arrayBytesPerLink
+                <= ((2 * GraphStore.BYTES_PER_LINK) + (4 * LinkIndex.BYTES_PER_ENTRY) + (2 * 2 * 4)));
+    }
+
+    @Test
+    public void fromMatrix_linksPairsWithFlow() throws Exception {
+        String[] labels = {"a", "b", "c"};
+        int[] colours = {1, 2, 3};
+        float[] matrix = {
+                5, 1, 0,
+                2, 0, 0,
+                0, 4, 0};
+        GraphStore graph = GraphStore.fromMatrix(labels, colours, matrix);
+
+        assertEquals(3, graph.getNumItems());
+        assertEquals(3, graph.getColour(2));
+        assertEquals(2, graph.getNumLinks());
+        assertEquals(0, graph.getLinkSlot(1, 0));
+        assertEquals(1, graph.getLinkSlot(2, 1));
+        assertEquals(3.0f, graph.getLinkWeight(0), 0.0f);
+        assertEquals(4.0f, graph.getLinkWeight(1), 0.0f);
+        assertEquals(GraphStore.NO_ID, graph.getLinkSlot(0, 2));
+        assertEquals(2, graph.getNumConnections(1));
+    }
+
+    @Test
+    public void fromSparseMatrix_sumsEntriesOfAPair() throws Exception {
+        String[] labels = {"a", "b", "c"};
+        int[] colours = {1, 2, 3};
+        int[] rows = {2, 0, 1, 1, 0};
+        int[] columns = {1, 1, 0, 1, 2};
+        float[] values = {4, 1, 2, 7, 0};
+        GraphStore graph = GraphStore.fromSparseMatrix(labels, colours, rows, columns, values);
+
+        assertEquals(2, graph.getNumLinks());
+        assertEquals(0, graph.getLinkSlot(1, 2));
+        assertEquals(4.0f, graph.getLinkWeight(0), 0.0f);
+        assertEquals(3.0f, graph.getLinkWeight(graph.getLinkSlot(0, 1)), 0.0f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void fromMatrix_rejectsDuplicateLabels() throws Exception {
+        GraphStore.fromMatrix(new String[] {"a", "a"}, new int[2], new float[4]);
+    }
+
+    /**
+     * Checks building a store from a flow matrix against adding each link through the label
+     * lookups a caller of addLink(String, String) goes through. The two are timed against each
+     * other by MatrixBenchmark in chord-diagram-benchmarks.
+     */
+    @Test
+    public void fromMatrix_matchesAddLinkPerPair() throws Exception {
+        checkMatrix(100, 1.0);
+        checkMatrix(400, 0.1);
+    }
+
+    private static void checkMatrix(int n, double density) {
+        Random random = new Random(n);
+        String[] labels = new String[n];
+        int[] colours = new int[n];
+        for (int i = 0; i < n; i++) {
+            labels[i] = ("Item " + i);
+            colours[i] = i;
+        }
+        float[] matrix = new float[n * n];
+        for (int i = 0; i < matrix.length; i++) {
+            if (random.nextDouble() < density) {
+                matrix[i] = random.nextFloat();
+            }
+        }
+
+        GraphStore graph = GraphStore.fromMatrix(labels, colours, matrix);
+        GraphStore reference = addPairByLabel(labels, colours, matrix);
+        assertEquals(reference.getNumLinks(), graph.getNumLinks());
+        for (int slot = 0; slot < graph.getNumLinkSlots(); slot++) {
+            assertEquals(reference.getLinkItem1(slot), graph.getLinkItem1(slot));
+            assertEquals(reference.getLinkItem2(slot), graph.getLinkItem2(slot));
+            assertEquals(reference.getLinkWeight(slot), graph.getLinkWeight(slot), 0.0f);
+            assertEquals(slot, graph.getLinkSlot(graph.getLinkItem1(slot), graph.getLinkItem2(slot)));
+        }
+        for (int i = 0; i < n; i++) {
+            assertEquals(reference.getNumConnections(i), graph.getNumConnections(i));
+        }
+    }
+
+    private static GraphStore addPairByLabel(String[] labels, int[] colours, float[] matrix) {
+        int n = labels.length;
+        GraphStore graph = new GraphStore();
+        for (int i = 0; i < n; i++) {
+            graph.addItem(labels[i], colours[i]);
+        }
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                float weight = (matrix[(i * n) + j] + matrix[(j * n) + i]);
+                if (weight > 0) {
+                    graph.addLink(graph.getItemId(labels[i]), graph.getItemId(labels[j]), weight);
+                }
+            }
+        }
+        return graph;
+    }
+
+    private static int firstLinkSlot(GraphStore graph) {
+        for (int slot = 0; slot < graph.getNumLinkSlots(); slot++) {
+            if (graph.getLinkItem1(slot) != GraphStore.NO_ID) {
+                return slot;
+            }
+        }
+        return GraphStore.NO_ID;
+    }
+}
@@ -0,0 +1,88 @@
+package com.thomaslorincz.chord_diagram.core;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link LinkIndex}.
+ */
+public class LinkIndexTest {
+    @Test
+    public void pairKey_ignoresOrder() throws Exception {
+        assertEquals(LinkIndex.pairKey(3, 7), LinkIndex.pairKey(7, 3));
+        assertNotEquals(LinkIndex.pairKey(3, 7), LinkIndex.pairKey(3, 8));
+    }
+
+    @Test
+    public void randomOperations_matchReferenceMap() throws Exception {
+        LinkIndex index = new LinkIndex();
+        Map<Long, Integer> reference = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 200000; i++) {
+            int item1 = random.nextInt(300);
+            int item2 = random.nextInt(300);
+            long key = LinkIndex.pairKey(item1, item2);
+            switch (random.nextInt(3)) {
+                case 0:
+                    index.put(item1, item2, i);
+                    reference.put(key, i);
+                    break;
+                case 1:
+                    Integer removed = reference.remove(key);
+                    assertEquals((removed == null) ? GraphStore.NO_ID : removed, index.remove(item2, item1));
+                    break;
+                default:
+                    Integer slot = reference.get(key);
+                    assertEquals((slot == null) ? GraphStore.NO_ID : slot, index.get(item1, item2));
+                    break;
+            }
+            assertEquals(reference.size(), index.size());
+        }
+    }
+
+    /**
+     * Checks the index against the previous scheme, which keyed links by the sum of the hash
+     * codes of the two labels in a HashMap and so dropped pairs whose sums collide. The two are
+     * timed against each other by LinkLookupBenchmark in chord-diagram-benchmarks.
+     */
+    @Test
+    public void index_keepsPairsThatSummedHashesDrop() throws Exception {
+        int numItems = 1000;
+        int numLinks = 100000;
+        String[] labels = new String[numItems];
+        for (int i = 0; i < numItems; i++) {
+            labels[i] = ("Item " + i);
+        }
+        LinkIndex index = new LinkIndex();
+        Map<Integer, Integer> summedHashes = new HashMap<>();
+        for (int i = 0, n = 0; n < numLinks; i++) {
+            for (int j = i + 1; (j < numItems) && (n < numLinks); j++, n++) {
+                assertEquals(GraphStore.NO_ID, index.get(i, j));
+                index.put(i, j, n);
+                int key = (labels[i].hashCode() + labels[j].hashCode());
+                if (!summedHashes.containsKey(key)) {
+                    summedHashes.put(key, n);
+                }
+            }
+        }
+
+        assertEquals(numLinks, index.size());
+        assertTrue(summedHashes.size() < numLinks);
+        for (int i = 0, n = 0; n < numLinks; i++) {
+            for (int j = i + 1; (j < numItems) && (n < numLinks); j++, n++) {
+                assertEquals(n, index.get(j, i));
+            }
+        }
+        for (int i = 0, n = 0; n < numLinks; i++) {
+            for (int j = i + 1; (j < numItems) && (n < numLinks); j++, n++) {
+                assertEquals(n, index.remove(i, j));
+            }
+        }
+        assertEquals(0, index.size());
+    }
+}
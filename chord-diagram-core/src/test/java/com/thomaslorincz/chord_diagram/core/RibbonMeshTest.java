@@ -0,0 +1,226 @@
+package com.thomaslorincz.chord_diagram.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link RibbonMesh}.
+ */
+public class RibbonMeshTest {
+    private static final float CENTRE = 200.0f;
+    private static final float RADIUS = 100.0f;
+    private static final int ALPHA = 0xC0;
+
+    @Test
+    public void build_dividesArcsByWeight() throws Exception {
+        GraphStore graph = new GraphStore();
+        int a = graph.addItem("A", 0xFFFF0000);
+        int b = graph.addItem("B", 0xFF00FF00);
+        int c = graph.addItem("C", 0xFF0000FF);
+        graph.addLink(a, b, 1.0f);
+        graph.addLink(a, c, 3.0f);
+        graph.assignItemAngles(); // A spans 0 to 120 degrees
+
+        RibbonMesh mesh = build(graph);
+        assertEquals(2, mesh.getNumBands());
+        float[] vertices = mesh.getVertices();
+        // The first band starts across A's share for the link to B: a quarter of its arc.
+        assertEquals(0.0f, angleOf(vertices, 0), 0.01f);
+        assertEquals(30.0f, angleOf(vertices, 1), 0.01f);
+
+        // The second band starts after the degenerate join, across the other three quarters.
+        int secondBand = (2 * (segmentsOfFirstBand(mesh) + 1)) + 2;
+        assertEquals(30.0f, angleOf(vertices, secondBand), 0.01f);
+        assertEquals(120.0f, angleOf(vertices, secondBand + 1), 0.01f);
+    }
+
+    @Test
+    public void build_joinsBandsWithDegenerateTriangles() throws Exception {
+        GraphStore graph = new GraphStore();
+        for (int i = 0; i < 6; i++) {
+            graph.addItem("Item " + i, 0xFF000000 | (i * 0x202020));
+        }
+        for (int i = 0; i < 6; i++) {
+            graph.addLink(i, (i + 2) % 6, 1 + i);
+        }
+        graph.addLink(3, 3, 2.0f); // A link from an item to itself
+        graph.deleteLink(0, 2); // Leaves an empty slot
+        graph.assignItemAngles();
+
+        RibbonMesh mesh = build(graph);
+        assertEquals(6, mesh.getNumBands());
+        float[] vertices = mesh.getVertices();
+        int[] colours = mesh.getColours();
+        int numStripVertices = 0;
+        int start = 0;
+        for (int slot = 0; slot < graph.getNumLinkSlots(); slot++) {
+            int item1 = graph.getLinkItem1(slot);
+            if (item1 == GraphStore.NO_ID) {
+                continue;
+            }
+            if (start > 0) {
+                // The join repeats the end of the previous band and the start of this one.
+                assertEquals(vertices[2 * (start - 1)], vertices[2 * start], 0.0f);
+                assertEquals(vertices[(2 * (start - 1)) + 1], vertices[(2 * start) + 1], 0.0f);
+                assertEquals(vertices[2 * (start + 1)], vertices[2 * (start + 2)], 0.0f);
+                assertEquals(vertices[(2 * (start + 1)) + 1], vertices[(2 * (start + 2)) + 1], 0.0f);
+                start += 2;
+            }
+            int end = findBandEnd(vertices, start, mesh.getNumVertices());
+            int colour1 = ((graph.getColour(item1) & 0x00FFFFFF) | (ALPHA << 24));
+            int colour2 = ((graph.getColour(graph.getLinkItem2(slot)) & 0x00FFFFFF) | (ALPHA << 24));
+            assertEquals(colour1, colours[start]);
+            assertEquals(colour2, colours[end - 1]);
+            numStripVertices += (end - start);
+            start = end;
+        }
+        assertEquals(mesh.getNumVertices(), start);
+        assertEquals(mesh.getNumVertices(), numStripVertices + (2 * (mesh.getNumBands() - 1)));
+    }
+
+    @Test
+    public void build_splitsWeightlessLinksEvenly() throws Exception {
+        GraphStore graph = new GraphStore();
+        int a = graph.addItem("A", 0xFFFF0000);
+        int b = graph.addItem("B", 0xFF00FF00);
+        graph.addLink(a, b, 0.0f);
+        graph.assignItemAngles(); // A spans 0 to 180 degrees
+
+        RibbonMesh mesh = build(graph);
+        assertEquals(1, mesh.getNumBands());
+        assertEquals(0.0f, angleOf(mesh.getVertices(), 0), 0.01f);
+        assertEquals(180.0f, angleOf(mesh.getVertices(), 1), 0.01f);
+    }
+
+    @Test
+    public void getBandMidAngles_areTheMiddlesOfTheShares() throws Exception {
+        GraphStore graph = new GraphStore();
+        int a = graph.addItem("A", 0xFFFF0000);
+        int b = graph.addItem("B", 0xFF00FF00);
+        int c = graph.addItem("C", 0xFF0000FF);
+        int ab = graph.addLink(a, b, 1.0f);
+        int ac = graph.addLink(a, c, 3.0f);
+        graph.assignItemAngles(); // A, B and C span 120 degrees each
+
+        RibbonMesh mesh = build(graph);
+        assertEquals(15.0f, mesh.getBandMidAngle1(ab), 0.01f);
+        assertEquals(180.0f, mesh.getBandMidAngle2(ab), 0.01f);
+        assertEquals(75.0f, mesh.getBandMidAngle1(ac), 0.01f);
+        assertEquals(300.0f, mesh.getBandMidAngle2(ac), 0.01f);
+    }
+
+    @Test
+    public void copyItemBands_copiesEachBandOfTheItemOnce() throws Exception {
+        GraphStore graph = new GraphStore();
+        for (int i = 0; i < 5; i++) {
+            graph.addItem("Item " + i, 0xFF000000 | (i * 0x203040));
+        }
+        int[] slots = {
+                graph.addLink(0, 1, 1.0f),
+                graph.addLink(2, 0, 2.0f),
+                graph.addLink(0, 0, 3.0f), // Appears twice among the links of item 0
+        };
+        graph.addLink(3, 4, 4.0f);
+        graph.assignItemAngles();
+
+        RibbonMesh mesh = build(graph);
+        float[] vertices = new float[2 * mesh.getMaxItemVertices()];
+        int[] colours = new int[vertices.length];
+        int numVertices = mesh.copyItemBands(graph, 0, 0xFF, vertices, colours);
+        assertTrue(numVertices <= mesh.getMaxItemVertices());
+
+        // Each band is found in the mesh, in the order of the item's links, and made opaque.
+        int vertex = 0;
+        for (int slot : slots) {
+            if (vertex > 0) {
+                vertex += 2; // Degenerate join
+            }
+            int first = findVertexPair(mesh, vertices, vertex);
+            int end = findBandEnd(mesh.getVertices(), first, mesh.getNumVertices());
+            for (int i = first; i < end; i++, vertex++) {
+                assertEquals(mesh.getVertices()[2 * i], vertices[2 * vertex], 0.0f);
+                assertEquals(mesh.getVertices()[(2 * i) + 1], vertices[(2 * vertex) + 1], 0.0f);
+                assertEquals(mesh.getColours()[i] | 0xFF000000, colours[vertex]);
+            }
+            assertEquals(mesh.getBandMidAngle1(slot),
+                    (angleOf(mesh.getVertices(), first) + angleOf(mesh.getVertices(), first + 1)) / 2,
+                    0.01f);
+        }
+        assertEquals(numVertices, vertex);
+
+        // The scratch marks are cleared, so a second copy matches the first.
+        assertEquals(numVertices, mesh.copyItemBands(graph, 0, 0xFF, vertices, colours));
+
+        // Copying stops before the first band that does not fit.
+        int firstBand = findBandEnd(vertices, 0, numVertices);
+        assertEquals(firstBand, mesh.copyItemBands(graph, 0, 0xFF,
+                new float[2 * (firstBand + 1)], new int[2 * (firstBand + 1)]));
+    }
+
+    @Test
+    public void blend_interpolatesEachChannel() throws Exception {
+        assertEquals(0x80FF0000, RibbonMesh.blend(0x80FF0000, 0x400000FF, 0.0f));
+        assertEquals(0x400000FF, RibbonMesh.blend(0x80FF0000, 0x400000FF, 1.0f));
+        assertEquals(0x60800080, RibbonMesh.blend(0x80FF0000, 0x400000FF, 0.5f));
+    }
+
+    private static RibbonMesh build(GraphStore graph) {
+        RibbonMesh mesh = new RibbonMesh();
+        assertTrue(mesh.build(graph, CENTRE, CENTRE, RADIUS,
+                BezierTessellator.DEFAULT_TOLERANCE, ALPHA));
+        return mesh;
+    }
+
+    /**
+     * Returns the angle of a vertex on the circle, in degrees from 0 to 360.
+     */
+    private static float angleOf(float[] vertices, int vertex) {
+        double angle = Math.toDegrees(Math.atan2(
+                vertices[(2 * vertex) + 1] - CENTRE, vertices[2 * vertex] - CENTRE));
+        return (float) ((angle + 360) % 360);
+    }
+
+    /**
+     * Returns the index of the first of two vertices of the mesh at the points of a vertex of a
+     * copied strip and the one after it. Neighbouring bands share points on the circle, so one
+     * point alone does not find a band.
+     */
+    private static int findVertexPair(RibbonMesh mesh, float[] strip, int vertex) {
+        float[] vertices = mesh.getVertices();
+        for (int i = 0; i < (2 * (mesh.getNumVertices() - 1)); i += 2) {
+            boolean match = true;
+            for (int j = 0; j < 4; j++) {
+                match &= (vertices[i + j] == strip[(2 * vertex) + j]);
+            }
+            if (match) {
+                return (i / 2);
+            }
+        }
+        fail("Vertices are not in the mesh");
+        return -1;
+    }
+
+    private static int segmentsOfFirstBand(RibbonMesh mesh) {
+        return ((findBandEnd(mesh.getVertices(), 0, mesh.getNumVertices()) / 2) - 1);
+    }
+
+    /**
+     * Returns the index after the last vertex of the band starting at a vertex. A band ends
+     * back on the circle, after leaving it.
+     */
+    private static int findBandEnd(float[] vertices, int start, int numVertices) {
+        for (int vertex = start + 2; vertex < numVertices; vertex += 2) {
+            if (onCircle(vertices, vertex)) {
+                return (vertex + 2);
+            }
+        }
+        fail("Band does not end on the circle");
+        return -1;
+    }
+
+    private static boolean onCircle(float[] vertices, int vertex) {
+        double distance = Math.hypot(vertices[2 * vertex] - CENTRE, vertices[(2 * vertex) + 1] - CENTRE);
+        return (Math.abs(distance - RADIUS) < 0.01);
+    }
+}
@@ -0,0 +1,55 @@
+package com.thomaslorincz.chord_diagram.core;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link RollingPercentiles}.
+ */
+public class RollingPercentilesTest {
+    @Test
+    public void getPercentile_nearestRank() throws Exception {
+        RollingPercentiles percentiles = new RollingPercentiles(10);
+        assertEquals(0, percentiles.getPercentile(50));
+        for (long value : new long[] {50, 10, 40, 20, 30}) {
+            percentiles.add(value);
+        }
+        assertEquals(10, percentiles.getPercentile(0));
+        assertEquals(10, percentiles.getPercentile(20));
+        assertEquals(30, percentiles.getPercentile(50));
+        assertEquals(40, percentiles.getPercentile(75));
+        assertEquals(50, percentiles.getPercentile(99));
+        assertEquals(50, percentiles.getPercentile(100));
+    }
+
+    @Test
+    public void add_keepsOnlyRecentSamples() throws Exception {
+        Random random = new Random(20);
+        RollingPercentiles percentiles = new RollingPercentiles(64);
+        long[] values = new long[1000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextInt(100000);
+            percentiles.add(values[i]);
+            if (i % 37 == 0) {
+                // Asking in between must not disturb later answers.
+                percentiles.getPercentile(90);
+            }
+        }
+        assertEquals(64, percentiles.getNumSamples());
+        assertEquals(1000, percentiles.getTotalSamples());
+
+        long[] recent = Arrays.copyOfRange(values, values.length - 64, values.length);
+        Arrays.sort(recent);
+        assertEquals(recent[31], percentiles.getPercentile(50));
+        assertEquals(recent[60], percentiles.getPercentile(95));
+        assertEquals(recent[63], percentiles.getPercentile(100));
+
+        percentiles.clear();
+        assertEquals(0, percentiles.getNumSamples());
+        assertEquals(0, percentiles.getPercentile(50));
+    }
+}
@@ -0,0 +1,155 @@
+package com.thomaslorincz.chord_diagram.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link RotationEngine}.
+ */
+public class RotationEngineTest {
+    private static final long FRAME_NANOS_60HZ = 16666667L;
+
+    @Test
+    public void drag_keepsSmallMotions() throws Exception {
+        FakeHost host = new FakeHost();
+        RotationEngine engine = new RotationEngine(host);
+        engine.startDrag(10.0f, 0);
+        for (int i = 1; i <= 100; i++) {
+            engine.dragBy(0.05f, i * 1000L); // Too slow to fling
+        }
+        assertEquals(15.0f, host.mRotation, 1e-3f);
+        engine.release(100000L);
+        assertEquals(1, host.mNumSettles);
+        assertEquals(0, host.mNumScheduled);
+        assertFalse(engine.isFlinging());
+    }
+
+    @Test
+    public void release_flingsAtDragVelocity() throws Exception {
+        FakeHost host = new FakeHost();
+        RotationEngine engine = new RotationEngine(host);
+        dragSteadily(engine, 90.0f);
+        assertTrue(engine.isFlinging());
+        float velocity = engine.getVelocity();
+        assertEquals(90.0f, velocity, 1.0f);
+        assertEquals(1, host.mNumScheduled);
+
+        float releasedAt = host.mRotation;
+        runFling(engine, host, FRAME_NANOS_60HZ);
+        assertEquals(1, host.mNumSettles);
+        // The fling covers the distance friction takes to slow it to rest, give or take a frame.
+        float expected = ((velocity - RotationEngine.REST_VELOCITY) / RotationEngine.FRICTION);
+        assertEquals(expected, host.mRotation - releasedAt, 0.2f);
+    }
+
+    @Test
+    public void fling_doesNotDependOnFrameRate() throws Exception {
+        FakeHost host60 = new FakeHost();
+        RotationEngine engine60 = new RotationEngine(host60);
+        dragSteadily(engine60, -200.0f);
+        runFling(engine60, host60, FRAME_NANOS_60HZ);
+
+        FakeHost host120 = new FakeHost();
+        RotationEngine engine120 = new RotationEngine(host120);
+        dragSteadily(engine120, -200.0f);
+        runFling(engine120, host120, FRAME_NANOS_60HZ / 2);
+
+        assertEquals(host60.mRotation, host120.mRotation, 0.1f);
+    }
+
+    @Test
+    public void release_afterPauseDoesNotFling() throws Exception {
+        FakeHost host = new FakeHost();
+        RotationEngine engine = new RotationEngine(host);
+        engine.startDrag(0, 0);
+        for (int i = 1; i <= 10; i++) {
+            engine.dragBy(5.0f, i * 10L);
+        }
+        // The finger held still before lifting.
+        engine.release(100 + RotationEngine.VELOCITY_WINDOW_MILLIS + 50);
+        assertFalse(engine.isFlinging());
+        assertEquals(1, host.mNumSettles);
+        assertEquals(0, host.mNumScheduled);
+    }
+
+    @Test
+    public void stop_cancelsFlingAndGoesIdle() throws Exception {
+        FakeHost host = new FakeHost();
+        RotationEngine engine = new RotationEngine(host);
+        dragSteadily(engine, 120.0f);
+        engine.doFrame(FRAME_NANOS_60HZ);
+        engine.stop();
+        assertFalse(engine.isFlinging());
+        assertEquals(1, host.mNumCancelled);
+
+        // A frame that was already on its way does nothing.
+        int numRotations = host.mNumRotations;
+        engine.doFrame(2 * FRAME_NANOS_60HZ);
+        assertEquals(numRotations, host.mNumRotations);
+        assertEquals(0, host.mNumSettles);
+
+        // So does a drag that was never started.
+        engine.dragBy(10.0f, 0);
+        assertEquals(numRotations, host.mNumRotations);
+    }
+
+    /**
+     * Drags at a constant angular velocity for a quarter of a second, with touch events every
+     * 8 ms, then releases.
+     */
+    private static void dragSteadily(RotationEngine engine, float degreesPerSecond) {
+        engine.startDrag(0, 0);
+        long time = 0;
+        for (int i = 0; i < 32; i++) {
+            time += 8;
+            engine.dragBy(degreesPerSecond * 0.008f, time);
+        }
+        engine.release(time);
+    }
+
+    /**
+     * Supplies frames to a fling until it comes to rest.
+     */
+    private static void runFling(RotationEngine engine, FakeHost host, long frameNanos) {
+        long time = frameNanos;
+        for (int frame = 0; (frame < 100000) && engine.isFlinging(); frame++) {
+            assertTrue("A frame was not requested", host.mNumScheduled > 0);
+            host.mNumScheduled = 0;
+            engine.doFrame(time);
+            time += frameNanos;
+        }
+        assertFalse(engine.isFlinging());
+        assertEquals("A frame was requested while idle", 0, host.mNumScheduled);
+    }
+
+    private static class FakeHost implements RotationEngine.Host {
+        private float mRotation;
+        private int mNumRotations;
+        private int mNumSettles;
+        private int mNumScheduled;
+        private int mNumCancelled;
+
+        @Override
+        public void onRotate(float rotation) {
+            mRotation = rotation;
+            mNumRotations++;
+        }
+
+        @Override
+        public void onSettle(float rotation) {
+            mRotation = rotation;
+            mNumSettles++;
+        }
+
+        @Override
+        public void scheduleFrame() {
+            mNumScheduled++;
+        }
+
+        @Override
+        public void cancelFrame() {
+            mNumCancelled++;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.thomaslorincz.chord_diagram;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.os.Debug;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.view.View;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumentation test that checks drawing the diagram does not allocate in steady state.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DrawAllocationTest {
+    private static final int SIZE = 500;
+
+    @Test
+    public void steadyStateDrawDoesNotAllocate() throws Exception {
+        final int[] allocations = new int[1];
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                ChordDiagram chordDiagram = newLaidOutDiagram();
+                allocations[0] = countDrawAllocations(chordDiagram.getDiagramView());
+            }
+        });
+        assertEquals("Drawing the diagram allocated objects", 0, allocations[0]);
+    }
+
+    @Test
+    public void highlightDrawDoesNotAllocate() throws Exception {
+        final int[] allocations = new int[1];
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                ChordDiagram chordDiagram = newLaidOutDiagram();
+                chordDiagram.setHighlightedItem("Item 7");
+                assertEquals("Item 7", chordDiagram.getHighlightedItem());
+                assertTrue(chordDiagram.getDiagramView().getAlpha() < 1.0f);
+                allocations[0] = countDrawAllocations(chordDiagram.getHighlightView());
+
+                chordDiagram.setHighlightedItem(null);
+                assertEquals(1.0f, chordDiagram.getDiagramView().getAlpha(), 0.0f);
+            }
+        });
+        assertEquals("Drawing the highlight allocated objects", 0, allocations[0]);
+    }
+
+    @Test
+    public void ribbonDrawDoesNotAllocate() throws Exception {
+        final int[] allocations = new int[2];
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                ChordDiagram chordDiagram = newLaidOutDiagram();
+                chordDiagram.setConnectionStyle(ChordDiagram.CONNECTION_STYLE_RIBBON);
+                chordDiagram.setHighlightedItem("Item 7");
+                allocations[0] = countDrawAllocations(chordDiagram.getDiagramView());
+                allocations[1] = countDrawAllocations(chordDiagram.getHighlightView());
+            }
+        });
+        assertEquals("Drawing the ribbons allocated objects", 0, allocations[0]);
+        assertEquals("Drawing the highlighted ribbons allocated objects", 0, allocations[1]);
+    }
+
+    @Test
+    public void metricsDrawDoesNotAllocate() throws Exception {
+        final int[] allocations = new int[1];
+        final int[] numDrawCalls = new int[1];
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                ChordDiagram chordDiagram = newLaidOutDiagram();
+                chordDiagram.setOnMetricsListener(new ChordDiagram.OnMetricsListener() {
+                    @Override
+                    public void onDrawMetrics(ChordDiagram chordDiagram,
+                                              ChordDiagram.DrawMetrics metrics) {
+                        numDrawCalls[0] = metrics.getNumDrawCalls();
+                    }
+
+                    @Override
+                    public void onLayoutMetrics(ChordDiagram chordDiagram,
+                                                ChordDiagram.LayoutMetrics metrics) {}
+                });
+                allocations[0] = countDrawAllocations(chordDiagram.getDiagramView());
+                assertEquals(11, chordDiagram.getMetricsSummary().getNumDraws());
+                assertTrue(chordDiagram.getMetricsSummary().getDrawNanos(50) > 0);
+            }
+        });
+        assertEquals("Drawing the diagram with metrics allocated objects", 0, allocations[0]);
+        assertTrue(numDrawCalls[0] >= 50);
+    }
+
+    private static ChordDiagram newLaidOutDiagram() {
+        ChordDiagram chordDiagram = new ChordDiagram(InstrumentationRegistry.getTargetContext());
+        chordDiagram.beginUpdate();
+        for (int i = 0; i < 50; i++) {
+            chordDiagram.addItem("Item " + i, Color.HSVToColor(new float[] {i * 7.0f, 1.0f, 1.0f}));
+        }
+        for (int i = 0; i < 50; i++) {
+            chordDiagram.addLink("Item " + i, "Item " + ((i * 13 + 7) % 50));
+        }
+        chordDiagram.endUpdate();
+        chordDiagram.measure(
+                View.MeasureSpec.makeMeasureSpec(SIZE, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(SIZE, View.MeasureSpec.EXACTLY));
+        chordDiagram.layout(0, 0, SIZE, SIZE);
+        return chordDiagram;
+    }
+
+    private static int countDrawAllocations(View view) {
+        Canvas canvas = new Canvas(Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888));
+
+        // The first draw may lazily set up paint and canvas state.
+        view.draw(canvas);
+
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocCount();
+        for (int i = 0; i < 10; i++) {
+            view.draw(canvas);
+        }
+        int allocations = Debug.getThreadAllocCount();
+        Debug.stopAllocCounting();
+        return allocations;
+    }
+}
@@ -0,0 +1,168 @@
+package com.thomaslorincz.chord_diagram;
+
+import android.content.Context;
+import android.graphics.Color;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.SparseArray;
+import android.view.View;
+
+import com.thomaslorincz.chord_diagram.core.GraphStore;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumentation test that checks a ChordDiagram restores its data set and rotation, whether
+ * the data set is saved inline or spilled to a cache file.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SavedStateTest {
+    private static final int SIZE = 500;
+    private static final int VIEW_ID = 1; // Views without an id do not save their state
+
+    @Test
+    public void restoresSmallDataSetInline() throws Exception {
+        assertRestores(20);
+    }
+
+    @Test
+    public void restoresLargeDataSetFromCacheFile() throws Exception {
+        deleteSpillFiles();
+        assertRestores(600);
+        // The file outlives the restore, since the same state may be restored again.
+        assertEquals(1, deleteSpillFiles());
+    }
+
+    @Test
+    public void restoresTwiceFromOneSavedState() throws Exception {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                deleteSpillFiles();
+                ChordDiagram original = newDiagram();
+                addDataSet(original, 600);
+                SparseArray<Parcelable> container = new SparseArray<>();
+                original.saveHierarchyState(container);
+                // Detaching, as when a fragment's view goes onto the back stack, keeps the file.
+                original.onDetachedFromWindow();
+
+                ChordDiagram first = newDiagram();
+                first.restoreHierarchyState(parcelRoundTrip(container));
+                assertGraphsEqual(original.getGraph(), first.getGraph());
+                ChordDiagram second = newDiagram();
+                second.restoreHierarchyState(parcelRoundTrip(container));
+                assertGraphsEqual(original.getGraph(), second.getGraph());
+
+                // Saving a restored diagram replaces the file it was restored from.
+                second.saveHierarchyState(new SparseArray<Parcelable>());
+                assertEquals(1, deleteSpillFiles());
+            }
+        });
+    }
+
+    /**
+     * Deletes the files the diagrams spilled their data sets to.
+     *
+     * @return The number of files deleted.
+     */
+    private static int deleteSpillFiles() {
+        Context context = InstrumentationRegistry.getTargetContext();
+        int numDeleted = 0;
+        File[] files = new File(context.getCacheDir(), "chord_diagram").listFiles();
+        for (int i = 0; (files != null) && (i < files.length); i++) {
+            if (files[i].delete()) {
+                numDeleted++;
+            }
+        }
+        return numDeleted;
+    }
+
+    private static void assertRestores(final int numItems) {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                ChordDiagram original = newDiagram();
+                addDataSet(original, numItems);
+                layout(original);
+                original.setDiagramRotation(42);
+
+                SparseArray<Parcelable> container = new SparseArray<>();
+                original.saveHierarchyState(container);
+                container = parcelRoundTrip(container);
+
+                ChordDiagram restored = newDiagram();
+                restored.restoreHierarchyState(container);
+                layout(restored);
+
+                assertEquals(42, restored.getDiagramRotation());
+                assertGraphsEqual(original.getGraph(), restored.getGraph());
+            }
+        });
+    }
+
+    private static void assertGraphsEqual(GraphStore expected, GraphStore actual) {
+        assertEquals(expected.getNumItems(), actual.getNumItems());
+        assertEquals(expected.getNumLinks(), actual.getNumLinks());
+        for (int id = 0; id < expected.getNumItems(); id++) {
+            assertEquals(expected.getLabel(id), actual.getLabel(id));
+            assertEquals(expected.getColour(id), actual.getColour(id));
+            assertEquals(expected.getStartAngle(id), actual.getStartAngle(id), 0.0f);
+        }
+        assertEquals(expected.getEndpointAngle1(0), actual.getEndpointAngle1(0), 0.0f);
+    }
+
+    private static void addDataSet(ChordDiagram chordDiagram, int numItems) {
+        chordDiagram.beginUpdate();
+        for (int i = 0; i < numItems; i++) {
+            chordDiagram.addItem("Item " + i, Color.HSVToColor(new float[] {i, 1.0f, 1.0f}));
+        }
+        for (int i = 0; i < numItems; i++) {
+            for (int j = i + 1; j < numItems; j += 3) {
+                chordDiagram.addLink("Item " + i, "Item " + j);
+            }
+        }
+        chordDiagram.endUpdate();
+    }
+
+    private static ChordDiagram newDiagram() {
+        ChordDiagram chordDiagram = new ChordDiagram(InstrumentationRegistry.getTargetContext());
+        chordDiagram.setId(VIEW_ID);
+        return chordDiagram;
+    }
+
+    private static void layout(ChordDiagram chordDiagram) {
+        chordDiagram.measure(
+                View.MeasureSpec.makeMeasureSpec(SIZE, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(SIZE, View.MeasureSpec.EXACTLY));
+        chordDiagram.layout(0, 0, SIZE, SIZE);
+    }
+
+    /**
+     * Writes saved state to a parcel and reads it back, as happens across process death.
+     */
+    private static SparseArray<Parcelable> parcelRoundTrip(SparseArray<Parcelable> container) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.writeSparseArray(toObjects(container));
+            parcel.setDataPosition(0);
+            @SuppressWarnings("unchecked")
+            SparseArray<Parcelable> read =
+                    parcel.readSparseArray(ChordDiagram.class.getClassLoader());
+            return read;
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static SparseArray<Object> toObjects(SparseArray<Parcelable> container) {
+        return (SparseArray<Object>) (SparseArray<?>) container;
+    }
+}
@@ -2,39 +2,89 @@ package com.thomaslorincz.chord_diagram;
 
 import android.animation.Animator;
 import android.animation.ObjectAnimator;
-import android.animation.ValueAnimator;
 import android.content.Context;
 import android.content.res.TypedArray;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.LinearGradient;
 import android.graphics.Paint;
 import android.graphics.Path;
 import android.graphics.RectF;
-import android.graphics.drawable.ColorDrawable;
-import android.graphics.drawable.Drawable;
+import android.graphics.Shader;
+import android.os.Build;
+import android.os.Debug;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Parcel;
+import android.os.Parcelable;
 import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.view.Choreographer;
 import android.view.GestureDetector;
 import android.view.MotionEvent;
+import android.view.SoundEffectConstants;
 import android.view.View;
+import android.view.ViewConfiguration;
 import android.view.ViewGroup;
-import android.widget.Scroller;
 import android.widget.TextView;
 
-import java.util.LinkedHashMap;
-import java.util.Map;
+import com.thomaslorincz.chord_diagram.core.BezierTessellator;
+import com.thomaslorincz.chord_diagram.core.ChordGrid;
+import com.thomaslorincz.chord_diagram.core.EdgeListParser;
+import com.thomaslorincz.chord_diagram.core.GraphFile;
+import com.thomaslorincz.chord_diagram.core.GraphStore;
+import com.thomaslorincz.chord_diagram.core.RibbonMesh;
+import com.thomaslorincz.chord_diagram.core.RollingPercentiles;
+import com.thomaslorincz.chord_diagram.core.RotationEngine;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by Thomas on 15/08/2017.
  * ChordDiagram is a view group that displays a chord diagram.
  */
 public class ChordDiagram extends ViewGroup {
-    private Map<String, Item> mItems = new LinkedHashMap<>();
-    private Map<Integer, Link> mLinks = new LinkedHashMap<>();
+    private GraphStore mGraph = new GraphStore();
+
+    // Label state, indexed by item id
+    private TextView[] mTextViews = new TextView[0]; // Only used for LABEL_MODE_VIEW
+    private float[] mLabelWidths = new float[0]; // LABEL_MODE_CANVAS widths, or LABEL_DEFERRED
+    private float[] mLabelXs = new float[0]; // Label centres, in unrotated diagram coordinates
+    private float[] mLabelYs = new float[0];
+
+    private Geometry mGeometry = new Geometry();
+    private boolean mGeometryStale = true; // True if mGeometry may not match mGraph's last layout
+
+    // Asynchronous layout and loading, on a single worker thread
+    private ExecutorService mWorkerExecutor;
+    private Future<?> mLayoutFuture;
+    private int mLayoutGeneration; // Incremented on every change that makes a layout stale
+    private Future<?> mLoadFuture;
+    private int mLoadGeneration; // Incremented whenever a load is started or cancelled
+    private Handler mMainHandler = new Handler(Looper.getMainLooper());
 
     private ChordDiagramView mChordDiagramView;
+    private HighlightLayer mHighlightLayer;
+    private LabelLayer mLabelLayer;
 
     private RectF mViewBounds = new RectF(); // Bounds for the ChordDiagramView as a whole
-    private RectF mDiagramBounds = new RectF(); // Bounds for the diagram itself (hollow circle)
+    private final RectF mRingBounds = new RectF(); // Bounds of the centre line of the ring of arcs
 
     private float mDiagramRadius;
     private float mTextRadius;
@@ -42,17 +92,48 @@ public class ChordDiagram extends ViewGroup {
 
     private Paint mItemPaint;
     private Paint mLinkPaint;
-    private Paint mInnerCirclePaint;
-
-    private int mDiagramRotation;
-    private Scroller mScroller;
-    private ValueAnimator mScrollAnimator;
+    private Paint mRibbonPaint;
+    private Paint mArcPaint;
+    private Paint mLabelPaint;
+    private float mLabelHeight; // Height of a line of label text drawn with mLabelPaint
+    private float mLabelBaselineOffset; // Offset from the centre of a label to its baseline
+
+    private float mDiagramRotation;
+    private float mRestoredRotation; // Applied once the diagram is first laid out after a restore
+    private RotationEngine mRotationEngine;
     private ObjectAnimator mAutoCenterAnimator;
     private GestureDetector mDetector;
+    private OnItemClickListener mOnItemClickListener;
+    private OnLinkClickListener mOnLinkClickListener;
+    private String mHighlightedLabel; // Null if no item is highlighted
+
+    // Batched updates
+    private int mUpdateDepth;
+    private boolean mDataDirty;
+    // Labels to attach or detach when the batch ends. Views compare by identity, so adding and
+    // removing a label is O(1) however many are pending.
+    private Set<TextView> mPendingTextViews = new LinkedHashSet<>();
+    private Set<TextView> mDetachedTextViews = new LinkedHashSet<>();
 
     // XML attributes
     private boolean mShowText;
     private int mItemStyle;
+    private int mConnectionStyle;
+    private int mLabelMode;
+    private boolean mUprightLabels;
+    private float mTessellationTolerance = BezierTessellator.DEFAULT_TOLERANCE;
+    private boolean mAsyncLayout;
+    private boolean mAutoCenter;
+
+    // Saved state
+    private File mSpillFile; // The cache file this view saves its data set to, or null
+
+    // Metrics, only collected while a listener is set
+    private OnMetricsListener mMetricsListener;
+    private final DrawMetrics mDrawMetrics = new DrawMetrics();
+    private final LayoutMetrics mLayoutMetrics = new LayoutMetrics();
+    private final MetricsSummary mMetricsSummary = new MetricsSummary();
+    private long mMeasureLabelsNanos; // Label measurement for the next layout to report
 
     /**
      * Items are styled to be arcs of a circle.
@@ -64,40 +145,490 @@ public class ChordDiagram extends ViewGroup {
      */
     public static final int ITEM_STYLE_NODE = 1;
 
+    /**
+     * Links are drawn as chords of even width.
+     */
+    public static final int CONNECTION_STYLE_LINE = 0;
+
+    /**
+     * Links are drawn as ribbons whose width at each end reflects the weight of the link.
+     */
+    public static final int CONNECTION_STYLE_RIBBON = 1;
+
+    /**
+     * Each label is a TextView child of the diagram.
+     */
+    public static final int LABEL_MODE_VIEW = 0;
+
+    /**
+     * Labels are drawn directly onto the canvas of the diagram. The number of child views
+     * stays constant no matter how many items there are.
+     */
+    public static final int LABEL_MODE_CANVAS = 1;
+
+    /**
+     * The colours given in turn to the items of a loaded edge list.
+     */
+    private static final int[] LOAD_PALETTE = {
+            0xFF4E79A7, 0xFFF28E2B, 0xFFE15759, 0xFF76B7B2, 0xFF59A14F,
+            0xFFEDC948, 0xFFB07AA1, 0xFFFF9DA7, 0xFF9C755F, 0xFFBAB0AC};
+
+    /**
+     * The default text size of the labels, in scaled pixels.
+     */
+    private static final float LABEL_TEXT_SIZE_SP = 14.0f;
+
+    /**
+     * The largest data set, in bytes of its binary form, that is saved in the instance state
+     * itself. Larger data sets are saved to a cache file, since the instance state of every
+     * view in a window shares one Binder transaction of about 1 MB.
+     */
+    private static final int MAX_PARCELLED_GRAPH_BYTES = (64 * 1024);
+
+    /**
+     * How long a cache file of a saved data set is kept after it was last written. A file is
+     * overwritten each time its view saves its state again, so only the files of states that
+     * are no longer saved grow this old.
+     */
+    private static final long MAX_SPILL_FILE_AGE_MILLIS = TimeUnit.DAYS.toMillis(7);
+    private static final float LABEL_DEFERRED = -1.0f; // Label width of a label not created yet
+
     /**
      * The initial fling velocity is divided by this amount.
+     *
+     * @deprecated Drags and flings now turn the diagram at the angular speed of the touch.
+     * This constant is no longer used.
      */
+    @Deprecated
     public static final int FLING_VELOCITY_DOWNSCALE = 4;
 
-    private class Item {
-        private String mLabel;
-        private TextView mTextView;
-        private int mColour;
-        private float mStartAngle;
-        private float mCenterAngle;
-        private float mEndAngle;
-        private int mNumConnections;
-        private int mNumUnassigned;
+    /**
+     * The direction that auto-centring turns the centre of an item to, in degrees clockwise
+     * from the positive x axis. Items are centred at the top of the diagram.
+     */
+    private static final float AUTO_CENTER_ANGLE = 270.0f;
+
+    /**
+     * The duration of the animation that centres an item, in milliseconds.
+     */
+    private static final long AUTO_CENTER_DURATION_MILLIS = 250;
+
+    /**
+     * The radius of the circle drawn for each item in node style, in pixels.
+     */
+    private static final float NODE_RADIUS = 20.0f;
+
+    /**
+     * The width of the stroke each chord is drawn with, in pixels.
+     */
+    private static final float LINK_STROKE_WIDTH = 5.0f;
+
+    /**
+     * The opacity of the ribbons, from 0 to 255, so that crossing ribbons stay visible.
+     */
+    private static final int RIBBON_ALPHA = 0xC0;
+
+    /**
+     * The first API level whose hardware canvases draw vertices (Build.VERSION_CODES.Q).
+     */
+    private static final int HARDWARE_VERTICES_API = 29;
+
+    /**
+     * The opacity of the rest of the diagram while an item is highlighted.
+     */
+    private static final float HIGHLIGHT_DIM_ALPHA = 0.2f;
+
+    /**
+     * Interface definition for a callback invoked when an item is tapped.
+     */
+    public interface OnItemClickListener {
+        /**
+         * Called when an item's arc, node or label is tapped.
+         *
+         * @param chordDiagram The diagram that was tapped.
+         * @param label The label of the item.
+         */
+        void onItemClick(ChordDiagram chordDiagram, String label);
+    }
+
+    /**
+     * Interface definition for a callback invoked when a link is tapped.
+     */
+    public interface OnLinkClickListener {
+        /**
+         * Called when the chord of a link is tapped.
+         *
+         * @param chordDiagram The diagram that was tapped.
+         * @param first The label of the first item of the link.
+         * @param second The label of the second item of the link.
+         */
+        void onLinkClick(ChordDiagram chordDiagram, String first, String second);
+    }
+
+    /**
+     * Interface definition for callbacks invoked on the UI thread as an edge list loads.
+     */
+    public interface OnLoadListener {
+        /**
+         * Called after each chunk of the edge list has been read.
+         *
+         * @param bytesRead The number of bytes read so far.
+         * @param rowsRead The number of rows read so far.
+         */
+        void onLoadProgress(long bytesRead, int rowsRead);
+
+        /**
+         * Called once the loaded data has replaced the data set of the diagram.
+         *
+         * @param numItems The number of items loaded.
+         * @param numLinks The number of links loaded.
+         */
+        void onLoadComplete(int numItems, int numLinks);
+
+        /**
+         * Called if the edge list could not be read or has a malformed row. The data set of
+         * the diagram is left as it was.
+         *
+         * @param e The cause of the failure.
+         */
+        void onLoadFailed(IOException e);
+    }
+
+    /**
+     * Interface definition for callbacks invoked on the UI thread with what drawing and laying
+     * out the diagram cost. The metrics objects are reused, so they are only valid during the
+     * call.
+     */
+    public interface OnMetricsListener {
+        /**
+         * Called each time the diagram itself is drawn. The diagram is cached on a layer, so it
+         * is only drawn again when it changes, not on every frame it is shown or rotated.
+         *
+         * @param chordDiagram The diagram that was drawn.
+         * @param metrics What the draw cost.
+         */
+        void onDrawMetrics(ChordDiagram chordDiagram, DrawMetrics metrics);
+
+        /**
+         * Called each time the diagram is laid out, after the data set or the size changes.
+         *
+         * @param chordDiagram The diagram that was laid out.
+         * @param metrics What the layout cost.
+         */
+        void onLayoutMetrics(ChordDiagram chordDiagram, LayoutMetrics metrics);
+    }
+
+    /**
+     * What one draw of the diagram cost.
+     */
+    public static final class DrawMetrics {
+        private long mDrawItemsNanos;
+        private long mDrawLinksNanos;
+        private int mNumDrawCalls;
+        private int mNumSegments;
+        private int mNumAllocations;
+
+        DrawMetrics() {}
+
+        /**
+         * Returns the time spent drawing the arcs or nodes of the items.
+         *
+         * @return The time, in nanoseconds.
+         */
+        public long getDrawItemsNanos() {
+            return mDrawItemsNanos;
+        }
+
+        /**
+         * Returns the time spent drawing the chords of the links.
+         *
+         * @return The time, in nanoseconds.
+         */
+        public long getDrawLinksNanos() {
+            return mDrawLinksNanos;
+        }
+
+        /**
+         * Returns the time spent drawing the items and the chords together.
+         *
+         * @return The time, in nanoseconds.
+         */
+        public long getTotalNanos() {
+            return (mDrawItemsNanos + mDrawLinksNanos);
+        }
+
+        /**
+         * Returns the number of calls made to the canvas.
+         *
+         * @return The number of draw calls.
+         */
+        public int getNumDrawCalls() {
+            return mNumDrawCalls;
+        }
+
+        /**
+         * Returns the number of line segments the chords were drawn with.
+         *
+         * @return The number of chord segments.
+         */
+        public int getNumSegments() {
+            return mNumSegments;
+        }
+
+        /**
+         * Returns the number of objects allocated on the UI thread while drawing. This is only
+         * counted while allocation counting is on, as started by
+         * {@link Debug#startAllocCounting()}, and is 0 otherwise.
+         *
+         * @return The number of allocations.
+         */
+        public int getNumAllocations() {
+            return mNumAllocations;
+        }
+    }
+
+    /**
+     * What one layout of the diagram cost. Layouts that only add or delete links update the
+     * link angles of the items involved instead of assigning every angle, and rebuild only the
+     * chords of those items.
+     */
+    public static final class LayoutMetrics {
+        private static final int ITEM_ANGLES = 0;
+        private static final int LINK_ANGLES = 1;
+        private static final int GEOMETRY = 2;
+        private static final int MEASURE_LABELS = 3;
+
+        private final long[] mPhaseNanos = new long[4];
+        private long mPhaseStart;
+        private int mStartAllocations;
+        private int mNumSegments;
+        private int mNumAllocations;
+        private boolean mIncremental;
+        private boolean mAsync;
+
+        LayoutMetrics() {}
+
+        /**
+         * Returns the time spent assigning the angles of the items.
+         *
+         * @return The time, in nanoseconds, or 0 if the layout was incremental.
+         */
+        public long getAssignItemAnglesNanos() {
+            return mPhaseNanos[ITEM_ANGLES];
+        }
+
+        /**
+         * Returns the time spent assigning or updating the angles at which the links meet
+         * their items.
+         *
+         * @return The time, in nanoseconds.
+         */
+        public long getAssignLinkAnglesNanos() {
+            return mPhaseNanos[LINK_ANGLES];
+        }
+
+        /**
+         * Returns the time spent building the paths of the items and chords, and placing the
+         * labels.
+         *
+         * @return The time, in nanoseconds.
+         */
+        public long getBuildGeometryNanos() {
+            return mPhaseNanos[GEOMETRY];
+        }
+
+        /**
+         * Returns the time spent measuring the labels to size the diagram, when the size of
+         * the view changed.
+         *
+         * @return The time, in nanoseconds, or 0 if the size did not change.
+         */
+        public long getMeasureLabelsNanos() {
+            return mPhaseNanos[MEASURE_LABELS];
+        }
+
+        /**
+         * Returns the time spent in every phase of the layout together, including measuring
+         * the labels.
+         *
+         * @return The time, in nanoseconds.
+         */
+        public long getTotalNanos() {
+            return (mPhaseNanos[ITEM_ANGLES] + mPhaseNanos[LINK_ANGLES] + mPhaseNanos[GEOMETRY]
+                    + mPhaseNanos[MEASURE_LABELS]);
+        }
+
+        /**
+         * Returns the number of line segments the chords are drawn with after the layout.
+         *
+         * @return The number of chord segments.
+         */
+        public int getNumSegments() {
+            return mNumSegments;
+        }
+
+        /**
+         * Returns the number of objects allocated by the thread that laid out the diagram.
+         * This is only counted while allocation counting is on, as started by
+         * {@link Debug#startAllocCounting()}, and is 0 otherwise.
+         *
+         * @return The number of allocations.
+         */
+        public int getNumAllocations() {
+            return mNumAllocations;
+        }
+
+        /**
+         * Returns true if only the links of the items whose links changed were laid out.
+         *
+         * @return True for an incremental layout.
+         */
+        public boolean isIncremental() {
+            return mIncremental;
+        }
+
+        /**
+         * Returns true if the angles and geometry were built on the worker thread.
+         *
+         * @return True for an asynchronous layout.
+         */
+        public boolean isAsync() {
+            return mAsync;
+        }
+
+        /**
+         * Clears the metrics and starts timing the first phase, on the thread doing the layout.
+         */
+        private void start(long measureLabelsNanos, boolean async) {
+            Arrays.fill(mPhaseNanos, 0);
+            mPhaseNanos[MEASURE_LABELS] = measureLabelsNanos;
+            mIncremental = false;
+            mAsync = async;
+            mStartAllocations = Debug.getThreadAllocCount();
+            mPhaseStart = System.nanoTime();
+        }
+
+        /**
+         * Ends the phase in progress and starts timing the next.
+         */
+        private void endPhase(int phase) {
+            long now = System.nanoTime();
+            mPhaseNanos[phase] += (now - mPhaseStart);
+            mPhaseStart = now;
+        }
+
+        private void finish(int numSegments) {
+            mNumSegments = numSegments;
+            mNumAllocations = (Debug.getThreadAllocCount() - mStartAllocations);
+        }
+    }
+
+    /**
+     * A rolling summary of the cost of the most recent draws and layouts of a diagram.
+     */
+    public static final class MetricsSummary {
+        /**
+         * The number of most recent draws and layouts that percentiles are taken over.
+         */
+        public static final int WINDOW = 120;
+
+        private final RollingPercentiles mDrawNanos = new RollingPercentiles(WINDOW);
+        private final RollingPercentiles mLayoutNanos = new RollingPercentiles(WINDOW);
+
+        MetricsSummary() {}
+
+        /**
+         * Returns the number of draws recorded since the summary was created or last reset,
+         * including those older than the window.
+         *
+         * @return The number of draws.
+         */
+        public long getNumDraws() {
+            return mDrawNanos.getTotalSamples();
+        }
+
+        /**
+         * Returns a percentile of the total time of the most recent draws.
+         *
+         * @param percentile The percentile, between 0 and 100, such as 50 for the median.
+         * @return The time, in nanoseconds, or 0 if nothing has been drawn.
+         */
+        public long getDrawNanos(double percentile) {
+            return mDrawNanos.getPercentile(percentile);
+        }
+
+        /**
+         * Returns the number of layouts recorded since the summary was created or last reset,
+         * including those older than the window.
+         *
+         * @return The number of layouts.
+         */
+        public long getNumLayouts() {
+            return mLayoutNanos.getTotalSamples();
+        }
+
+        /**
+         * Returns a percentile of the total time of the most recent layouts.
+         *
+         * @param percentile The percentile, between 0 and 100, such as 50 for the median.
+         * @return The time, in nanoseconds, or 0 if nothing has been laid out.
+         */
+        public long getLayoutNanos(double percentile) {
+            return mLayoutNanos.getPercentile(percentile);
+        }
 
-        private Item(String label, int colour) {
-            this.mLabel = label;
-            this.mTextView = new TextView(getContext());
-            this.mTextView.setText(label);
-            this.mTextView.setTextColor(Color.BLACK);
-            this.mColour = colour;
+        /**
+         * Forgets every draw and layout recorded so far.
+         */
+        public void reset() {
+            mDrawNanos.clear();
+            mLayoutNanos.clear();
         }
     }
 
-    private class Link {
-        private Item mItem1;
-        private float mEndpointAngle1;
-        private Item mItem2;
-        private float mEndpointAngle2;
+    /**
+     * Creates the label of an item for the current label mode. In view mode the label is a
+     * new, measured TextView, which the caller is responsible for attaching. In canvas mode
+     * only the width of the label text is measured and cached.
+     *
+     * @param id The id of the item.
+     */
+    private void createLabel(int id) {
+        if (mLabelMode == LABEL_MODE_VIEW) {
+            TextView textView = new TextView(getContext());
+            textView.setText(mGraph.getLabel(id));
+            textView.setTextColor(Color.BLACK);
+            textView.measure(
+                    MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED),
+                    MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED));
+            mTextViews[id] = textView;
+            mLabelWidths[id] = 0.0f;
+        } else {
+            mTextViews[id] = null;
+            mLabelWidths[id] = mLabelPaint.measureText(mGraph.getLabel(id));
+        }
+    }
 
-        private Link(Item item1, Item item2) {
-            this.mItem1 = item1;
-            this.mItem2 = item2;
+    /**
+     * Creates the labels left to be created until they are shown, as {@link #setGraph} and
+     * {@link #setLabelMode(int)} leave them. A data set mapped from a file decodes each label
+     * from the file only here, so hidden labels are never decoded. New TextViews are attached
+     * in one batch.
+     */
+    private void createDeferredLabels() {
+        if (!mShowText) {
+            return;
         }
+        beginUpdate();
+        for (int id = 0; id < mGraph.getNumItems(); id++) {
+            if (mLabelWidths[id] == LABEL_DEFERRED) {
+                createLabel(id);
+                if (mTextViews[id] != null) {
+                    attachTextView(mTextViews[id]);
+                }
+            }
+        }
+        endUpdate();
     }
 
     public ChordDiagram(Context context) {
@@ -112,6 +643,15 @@ public class ChordDiagram extends ViewGroup {
         try {
             mShowText = typedArray.getBoolean(R.styleable.ChordDiagram_showText, false);
             mItemStyle = typedArray.getInt(R.styleable.ChordDiagram_itemStyle, 0);
+            mConnectionStyle = typedArray.getInt(
+                    R.styleable.ChordDiagram_connectionStyle, CONNECTION_STYLE_LINE);
+            mLabelMode = typedArray.getInt(R.styleable.ChordDiagram_labelMode, LABEL_MODE_VIEW);
+            mUprightLabels = typedArray.getBoolean(R.styleable.ChordDiagram_uprightLabels, false);
+            mTessellationTolerance = typedArray.getFloat(
+                    R.styleable.ChordDiagram_tessellationTolerance,
+                    BezierTessellator.DEFAULT_TOLERANCE);
+            mAsyncLayout = typedArray.getBoolean(R.styleable.ChordDiagram_asyncLayout, false);
+            mAutoCenter = typedArray.getBoolean(R.styleable.ChordDiagram_autoCenter, false);
         } finally {
             typedArray.recycle();
         }
@@ -134,9 +674,34 @@ public class ChordDiagram extends ViewGroup {
      */
     public void setShowText(boolean showText) {
         mShowText = showText;
+        mLabelLayer.setVisibility(showText ? View.VISIBLE : View.GONE);
+        if ((getWidth() > 0) && (getHeight() > 0)) {
+            layoutDiagram(getWidth(), getHeight());
+        }
         invalidate();
     }
 
+    /**
+     * Returns true if the text labels stay upright while the diagram rotates.
+     *
+     * @return True if the labels stay upright, false if they rotate with the diagram.
+     */
+    public boolean getUprightLabels() {
+        return mUprightLabels;
+    }
+
+    /**
+     * Controls whether the text labels stay upright while the diagram rotates. By default the
+     * labels rotate with the diagram as a single unit, which costs the same no matter how many
+     * items there are. Keeping them upright costs one counter-rotation per label per frame.
+     *
+     * @param uprightLabels true if the labels should stay upright, false otherwise.
+     */
+    public void setUprightLabels(boolean uprightLabels) {
+        mUprightLabels = uprightLabels;
+        mLabelLayer.setLabelRotation(uprightLabels ? mDiagramRotation : 0);
+    }
+
     /**
      * Returns an integer constant representing the style of the items in the diagram.
      *
@@ -154,51 +719,231 @@ public class ChordDiagram extends ViewGroup {
     public void setItemStyle(int style) {
         if ((style == 0) || (style == 1)) {
             mItemStyle = style;
+            requestDataChanged();
         }
     }
 
     /**
-     * Returns the current rotation of the chord diagram graphic.
+     * Returns an integer constant representing how the links are drawn.
      *
-     * @return The current chord diagram rotation, in degrees.
+     * @return {@link #CONNECTION_STYLE_LINE} or {@link #CONNECTION_STYLE_RIBBON}.
      */
-    public int getDiagramRotation() {
-        return mDiagramRotation;
+    public int getConnectionStyle() {
+        return mConnectionStyle;
     }
 
     /**
-     * Set the current rotation of the diagram graphic.
+     * Sets how the links are drawn. Ribbons divide each item's arc among its links in
+     * proportion to their weights, and are drawn together as one triangle mesh. They only
+     * apply to arc style; nodes are always joined by lines. Taps follow the centre line of
+     * each ribbon, and a highlighted item's ribbons are drawn opaque over the rest.
      *
-     * @param rotation The current pie rotation, in degrees.
+     * @param style {@link #CONNECTION_STYLE_LINE} or {@link #CONNECTION_STYLE_RIBBON}.
      */
-    public void setDiagramRotation(int rotation) {
-        rotation = (((rotation % 360) + 360) % 360);
-        mDiagramRotation = rotation;
-        mChordDiagramView.setRotation(rotation);
+    public void setConnectionStyle(int style) {
+        if (((style != CONNECTION_STYLE_LINE) && (style != CONNECTION_STYLE_RIBBON))
+                || (style == mConnectionStyle)) {
+            return;
+        }
+        mConnectionStyle = style;
+        if (mAsyncLayout) {
+            startAsyncLayout();
+        } else {
+            rebuildGeometry();
+            mChordDiagramView.invalidate();
+        }
     }
 
     /**
-     * Set the current rotation of the TextViews.
-     *
-     * @param theta The change in rotation of the chord diagram.
+     * Returns true if the links are drawn as ribbons, which needs arc style.
      */
-    public void setTextRotation(int theta) {
-        for (Map.Entry<String, Item> entry : mItems.entrySet()) {
-            Item it = entry.getValue();
-            double angle = Math.toRadians(it.mCenterAngle - theta);
-            it.mCenterAngle -= theta;
-            float dx = (float) ((Math.cos(angle) * mTextRadius) + mViewBounds.centerX());
-            float dy = (float) ((Math.sin(angle) * mTextRadius) + mViewBounds.centerY());
-            it.mTextView.setX(dx - (it.mTextView.getMeasuredWidth() / 2));
-            it.mTextView.setY(dy - (it.mTextView.getMeasuredHeight() / 2));
-        }
+    private boolean drawsRibbons() {
+        return ((mConnectionStyle == CONNECTION_STYLE_RIBBON) && (mItemStyle == ITEM_STYLE_ARC));
     }
 
-    private void init() {
-        mItemPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    /**
+     * Returns an integer constant representing how the text labels are rendered.
+     *
+     * @return {@link #LABEL_MODE_VIEW} if each label is a TextView, or
+     * {@link #LABEL_MODE_CANVAS} if labels are drawn directly onto the canvas.
+     */
+    public int getLabelMode() {
+        return mLabelMode;
+    }
 
-        mLinkPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        mLinkPaint.setStyle(Paint.Style.STROKE);
+    /**
+     * Sets how the text labels are rendered. Canvas mode draws every label directly with a
+     * cached text measurement, so it scales to many more items than view mode, which creates
+     * one TextView child per item.
+     *
+     * @param mode {@link #LABEL_MODE_VIEW} or {@link #LABEL_MODE_CANVAS}.
+     */
+    public void setLabelMode(int mode) {
+        if (((mode != LABEL_MODE_VIEW) && (mode != LABEL_MODE_CANVAS)) || (mode == mLabelMode)) {
+            return;
+        }
+        for (int id = 0; id < mGraph.getNumItems(); id++) {
+            if (mTextViews[id] != null) {
+                detachTextView(mTextViews[id]);
+            }
+        }
+        mLabelMode = mode;
+        for (int id = 0; id < mGraph.getNumItems(); id++) {
+            mTextViews[id] = null;
+            mLabelWidths[id] = LABEL_DEFERRED;
+        }
+        if ((getWidth() > 0) && (getHeight() > 0)) {
+            layoutDiagram(getWidth(), getHeight());
+        }
+        invalidate();
+    }
+
+    /**
+     * Returns the maximum distance, in pixels, between a drawn chord and its true curve.
+     *
+     * @return The tessellation tolerance, in pixels.
+     */
+    public float getTessellationTolerance() {
+        return mTessellationTolerance;
+    }
+
+    /**
+     * Sets the drawing quality of the chords. Each chord is drawn as a polyline with just
+     * enough segments to stay within this many pixels of its true curve, so the number of
+     * segments scales with the on-screen length and bend of each chord. Larger values draw
+     * dense diagrams on small screens with far fewer segments.
+     *
+     * @param tolerance The tessellation tolerance, in pixels. Must be greater than zero.
+     */
+    public void setTessellationTolerance(float tolerance) {
+        if (tolerance > 0) {
+            mTessellationTolerance = tolerance;
+            if (mAsyncLayout) {
+                startAsyncLayout();
+            } else {
+                rebuildGeometry();
+                mChordDiagramView.invalidate();
+                mHighlightLayer.invalidate();
+            }
+        }
+    }
+
+    /**
+     * Returns true if the diagram is laid out on a background thread.
+     *
+     * @return True if layout is asynchronous, false if it runs on the UI thread.
+     */
+    public boolean getAsyncLayout() {
+        return mAsyncLayout;
+    }
+
+    /**
+     * Controls whether the diagram is laid out on a background thread. In async mode, angle
+     * assignment and geometry building run against a snapshot of the data, and the finished
+     * layout is swapped in on the UI thread in one step. A layout that is overtaken by newer
+     * changes is cancelled and never shown. Until a layout is ready, the previous one is drawn.
+     *
+     * @param asyncLayout true to lay out the diagram on a background thread, false otherwise.
+     */
+    public void setAsyncLayout(boolean asyncLayout) {
+        if (asyncLayout != mAsyncLayout) {
+            mAsyncLayout = asyncLayout;
+            requestDataChanged();
+        }
+    }
+
+    /**
+     * Returns true if the diagram turns to centre the nearest item at the top once it stops
+     * being dragged or flung.
+     *
+     * @return True if items are auto-centred.
+     */
+    public boolean getAutoCenter() {
+        return mAutoCenter;
+    }
+
+    /**
+     * Sets whether the diagram turns to centre the nearest item at the top once it stops being
+     * dragged or flung.
+     *
+     * @param autoCenter True to auto-centre items.
+     */
+    public void setAutoCenter(boolean autoCenter) {
+        mAutoCenter = autoCenter;
+    }
+
+    /**
+     * Returns the current rotation of the chord diagram graphic.
+     *
+     * @return The current chord diagram rotation, rounded to whole degrees.
+     */
+    public int getDiagramRotation() {
+        return (Math.round(mDiagramRotation) % 360);
+    }
+
+    /**
+     * Set the current rotation of the diagram graphic.
+     *
+     * @param rotation The current pie rotation, in degrees.
+     */
+    public void setDiagramRotation(int rotation) {
+        setDiagramRotation((float) rotation);
+    }
+
+    /**
+     * Set the current rotation of the diagram graphic, to a fraction of a degree.
+     *
+     * @param rotation The rotation, in degrees.
+     */
+    public void setDiagramRotation(float rotation) {
+        rotation %= 360;
+        if (rotation < 0) {
+            rotation += 360;
+        }
+        mDiagramRotation = rotation;
+        mChordDiagramView.setRotation(rotation);
+        mHighlightLayer.setRotation(rotation);
+        mLabelLayer.setRotation(rotation);
+        if (mUprightLabels) {
+            mLabelLayer.setLabelRotation(rotation);
+        }
+    }
+
+    /**
+     * Set the current rotation of the TextViews.
+     *
+     * @param theta The change in rotation of the chord diagram.
+     * @deprecated Labels now rotate together with the diagram in
+     * {@link #setDiagramRotation(float)}. This method does nothing.
+     */
+    @Deprecated
+    public void setTextRotation(int theta) {}
+
+    private void init() {
+        mItemPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+        mLabelPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mLabelPaint.setColor(Color.BLACK);
+        mLabelPaint.setTextSize(TypedValue.applyDimension(
+                TypedValue.COMPLEX_UNIT_SP,
+                LABEL_TEXT_SIZE_SP,
+                getResources().getDisplayMetrics()));
+        Paint.FontMetrics fontMetrics = mLabelPaint.getFontMetrics();
+        mLabelHeight = (fontMetrics.descent - fontMetrics.ascent);
+        mLabelBaselineOffset = -((fontMetrics.ascent + fontMetrics.descent) / 2);
+
+        mLinkPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mLinkPaint.setStyle(Paint.Style.STROKE);
+        mLinkPaint.setStrokeWidth(LINK_STROKE_WIDTH);
+
+        // Ribbons take their colours from the vertices of the mesh.
+        mRibbonPaint = new Paint();
+
+        // Arcs are stroked along the middle of the ring, so nothing inside the ring is painted
+        // and a transparent background shows through the centre of the diagram.
+        mArcPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mArcPaint.setStyle(Paint.Style.STROKE);
+        mArcPaint.setStrokeCap(Paint.Cap.BUTT);
 
         // Add a child view to draw the diagram. Putting this in a child view
         // makes it possible to draw it on a separate hardware layer that rotates
@@ -207,21 +952,22 @@ public class ChordDiagram extends ViewGroup {
         addView(mChordDiagramView);
         mChordDiagramView.setRotation(mDiagramRotation);
 
-        mInnerCirclePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        mInnerCirclePaint.setStyle(Paint.Style.FILL);
-        int color = Color.WHITE;
-        Drawable background = this.getBackground();
-        if (background instanceof ColorDrawable) {
-            color = ((ColorDrawable) background).getColor();
-            if (color == Color.TRANSPARENT) {
-                color = Color.WHITE;
-            }
-        }
-        mInnerCirclePaint.setColor(color);
+        // The chords of a highlighted item are drawn on a light overlay above the diagram, so
+        // the diagram itself can stay cached on its layer while the selection changes.
+        mHighlightLayer = new HighlightLayer(getContext());
+        addView(mHighlightLayer);
+        mHighlightLayer.setRotation(mDiagramRotation);
+
+        // The labels sit on their own layer on top of the diagram, which rotates with it.
+        mLabelLayer = new LabelLayer(getContext());
+        addView(mLabelLayer);
+        mLabelLayer.setRotation(mDiagramRotation);
+        mLabelLayer.setVisibility(mShowText ? View.VISIBLE : View.GONE);
 
         // Set up an animator to animate the PieRotation property. This is used to
         // correct the pie's orientation after the user lets go of it.
-        mAutoCenterAnimator = ObjectAnimator.ofInt(ChordDiagram.this, "DiagramRotation", 0);
+        mAutoCenterAnimator = ObjectAnimator.ofFloat(ChordDiagram.this, "DiagramRotation", 0);
+        mAutoCenterAnimator.setDuration(AUTO_CENTER_DURATION_MILLIS);
 
         // Add a listener to hook the onAnimationEnd event so that we can do
         // some cleanup when the pie stops moving.
@@ -230,9 +976,7 @@ public class ChordDiagram extends ViewGroup {
 
             public void onAnimationEnd(Animator animator) {
                 mChordDiagramView.setLayerType(View.LAYER_TYPE_SOFTWARE, null);
-                for (Map.Entry<String, Item> entry : mItems.entrySet()) {
-                    entry.getValue().mTextView.setLayerType(View.LAYER_TYPE_SOFTWARE, null);
-                }
+                setLabelLayerType(View.LAYER_TYPE_SOFTWARE);
             }
 
             public void onAnimationCancel(Animator animator) {}
@@ -240,18 +984,9 @@ public class ChordDiagram extends ViewGroup {
             public void onAnimationRepeat(Animator animator) {}
         });
 
-        // Create a Scroller to handle the fling gesture.
-        mScroller = new Scroller(getContext(), null, true);
-        // The scroller doesn't have any built-in animation functions--it just supplies
-        // values when we ask it to. So we have to have a way to call it every frame
-        // until the fling ends. This code (ab)uses a ValueAnimator object to generate
-        // a callback on every animation frame. We don't use the animated value at all.
-        mScrollAnimator = ValueAnimator.ofFloat(0, 1);
-        mScrollAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
-            public void onAnimationUpdate(ValueAnimator valueAnimator) {
-                tickScrollAnimation();
-            }
-        });
+        // Drags and flings are turned into rotation by an engine that is only given frames
+        // from the Choreographer while a fling is running.
+        mRotationEngine = new RotationEngine(new RotationHost());
 
         // Create a gesture detector to handle onTouch messages
         mDetector = new GestureDetector(ChordDiagram.this.getContext(), new GestureListener());
@@ -284,7 +1019,17 @@ public class ChordDiagram extends ViewGroup {
     @Override
     protected void onSizeChanged(int w, int h, int oldw, int oldh) {
         super.onSizeChanged(w, h, oldw, oldh);
+        layoutDiagram(w, h);
+        updateRibbonTargets();
+    }
 
+    /**
+     * Lays out the diagram, its child views and its labels to fit the given size.
+     *
+     * @param w The width of this view.
+     * @param h The height of this view.
+     */
+    private void layoutDiagram(int w, int h) {
         float xpad = (float) (getPaddingLeft() + getPaddingRight());
         float ypad = (float) (getPaddingTop() + getPaddingBottom());
 
@@ -305,127 +1050,1024 @@ public class ChordDiagram extends ViewGroup {
                 (int) mViewBounds.right,
                 (int) mViewBounds.bottom);
         mChordDiagramView.setPivotX(mViewBounds.centerX());
-        mChordDiagramView.setPivotX(mViewBounds.centerY());
+        mChordDiagramView.setPivotY(mViewBounds.centerY());
+
+        // The highlight overlay is drawn in the same frame as the diagram.
+        mHighlightLayer.layout(
+                (int) mViewBounds.left,
+                (int) mViewBounds.top,
+                (int) mViewBounds.right,
+                (int) mViewBounds.bottom);
+        mHighlightLayer.setPivotX(mViewBounds.centerX());
+        mHighlightLayer.setPivotY(mViewBounds.centerY());
 
+        // The label layer covers the same area and rotates about the same point.
+        mLabelLayer.layout(
+                (int) mViewBounds.left,
+                (int) mViewBounds.top,
+                (int) mViewBounds.right,
+                (int) mViewBounds.bottom);
+        mLabelLayer.setPivotX(mViewBounds.centerX());
+        mLabelLayer.setPivotY(mViewBounds.centerY());
+
+        long measureStart = (mMetricsListener != null) ? System.nanoTime() : 0;
         float maxTextWidth = 0.0f;
         float maxTextHeight = 0.0f;
-        if (mShowText) {
-            for (Map.Entry<String, Item> entry : mItems.entrySet()) {
-                Item it = entry.getValue();
-                it.mTextView.measure(
-                        ViewGroup.LayoutParams.WRAP_CONTENT,
-                        ViewGroup.LayoutParams.WRAP_CONTENT);
-                if (it.mTextView.getMeasuredWidth() > maxTextWidth) {
-                    maxTextWidth = it.mTextView.getMeasuredWidth();
-                }
-                if (it.mTextView.getMeasuredHeight() > maxTextHeight) {
-                    maxTextHeight = it.mTextView.getMeasuredHeight();
-                }
+        createDeferredLabels();
+        if (mShowText && (mLabelMode == LABEL_MODE_CANVAS)) {
+            for (int id = 0; id < mGraph.getNumItems(); id++) {
+                maxTextWidth = Math.max(maxTextWidth, mLabelWidths[id]);
+            }
+            if (mGraph.getNumItems() > 0) {
+                maxTextHeight = mLabelHeight;
             }
             mTextRadius = (diameter / 2) -  (Math.max(maxTextWidth, maxTextHeight) / 2);
-            for (Map.Entry<String, Item> entry : mItems.entrySet()) {
-                Item it = entry.getValue();
-                it.mTextView.layout(
-                        getXCoord(it.mCenterAngle, mTextRadius) - (it.mTextView.getMeasuredWidth() / 2),
-                        getYCoord(it.mCenterAngle, mTextRadius) - (it.mTextView.getMeasuredHeight() / 2),
-                        getXCoord(it.mCenterAngle, mTextRadius) + (it.mTextView.getMeasuredWidth() / 2),
-                        getYCoord(it.mCenterAngle, mTextRadius) + (it.mTextView.getMeasuredHeight() / 2));
+        } else if (mShowText) {
+            for (int id = 0; id < mGraph.getNumItems(); id++) {
+                maxTextWidth = Math.max(maxTextWidth, mTextViews[id].getMeasuredWidth());
+                maxTextHeight = Math.max(maxTextHeight, mTextViews[id].getMeasuredHeight());
             }
+            mTextRadius = (diameter / 2) -  (Math.max(maxTextWidth, maxTextHeight) / 2);
+        }
+        if (mMetricsListener != null) {
+            mMeasureLabelsNanos = (System.nanoTime() - measureStart);
         }
 
         mDiagramRadius = (diameter / 2) - Math.max(maxTextWidth, maxTextHeight) - mRingThickness;
-        mDiagramBounds = new RectF(0.0f, 0.0f, mDiagramRadius * 2, mDiagramRadius * 2);
-        mDiagramBounds.offsetTo(((diameter - (mDiagramRadius * 2)) / 2), ((diameter - (mDiagramRadius * 2)) / 2));
-
+        float ringRadius = (mDiagramRadius - (mRingThickness / 2.0f));
+        mRingBounds.set(
+                mViewBounds.centerX() - ringRadius,
+                mViewBounds.centerY() - ringRadius,
+                mViewBounds.centerX() + ringRadius,
+                mViewBounds.centerY() + ringRadius);
+        mArcPaint.setStrokeWidth(mRingThickness);
+
+        mGeometryStale = true;
         onDataChanged();
+        if (mRestoredRotation != 0) {
+            setDiagramRotation(mRestoredRotation);
+            mRestoredRotation = 0;
+        }
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+    }
+
+    /**
+     * Starts a batch of changes to the data set. Until the matching call to
+     * {@link #endUpdate()}, calls to {@link #addItem(String, int)}, {@link #deleteItem(String)},
+     * {@link #addLink(String, String)} and {@link #deleteLink(String, String)} only record the
+     * change. Angle assignment, label attachment and invalidation are deferred to a single pass
+     * when the outermost batch ends, so loading n items and m links costs O(n + m) instead of
+     * one full relayout per call. Batches may be nested.
+     */
+    public void beginUpdate() {
+        mUpdateDepth++;
+    }
+
+    /**
+     * Ends a batch of changes started by {@link #beginUpdate()}. When the outermost batch ends,
+     * any pending labels are attached and the diagram is laid out and redrawn once.
+     *
+     * @throws IllegalStateException If there is no batch in progress.
+     */
+    public void endUpdate() {
+        if (mUpdateDepth == 0) {
+            throw new IllegalStateException("endUpdate() called without a matching beginUpdate()");
+        }
+        mUpdateDepth--;
+        if (mUpdateDepth == 0) {
+            if (!mDetachedTextViews.isEmpty()) {
+                mLabelLayer.detachLabels(mDetachedTextViews);
+                mDetachedTextViews.clear();
+            }
+            if (!mPendingTextViews.isEmpty()) {
+                mLabelLayer.attachLabels(mPendingTextViews);
+                mPendingTextViews.clear();
+            }
+            if (mDataDirty) {
+                onDataChanged();
+            }
+        }
+    }
+
+    /**
+     * Returns true if a batch of changes started by {@link #beginUpdate()} is in progress.
+     *
+     * @return True if changes are currently being batched, false otherwise.
+     */
+    public boolean isUpdating() {
+        return mUpdateDepth > 0;
+    }
+
+    /**
+     * Lays out the diagram again, or defers doing so if a batch of changes is in progress.
+     */
+    private void requestDataChanged() {
+        mLayoutGeneration++; // Any layout in progress no longer matches the data.
+        mRestoredRotation = 0; // Nor does a rotation saved with an earlier data set.
+        if (mUpdateDepth > 0) {
+            mDataDirty = true;
+        } else {
+            onDataChanged();
+        }
+    }
+
+    private void onDataChanged() {
+        mDataDirty = false;
+        stopScrolling();
+        setDiagramRotation(0);
+        if (mAsyncLayout) {
+            startAsyncLayout();
+        } else {
+            cancelAsyncLayout();
+            LayoutMetrics metrics = (mMetricsListener != null) ? mLayoutMetrics : null;
+            if (metrics != null) {
+                metrics.start(mMeasureLabelsNanos, false);
+                mMeasureLabelsNanos = 0;
+            }
+            if (mGraph.canUpdateLinkAngles(mItemStyle == ITEM_STYLE_ARC)) {
+                // Only links changed, so only the links of the items they touch need moving.
+                mGraph.updateLinkAngles();
+                endPhase(metrics, LayoutMetrics.LINK_ANGLES);
+                if (mGeometryStale) {
+                    rebuildGeometry();
+                    layoutLabels();
+                } else {
+                    mGeometry.updateLinks(mGraph, mViewBounds, mDiagramRadius, mTessellationTolerance,
+                            drawsRibbons());
+                    if (metrics != null) {
+                        metrics.mIncremental = true;
+                    }
+                }
+                endPhase(metrics, LayoutMetrics.GEOMETRY);
+            } else {
+                assignItemAngles();
+                endPhase(metrics, LayoutMetrics.ITEM_ANGLES);
+                assignLinkAngles();
+                endPhase(metrics, LayoutMetrics.LINK_ANGLES);
+                rebuildGeometry();
+                layoutLabels();
+                endPhase(metrics, LayoutMetrics.GEOMETRY);
+            }
+            mGraph.clearChanges();
+            if (metrics != null) {
+                metrics.finish(mGeometry.mNumChordSegments);
+                reportLayoutMetrics(metrics);
+            }
+        }
+        mChordDiagramView.invalidate();
+        mHighlightLayer.invalidate();
+    }
+
+    /**
+     * Ends a phase of a layout whose metrics are being collected.
+     *
+     * @param metrics The metrics of the layout, or null if metrics are not being collected.
+     * @param phase The phase that ended.
+     */
+    private static void endPhase(LayoutMetrics metrics, int phase) {
+        if (metrics != null) {
+            metrics.endPhase(phase);
+        }
+    }
+
+    private void reportLayoutMetrics(LayoutMetrics metrics) {
+        if (mMetricsListener != null) {
+            mMetricsSummary.mLayoutNanos.add(metrics.getTotalNanos());
+            mMetricsListener.onLayoutMetrics(this, metrics);
+        }
+    }
+
+    private void assignItemAngles() {
+        mGraph.assignItemAngles();
+    }
+
+    private void assignLinkAngles() {
+        mGraph.assignLinkAngles(mItemStyle == ITEM_STYLE_ARC);
+    }
+
+    /**
+     * Rebuilds the cached item and link geometry from the assigned angles. The geometry is
+     * drawn in the unrotated frame of the diagram (rotation is applied to the whole
+     * ChordDiagramView), so it only needs rebuilding when the data or the size changes.
+     */
+    private void rebuildGeometry() {
+        if (mDiagramRadius <= 0) {
+            return; // Not laid out yet. onSizeChanged() will rebuild the geometry.
+        }
+        mGeometry.build(mGraph, mViewBounds, mDiagramRadius, mTessellationTolerance,
+                drawsRibbons());
+        mGeometryStale = false;
+        updateRibbonTargets();
+    }
+
+    /**
+     * Prepares the ribbons of the current geometry for the window. Hardware canvases cannot
+     * draw vertices before API 29, so there the diagram draws its ribbons through a bitmap and
+     * the highlight overlay is drawn in software. Called whenever the geometry, the size or
+     * the window changes, so that drawing never allocates.
+     */
+    private void updateRibbonTargets() {
+        boolean software = ((mGeometry.mRibbons != null) && isHardwareAccelerated()
+                && (Build.VERSION.SDK_INT < HARDWARE_VERTICES_API));
+        mChordDiagramView.updateRibbonBitmap(software);
+        mHighlightLayer.setLayerType(
+                software ? View.LAYER_TYPE_SOFTWARE : View.LAYER_TYPE_NONE, null);
+    }
+
+    /**
+     * Returns true if a canvas can draw the ribbon mesh directly.
+     */
+    private static boolean canDrawVertices(Canvas canvas) {
+        return (!canvas.isHardwareAccelerated()
+                || (Build.VERSION.SDK_INT >= HARDWARE_VERTICES_API));
+    }
+
+    /**
+     * Lays out a snapshot of the data on the layout thread. When it finishes, the laid out
+     * snapshot and its geometry replace the current model and geometry on the UI thread,
+     * unless the data changed again in the meantime.
+     */
+    private void startAsyncLayout() {
+        cancelAsyncLayout();
+        mGeometryStale = true; // The geometry will be built from a snapshot instead
+        if (mDiagramRadius <= 0) {
+            return; // Not laid out yet. onSizeChanged() will start the layout.
+        }
+        final int generation = mLayoutGeneration;
+        final GraphStore snapshot = mGraph.copy();
+        final boolean spread = (mItemStyle == ITEM_STYLE_ARC);
+        final RectF viewBounds = new RectF(mViewBounds);
+        final float diagramRadius = mDiagramRadius;
+        final float tolerance = mTessellationTolerance;
+        final boolean ribbons = drawsRibbons();
+        final LayoutMetrics metrics = (mMetricsListener != null) ? new LayoutMetrics() : null;
+        final long measureLabelsNanos = mMeasureLabelsNanos;
+        mMeasureLabelsNanos = 0;
+
+        mLayoutFuture = getWorkerExecutor().submit(new Runnable() {
+            @Override
+            public void run() {
+                if (metrics != null) {
+                    metrics.start(measureLabelsNanos, true);
+                }
+                if (!snapshot.canUpdateLinkAngles(spread)) { // Not laid out as it was opened
+                    snapshot.assignItemAngles();
+                    endPhase(metrics, LayoutMetrics.ITEM_ANGLES);
+                    snapshot.assignLinkAngles(spread);
+                    endPhase(metrics, LayoutMetrics.LINK_ANGLES);
+                }
+                final Geometry geometry = new Geometry();
+                if (!geometry.build(snapshot, viewBounds, diagramRadius, tolerance, ribbons)) {
+                    return; // Cancelled
+                }
+                if (metrics != null) {
+                    metrics.endPhase(LayoutMetrics.GEOMETRY);
+                    metrics.finish(geometry.mNumChordSegments);
+                }
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        publishLayout(generation, snapshot, geometry, metrics);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Swaps in a finished asynchronous layout if the data has not changed since it started.
+     */
+    private void publishLayout(int generation, GraphStore graph, Geometry geometry,
+                               LayoutMetrics metrics) {
+        if ((generation != mLayoutGeneration) || !mAsyncLayout) {
+            return; // Stale
+        }
+        mLayoutFuture = null;
+        mGraph = graph;
+        mGeometry = geometry;
+        updateRibbonTargets();
+        layoutLabels();
+        mChordDiagramView.invalidate();
+        mHighlightLayer.invalidate();
+        if (metrics != null) {
+            reportLayoutMetrics(metrics);
+        }
+    }
+
+    /**
+     * Cancels any asynchronous layout in progress, including one that has finished but not
+     * been swapped in yet.
+     */
+    private void cancelAsyncLayout() {
+        mLayoutGeneration++;
+        if (mLayoutFuture != null) {
+            mLayoutFuture.cancel(true);
+            mLayoutFuture = null;
+        }
+    }
+
+    /**
+     * Returns the thread that layouts and loads run on, starting it if needed.
+     */
+    private ExecutorService getWorkerExecutor() {
+        if (mWorkerExecutor == null) {
+            mWorkerExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "ChordDiagram worker");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return mWorkerExecutor;
+    }
+
+    /**
+     * Loads an edge list file on a background thread, and replaces the data set with it when
+     * it has loaded. See {@link #loadEdgeList(InputStream, char, boolean, OnLoadListener)}.
+     *
+     * @param file The edge list file.
+     * @param delimiter The character between fields, such as ',' for CSV or '\t' for TSV.
+     * @param hasHeader True if the first row holds column names rather than a link.
+     * @param listener Notified on the UI thread of progress and completion, or null.
+     */
+    public void loadEdgeList(final File file, char delimiter, boolean hasHeader,
+                             OnLoadListener listener) {
+        startLoad(null, file, delimiter, hasHeader, listener);
+    }
+
+    /**
+     * Loads an edge list on a background thread, and replaces the data set with it when it has
+     * loaded. Each row is a link given by the labels of its two items and an optional weight,
+     * separated by the delimiter. Fields may be quoted with double quotes. Items are created the
+     * first time their label appears and are coloured from a built-in palette. Rows for a pair
+     * of items that is already linked add to the weight of the link, and rows linking an item to
+     * itself are skipped.
+     *
+     * The stream is read in fixed size chunks, so memory use beyond the loaded data does not
+     * depend on the size of the input. Starting another load cancels this one. Changes made to
+     * the data set while loading are lost when the loaded data replaces it.
+     *
+     * @param in The edge list, as UTF-8 text. It is closed when loading ends.
+     * @param delimiter The character between fields, such as ',' for CSV or '\t' for TSV.
+     * @param hasHeader True if the first row holds column names rather than a link.
+     * @param listener Notified on the UI thread of progress and completion, or null.
+     */
+    public void loadEdgeList(InputStream in, char delimiter, boolean hasHeader,
+                             OnLoadListener listener) {
+        startLoad(in, null, delimiter, hasHeader, listener);
+    }
+
+    /**
+     * Cancels any edge list load in progress. Its listener is not notified again.
+     */
+    public void cancelLoad() {
+        mLoadGeneration++;
+        if (mLoadFuture != null) {
+            mLoadFuture.cancel(true);
+            mLoadFuture = null;
+        }
+    }
+
+    private void startLoad(final InputStream stream, final File file, char delimiter,
+                           boolean hasHeader, final OnLoadListener listener) {
+        cancelLoad();
+        final int generation = mLoadGeneration;
+        final EdgeListParser parser = new EdgeListParser(delimiter, hasHeader, LOAD_PALETTE);
+        mLoadFuture = getWorkerExecutor().submit(new Runnable() {
+            @Override
+            public void run() {
+                GraphStore graph;
+                try {
+                    InputStream in = (stream != null) ? stream : new FileInputStream(file);
+                    try {
+                        graph = parser.parse(in, new EdgeListParser.ProgressListener() {
+                            @Override
+                            public void onProgress(final long bytesRead, final int rowsRead) {
+                                if (listener == null) {
+                                    return;
+                                }
+                                mMainHandler.post(new Runnable() {
+                                    @Override
+                                    public void run() {
+                                        if (generation == mLoadGeneration) {
+                                            listener.onLoadProgress(bytesRead, rowsRead);
+                                        }
+                                    }
+                                });
+                            }
+                        });
+                    } finally {
+                        in.close();
+                    }
+                } catch (final IOException e) {
+                    mMainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            finishLoad(generation, null, e, listener);
+                        }
+                    });
+                    return;
+                }
+                final GraphStore loaded = graph;
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        finishLoad(generation, loaded, null, listener);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Swaps in a loaded data set, or reports a failed load, unless the load was cancelled.
+     */
+    private void finishLoad(int generation, GraphStore graph, IOException error,
+                            OnLoadListener listener) {
+        if (generation != mLoadGeneration) {
+            return; // Cancelled
+        }
+        mLoadFuture = null;
+        if (graph != null) {
+            setGraph(graph);
+        }
+        if (listener == null) {
+            return;
+        }
+        if (graph != null) {
+            listener.onLoadComplete(graph.getNumItems(), graph.getNumLinks());
+        } else {
+            listener.onLoadFailed(error);
+        }
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        updateRibbonTargets(); // Whether the window is hardware accelerated is known now
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        mChordDiagramView.releaseRibbonBitmap();
+        stopScrolling();
+        cancelAsyncLayout();
+        cancelLoad();
+        if (mWorkerExecutor != null) {
+            mWorkerExecutor.shutdown();
+            mWorkerExecutor = null;
+        }
+    }
+
+    /**
+     * Writes the data set to this view's cache file, which is named by a random key the first
+     * time and kept across restores, so each save replaces the last. The file is written beside
+     * the old one and renamed over it, so a data set mapped from the old one stays intact.
+     *
+     * @return The path of the file.
+     * @throws IOException If the file cannot be written.
+     */
+    private String spillGraph() throws IOException {
+        File directory = new File(getContext().getCacheDir(), "chord_diagram");
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        if (mSpillFile == null) {
+            mSpillFile = new File(directory, UUID.randomUUID() + ".bin");
+        }
+        File temp = File.createTempFile("spill", ".tmp", directory);
+        try {
+            GraphFile.write(mGraph, temp);
+            if (!temp.renameTo(mSpillFile)) {
+                throw new IOException("Cannot replace " + mSpillFile);
+            }
+        } finally {
+            temp.delete(); // Only left if the write or the rename failed
+        }
+        pruneSpillFiles(directory);
+        return mSpillFile.getPath();
+    }
+
+    /**
+     * Deletes the cache files that have not been written for {@link #MAX_SPILL_FILE_AGE_MILLIS},
+     * which no saved state still being kept is expected to name.
+     */
+    private void pruneSpillFiles(File directory) {
+        File[] files = directory.listFiles();
+        long oldest = (System.currentTimeMillis() - MAX_SPILL_FILE_AGE_MILLIS);
+        for (int i = 0; (files != null) && (i < files.length); i++) {
+            if (!files[i].equals(mSpillFile) && (files[i].lastModified() < oldest)) {
+                files[i].delete();
+            }
+        }
+    }
+
+    /**
+     * Positions every label at the centre angle of its item, in the unrotated frame of the
+     * label layer. The labels only move again when the data or the size changes.
+     */
+    private void layoutLabels() {
+        if (mDiagramRadius <= 0) {
+            return; // Not laid out yet. onSizeChanged() will position the labels.
+        }
+        createDeferredLabels();
+        for (int id = 0; id < mGraph.getNumItems(); id++) {
+            float centreAngle = mGraph.getCenterAngle(id);
+            mLabelXs[id] = getXCoord(centreAngle, mTextRadius);
+            mLabelYs[id] = getYCoord(centreAngle, mTextRadius);
+            TextView textView = mTextViews[id];
+            if (textView != null) {
+                int halfWidth = (textView.getMeasuredWidth() / 2);
+                int halfHeight = (textView.getMeasuredHeight() / 2);
+                textView.layout(
+                        (int) mLabelXs[id] - halfWidth,
+                        (int) mLabelYs[id] - halfHeight,
+                        (int) mLabelXs[id] + halfWidth,
+                        (int) mLabelYs[id] + halfHeight);
+            }
+        }
+        mLabelLayer.setLabelRotation(mUprightLabels ? mDiagramRotation : 0);
+        mLabelLayer.invalidate();
+    }
+
+    /**
+     * Replaces the data set with the items and flows of a dense flow matrix. Item i is labelled
+     * labels[i] and coloured colours[i]. Items i and j are linked if there is any flow between
+     * them in either direction, and the link is weighted by the total flow. Flow from an item
+     * to itself is ignored. This builds the data set in one pass over the matrix and lays it out
+     * once, instead of n^2 calls to {@link #addLink(String, String)}.
+     *
+     * @param labels The labels of the n items. Must be distinct.
+     * @param colours The colours of the n items.
+     * @param matrix The n * n flow matrix, in row-major order, so that the flow from item i to
+     *               item j is matrix[i * n + j]. Entries must not be negative.
+     * @throws IllegalArgumentException If the arrays do not match in size or labels repeat.
+     */
+    public void setMatrix(String[] labels, int[] colours, float[] matrix) {
+        setGraph(GraphStore.fromMatrix(labels, colours, matrix));
+    }
+
+    /**
+     * Replaces the data set with the items and flows of a sparse flow matrix, given as
+     * (row, column, value) entries. Entries for the same pair of items, in either order, are
+     * added together into the weight of one link. Otherwise this behaves like
+     * {@link #setMatrix(String[], int[], float[])}, in time proportional to the number of
+     * entries rather than n^2.
+     *
+     * @param labels The labels of the n items. Must be distinct.
+     * @param colours The colours of the n items.
+     * @param rows The row of each entry, between 0 and n - 1.
+     * @param columns The column of each entry, between 0 and n - 1.
+     * @param values The flow of each entry. Must not be negative.
+     * @throws IllegalArgumentException If the arrays do not match in size, labels repeat or an
+     *                                  entry is out of range.
+     */
+    public void setMatrix(String[] labels, int[] colours, int[] rows, int[] columns,
+                          float[] values) {
+        setGraph(GraphStore.fromSparseMatrix(labels, colours, rows, columns, values));
+    }
+
+    /**
+     * Writes the data set to a compact binary file that {@link #openGraphFile(File)} can open
+     * much faster than the data set can be rebuilt. The file holds the labels, colours, links
+     * and link weights and, if the diagram is laid out, its angles, so that opening it needs
+     * no layout computation.
+     *
+     * @param file The file to write. Any existing contents are replaced.
+     * @throws IOException If the file cannot be written.
+     */
+    public void writeGraphFile(File file) throws IOException {
+        GraphFile.write(mGraph, file);
+    }
+
+    /**
+     * Replaces the data set with one written by {@link #writeGraphFile(File)}. The file is
+     * mapped into memory rather than parsed, and labels are decoded from it only when they
+     * are first needed, so the file must not be changed while it is shown.
+     *
+     * @param file The file to open.
+     * @throws IOException If the file cannot be read or was not written by a ChordDiagram.
+     */
+    public void openGraphFile(File file) throws IOException {
+        setGraph(GraphFile.map(file));
+    }
+
+    @Override
+    protected Parcelable onSaveInstanceState() {
+        SavedState state = new SavedState(super.onSaveInstanceState());
+        state.mDiagramRotation = mDiagramRotation;
+        long size = mGraph.getBinarySize();
+        if (size <= MAX_PARCELLED_GRAPH_BYTES) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            mGraph.writeTo(buffer);
+            state.mGraphBytes = buffer.array();
+            if (mSpillFile != null) {
+                // The new state replaces the one that named the file.
+                mSpillFile.delete();
+            }
+        } else {
+            try {
+                state.mGraphPath = spillGraph();
+            } catch (IOException e) {
+                // The data set is not saved, so the host will have to add it again.
+            }
+        }
+        return state;
+    }
+
+    @Override
+    protected void onRestoreInstanceState(Parcelable state) {
+        if (!(state instanceof SavedState)) {
+            super.onRestoreInstanceState(state);
+            return;
+        }
+        SavedState savedState = (SavedState) state;
+        super.onRestoreInstanceState(savedState.getSuperState());
+        GraphStore graph = null;
+        try {
+            if (savedState.mGraphBytes != null) {
+                graph = GraphStore.readFrom(ByteBuffer.wrap(savedState.mGraphBytes));
+            } else if (savedState.mGraphPath != null) {
+                // The file is kept, since the same state may be restored again, and adopted, so
+                // that the next save replaces it.
+                File file = new File(savedState.mGraphPath);
+                graph = GraphFile.map(file);
+                mSpillFile = file;
+            }
+        } catch (IOException e) {
+            // The cache file may have been cleared while the process was dead.
+            graph = null;
+        }
+        if (graph == null) {
+            return;
+        }
+
+        // The saved angles are restored too, so only the geometry of the current size is
+        // built, once the diagram is laid out.
+        setGraph(graph);
+        if (mDiagramRadius > 0) {
+            setDiagramRotation(savedState.mDiagramRotation);
+        } else {
+            mRestoredRotation = savedState.mDiagramRotation;
+        }
+    }
+
+    /**
+     * The saved state of a ChordDiagram: its rotation, and its data set and angles in their
+     * binary form, either inline or in a cache file if they are too large to parcel. It is
+     * public so that Parcel can read its CREATOR when the state is unparcelled.
+     */
+    public static class SavedState extends BaseSavedState {
+        private float mDiagramRotation;
+        private byte[] mGraphBytes;
+        private String mGraphPath;
+
+        SavedState(Parcelable superState) {
+            super(superState);
+        }
+
+        private SavedState(Parcel in) {
+            super(in);
+            mDiagramRotation = in.readFloat();
+            mGraphBytes = in.createByteArray();
+            mGraphPath = in.readString();
+        }
+
+        @Override
+        public void writeToParcel(Parcel out, int flags) {
+            super.writeToParcel(out, flags);
+            out.writeFloat(mDiagramRotation);
+            out.writeByteArray(mGraphBytes);
+            out.writeString(mGraphPath);
+        }
+
+        public static final Parcelable.Creator<SavedState> CREATOR =
+                new Parcelable.Creator<SavedState>() {
+                    @Override
+                    public SavedState createFromParcel(Parcel in) {
+                        return new SavedState(in);
+                    }
+
+                    @Override
+                    public SavedState[] newArray(int size) {
+                        return new SavedState[size];
+                    }
+                };
+    }
+
+    /**
+     * Replaces the whole data set and lays the diagram out once. The labels are only created
+     * when they are next shown, so replacing the data set does not decode or measure them.
+     *
+     * @param graph The new items and links.
+     */
+    private void setGraph(GraphStore graph) {
+        cancelAsyncLayout();
+        setHighlightedItem(null);
+        mLabelLayer.removeAllViews();
+        mPendingTextViews.clear();
+        mDetachedTextViews.clear();
+        mGraph = graph;
+        int capacity = Math.max(16, graph.getNumItems());
+        mTextViews = new TextView[capacity];
+        mLabelWidths = new float[capacity];
+        mLabelXs = new float[capacity];
+        mLabelYs = new float[capacity];
+        Arrays.fill(mLabelWidths, 0, graph.getNumItems(), LABEL_DEFERRED);
+        requestDataChanged();
+    }
+
+    public void addItem(String label, int colour) {
+        int id = mGraph.addItem(label, colour);
+        if (id != GraphStore.NO_ID) {
+            if (mTextViews.length <= id) {
+                int capacity = Math.max(16, mTextViews.length * 2);
+                mTextViews = Arrays.copyOf(mTextViews, capacity);
+                mLabelWidths = Arrays.copyOf(mLabelWidths, capacity);
+                mLabelXs = Arrays.copyOf(mLabelXs, capacity);
+                mLabelYs = Arrays.copyOf(mLabelYs, capacity);
+            }
+            createLabel(id);
+            if (mTextViews[id] != null) {
+                attachTextView(mTextViews[id]);
+            }
+            requestDataChanged();
+        }
+    }
+
+    /**
+     * Adds a label TextView as a child, or defers doing so if a batch of changes is in progress.
+     *
+     * @param textView The label to attach.
+     */
+    private void attachTextView(TextView textView) {
+        if (mUpdateDepth > 0) {
+            mPendingTextViews.add(textView);
+        } else {
+            mLabelLayer.addView(textView);
+        }
+    }
+
+    /**
+     * Removes a label TextView, or defers doing so if a batch of changes is in progress. A
+     * label that was only waiting to be attached is simply dropped.
+     *
+     * @param textView The label to detach.
+     */
+    private void detachTextView(TextView textView) {
+        if (mPendingTextViews.remove(textView)) {
+            return;
+        }
+        if (mUpdateDepth > 0) {
+            mDetachedTextViews.add(textView);
+        } else {
+            mLabelLayer.removeView(textView);
+        }
+    }
+
+    public void deleteItem(String label) {
+        int id = mGraph.getItemId(label);
+        if (id == GraphStore.NO_ID) {
+            return;
+        }
+        if (label.equals(mHighlightedLabel)) {
+            setHighlightedItem(null);
+        }
+        if (mTextViews[id] != null) {
+            detachTextView(mTextViews[id]);
+        }
+        mGraph.deleteItem(id);
+
+        // Keep the label state in step with the shifted item ids.
+        int numMoved = (mGraph.getNumItems() - id);
+        System.arraycopy(mTextViews, id + 1, mTextViews, id, numMoved);
+        System.arraycopy(mLabelWidths, id + 1, mLabelWidths, id, numMoved);
+        System.arraycopy(mLabelXs, id + 1, mLabelXs, id, numMoved);
+        System.arraycopy(mLabelYs, id + 1, mLabelYs, id, numMoved);
+        mTextViews[mGraph.getNumItems()] = null;
+        requestDataChanged();
+    }
+
+    public void addLink(String first, String second) {
+        int item1 = mGraph.getItemId(first);
+        int item2 = mGraph.getItemId(second);
+        if ((item1 != item2) && (item1 != GraphStore.NO_ID) && (item2 != GraphStore.NO_ID)) {
+            if (mGraph.addLink(item1, item2) != GraphStore.NO_ID) {
+                requestDataChanged();
+            }
+        }
+    }
+
+    public void deleteLink(String first, String second) {
+        int item1 = mGraph.getItemId(first);
+        int item2 = mGraph.getItemId(second);
+        if ((item1 != GraphStore.NO_ID) && (item2 != GraphStore.NO_ID)) {
+            if (mGraph.deleteLink(item1, item2)) {
+                requestDataChanged();
+            }
+        }
+    }
+
+    /**
+     * Highlights an item and its chords, dimming the rest of the diagram. The diagram stays
+     * cached as it is and is only faded, while the item and its chords are drawn on an overlay,
+     * so changing the highlighted item redraws just the chords of the items involved.
+     *
+     * @param label The label of the item to highlight, or null to clear the highlight.
+     */
+    public void setHighlightedItem(String label) {
+        if ((label != null) && (mGraph.getItemId(label) == GraphStore.NO_ID)) {
+            label = null;
+        }
+        if ((label == null) ? (mHighlightedLabel == null) : label.equals(mHighlightedLabel)) {
+            return;
+        }
+        mHighlightedLabel = label;
+        mChordDiagramView.setAlpha((label != null) ? HIGHLIGHT_DIM_ALPHA : 1.0f);
+        mHighlightLayer.invalidate();
+    }
+
+    /**
+     * Returns the label of the highlighted item.
+     *
+     * @return The label of the highlighted item, or null if no item is highlighted.
+     */
+    public String getHighlightedItem() {
+        return mHighlightedLabel;
+    }
+
+    /**
+     * Register a callback to be invoked with what each draw and layout of the diagram cost.
+     * Metrics are only collected while a listener is registered, so they cost nothing
+     * otherwise.
+     *
+     * @param listener The callback, or null to stop collecting metrics.
+     */
+    public void setOnMetricsListener(OnMetricsListener listener) {
+        mMetricsListener = listener;
+    }
+
+    /**
+     * Returns percentiles of the cost of the most recent draws and layouts. The summary is
+     * only updated while a metrics listener is registered.
+     *
+     * @return The summary, which stays up to date.
+     * @see #setOnMetricsListener(OnMetricsListener)
+     */
+    public MetricsSummary getMetricsSummary() {
+        return mMetricsSummary;
     }
 
-    @Override
-    protected void onDraw(Canvas canvas) {
-        super.onDraw(canvas);
+    /**
+     * Register a callback to be invoked when an item is tapped.
+     *
+     * @param listener The callback, or null to remove it.
+     */
+    public void setOnItemClickListener(OnItemClickListener listener) {
+        mOnItemClickListener = listener;
     }
 
-    private void onDataChanged() {
-        setDiagramRotation(0);
-        assignItemAngles();
-        assignLinkAngles();
-        onScrollFinished();
+    /**
+     * Register a callback to be invoked when a link is tapped.
+     *
+     * @param listener The callback, or null to remove it.
+     */
+    public void setOnLinkClickListener(OnLinkClickListener listener) {
+        mOnLinkClickListener = listener;
     }
 
-    private void assignItemAngles() {
-        float startAngle = 0.0f;
-        float endAngle;
-
-        // Assign angles to items.
-        for (Map.Entry<String, Item> entry : mItems.entrySet()) {
-            Item item = entry.getValue();
-            item.mNumUnassigned = item.mNumConnections;
-            item.mStartAngle = startAngle;
-            endAngle = (startAngle + (360.0f / mItems.size()));
-            item.mEndAngle = endAngle;
-            item.mCenterAngle = ((item.mStartAngle + item.mEndAngle) / 2);
-            startAngle = endAngle;
+    /**
+     * Notifies the click listener of the item or link at a tapped point, if there is one.
+     *
+     * @return True if a listener was notified.
+     */
+    private boolean performTap(float x, float y) {
+        if ((mOnItemClickListener == null) && (mOnLinkClickListener == null)) {
+            return false;
+        }
+        int id = findItemAt(x, y);
+        if (id != GraphStore.NO_ID) {
+            if (mOnItemClickListener != null) {
+                playSoundEffect(SoundEffectConstants.CLICK);
+                mOnItemClickListener.onItemClick(this, mGraph.getLabel(id));
+                return true;
+            }
+            return false;
         }
+        int slot = findLinkAt(x, y);
+        // In async mode the chords drawn can lag behind the data, so check the slot still
+        // holds a link.
+        if ((slot != GraphStore.NO_ID) && (slot < mGraph.getNumLinkSlots())
+                && (mGraph.getLinkItem1(slot) != GraphStore.NO_ID)
+                && (mOnLinkClickListener != null)) {
+            playSoundEffect(SoundEffectConstants.CLICK);
+            mOnLinkClickListener.onLinkClick(
+                    this,
+                    mGraph.getLabel(mGraph.getLinkItem1(slot)),
+                    mGraph.getLabel(mGraph.getLinkItem2(slot)));
+            return true;
+        }
+        return false;
     }
 
-    private void assignLinkAngles() {
-        for (Map.Entry<Integer, Link> entry : mLinks.entrySet()) {
-            Link link = entry.getValue();
-            if (mItemStyle == 0) {
-                float sweepAngle = (link.mItem1.mEndAngle - link.mItem1.mStartAngle);
-                float distribution = (sweepAngle / (link.mItem1.mNumConnections + 1));
-                int angleIndex = ((link.mItem1.mNumConnections - link.mItem1.mNumUnassigned) + 1);
-                link.mEndpointAngle1 = (link.mItem1.mStartAngle + (distribution * angleIndex));
-                link.mItem1.mNumUnassigned--;
-
-                sweepAngle = (link.mItem2.mEndAngle - link.mItem2.mStartAngle);
-                distribution = (sweepAngle / (link.mItem2.mNumConnections + 1));
-                angleIndex = ((link.mItem2.mNumConnections - link.mItem2.mNumUnassigned) + 1);
-                link.mEndpointAngle2 = (link.mItem2.mStartAngle + (distribution * angleIndex));
-                link.mItem2.mNumUnassigned--;
-            } else {
-                link.mEndpointAngle1 = link.mItem1.mStartAngle;
-                link.mEndpointAngle2 = link.mItem2.mStartAngle;
-            }
+    /**
+     * Returns the item drawn at a point: the item whose arc or node, or the label beyond it,
+     * lies in the direction of the point from the centre. The item is found by binary search
+     * over the start angles of the items, after undoing the rotation of the diagram.
+     *
+     * @param x The x coordinate of the point, in this view's coordinates.
+     * @param y The y coordinate of the point, in this view's coordinates.
+     * @return The id of the item, or {@link GraphStore#NO_ID} if the point is not on one.
+     */
+    int findItemAt(float x, float y) {
+        if (mDiagramRadius <= 0) {
+            return GraphStore.NO_ID;
         }
+        float dx = (x - mChordDiagramView.getLeft() - mViewBounds.centerX());
+        float dy = (y - mChordDiagramView.getTop() - mViewBounds.centerY());
+        float distance = (float) Math.hypot(dx, dy);
+        float slop = ViewConfiguration.get(getContext()).getScaledTouchSlop();
+        float itemThickness = (mItemStyle == ITEM_STYLE_ARC) ? mRingThickness : NODE_RADIUS;
+        if ((distance < (mDiagramRadius - itemThickness - slop))
+                || (distance > (mViewBounds.width() / 2))) {
+            return GraphStore.NO_ID;
+        }
+        float angle = ((float) Math.toDegrees(Math.atan2(dy, dx)) - mDiagramRotation);
+        angle %= 360;
+        if (angle < 0) {
+            angle += 360;
+        }
+        return mGraph.findItemAt(angle);
     }
 
-    public void addItem(String label, int colour) {
-        if (mItems.get(label) == null) {
-            Item item = new Item(label, colour);
-            addView(item.mTextView);
-            mItems.put(label, item);
-            onDataChanged();
+    /**
+     * Returns the link whose chord passes closest to a point, within the touch slop. Chords
+     * are found through a grid over their tessellated paths, after undoing the rotation of the
+     * diagram.
+     *
+     * @param x The x coordinate of the point, in this view's coordinates.
+     * @param y The y coordinate of the point, in this view's coordinates.
+     * @return The slot of the link, or {@link GraphStore#NO_ID} if no chord is close.
+     */
+    int findLinkAt(float x, float y) {
+        if (mDiagramRadius <= 0) {
+            return GraphStore.NO_ID;
         }
+        float centreX = mViewBounds.centerX();
+        float centreY = mViewBounds.centerY();
+        float dx = (x - mChordDiagramView.getLeft() - centreX);
+        float dy = (y - mChordDiagramView.getTop() - centreY);
+        double theta = Math.toRadians(-mDiagramRotation);
+        float cos = (float) Math.cos(theta);
+        float sin = (float) Math.sin(theta);
+        float slop = ViewConfiguration.get(getContext()).getScaledTouchSlop();
+        return mGeometry.findLink(
+                centreX + ((dx * cos) - (dy * sin)),
+                centreY + ((dx * sin) + (dy * cos)),
+                slop);
     }
 
-    public void deleteItem(String label) {
-        removeView(mItems.get(label).mTextView);
-        mItems.remove(label);
-        onDataChanged();
+    /**
+     * Returns the child view that draws the diagram. Exposed for tests.
+     *
+     * @return The view that draws the items and links.
+     */
+    View getDiagramView() {
+        return mChordDiagramView;
     }
 
-    public void addLink(String first, String second) {
-        Item item1 = mItems.get(first);
-        Item item2 = mItems.get(second);
-        if ((item1 != item2) && (item1 != null) && (item2 != null)) {
-            int hashCode = (first.hashCode() + second.hashCode());
-            if (mLinks.get(hashCode) == null) {
-                Link newLink = new Link(item1, item2);
-                item1.mNumConnections++;
-                item2.mNumConnections++;
-                mLinks.put(hashCode, newLink);
-                onDataChanged();
-            }
-        }
+    /**
+     * Returns the child view that draws the highlighted item and its chords. Exposed for tests.
+     *
+     * @return The view that draws the highlight.
+     */
+    View getHighlightView() {
+        return mHighlightLayer;
     }
 
-    public void deleteLink(String first, String second) {
-        Item item1 = mItems.get(first);
-        Item item2 = mItems.get(second);
-        if (item1 != null && item2 != null) {
-            mLinks.remove(first.hashCode() + second.hashCode());
-        }
+    /**
+     * Returns the child view that holds or draws the labels. Exposed for tests.
+     *
+     * @return The view of the labels.
+     */
+    ViewGroup getLabelView() {
+        return mLabelLayer;
+    }
+
+    /**
+     * Returns the data set currently shown. Exposed for tests.
+     *
+     * @return The items and links.
+     */
+    GraphStore getGraph() {
+        return mGraph;
     }
 
     @Override
@@ -433,15 +2075,16 @@ public class ChordDiagram extends ViewGroup {
         // Let the GestureDetector interpret this event
         boolean result = mDetector.onTouchEvent(event);
 
-        // If the GestureDetector doesn't want this event, do some custom processing.
-        // This code just tries to detect when the user is done scrolling by looking
-        // for ACTION_UP events.
-        if (!result) {
-            if (event.getAction() == MotionEvent.ACTION_UP) {
-                // User is done scrolling, it's now safe to do things like autocenter
-                stopScrolling();
-                result = true;
+        // The GestureDetector does not report the end of a scroll, so look for it here.
+        int action = event.getActionMasked();
+        if ((action == MotionEvent.ACTION_UP) || (action == MotionEvent.ACTION_CANCEL)) {
+            if (mRotationEngine.isDragging()) {
+                // Fling on at the speed the diagram was turning, or settle if it had stopped.
+                mRotationEngine.release(event.getEventTime());
+            } else if (!mRotationEngine.isFlinging()) {
+                onScrollFinished();
             }
+            result = true;
         }
         return result;
     }
@@ -453,41 +2096,25 @@ public class ChordDiagram extends ViewGroup {
     private class GestureListener extends GestureDetector.SimpleOnGestureListener {
         @Override
         public boolean onScroll(MotionEvent e1, MotionEvent e2, float distanceX, float distanceY) {
-            // Set the pie rotation directly.
-            float scrollTheta = vectorToScalarScroll(
-                    distanceX,
-                    distanceY,
-                    e2.getX() - mViewBounds.centerX(),
-                    e2.getY() - mViewBounds.centerY());
-            int theta = (int) scrollTheta / FLING_VELOCITY_DOWNSCALE;
-            int rotation = getDiagramRotation() - theta;
-            setDiagramRotation(rotation);
-            setTextRotation(theta);
+            // Turn the diagram by the angle the touch moved through about its centre, so the
+            // point under the finger stays under it.
+            float x = (e2.getX() - mChordDiagramView.getLeft() - mViewBounds.centerX());
+            float y = (e2.getY() - mChordDiagramView.getTop() - mViewBounds.centerY());
+            double angle = Math.atan2(y, x);
+            double previousAngle = Math.atan2(y + distanceY, x + distanceX);
+            float delta = (float) Math.toDegrees(angle - previousAngle);
+            if (delta > 180) {
+                delta -= 360;
+            } else if (delta < -180) {
+                delta += 360;
+            }
+            mRotationEngine.dragBy(delta, e2.getEventTime());
             return true;
         }
 
         @Override
-        public boolean onFling(MotionEvent e1, MotionEvent e2, float velocityX, float velocityY) {
-            // Set up the Scroller for a fling
-            float scrollTheta = vectorToScalarScroll(
-                    velocityX,
-                    velocityY,
-                    e2.getX() - mViewBounds.centerX(),
-                    e2.getY() - mViewBounds.centerY());
-            mScroller.fling(
-                    0,
-                    getDiagramRotation(),
-                    0,
-                    (int) scrollTheta / FLING_VELOCITY_DOWNSCALE,
-                    0,
-                    0,
-                    Integer.MIN_VALUE,
-                    Integer.MAX_VALUE);
-
-            // Start the animator and tell it to animate for the expected duration of the fling.
-            mScrollAnimator.setDuration(mScroller.getDuration());
-            mScrollAnimator.start();
-            return true;
+        public boolean onSingleTapUp(MotionEvent e) {
+            return performTap(e.getX(), e.getY());
         }
 
         @Override
@@ -495,29 +2122,70 @@ public class ChordDiagram extends ViewGroup {
             // The user is interacting with the diagram, so we want to turn on acceleration
             // so that the interaction is smooth.
             mChordDiagramView.setLayerType(View.LAYER_TYPE_HARDWARE, null);
-            for (Map.Entry<String, Item> entry : mItems.entrySet()) {
-                entry.getValue().mTextView.setLayerType(View.LAYER_TYPE_HARDWARE, null);
-            }
-            if (isAnimationRunning()) {
-                stopScrolling();
-            }
+            setLabelLayerType(View.LAYER_TYPE_HARDWARE);
+            mAutoCenterAnimator.cancel();
+            mRotationEngine.startDrag(mDiagramRotation, e.getEventTime());
             return true;
         }
     }
 
-    private void tickScrollAnimation() {
-        if (!mScroller.isFinished()) {
-            mScroller.computeScrollOffset();
-            setTextRotation(getDiagramRotation() - mScroller.getCurrY());
-            setDiagramRotation(mScroller.getCurrY());
-        } else {
-            mScrollAnimator.cancel();
-            onScrollFinished();
+    /**
+     * Applies the rotation of the rotation engine to the diagram, and supplies it with frames
+     * from the Choreographer while it flings.
+     */
+    private class RotationHost implements RotationEngine.Host, Choreographer.FrameCallback {
+        @Override
+        public void onRotate(float rotation) {
+            setDiagramRotation(rotation);
+        }
+
+        @Override
+        public void onSettle(float rotation) {
+            if (mAutoCenter) {
+                autoCenter();
+            } else {
+                onScrollFinished();
+            }
+        }
+
+        @Override
+        public void scheduleFrame() {
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        @Override
+        public void cancelFrame() {
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mRotationEngine.doFrame(frameTimeNanos);
         }
     }
 
-    private boolean isAnimationRunning() {
-        return !mScroller.isFinished();
+    /**
+     * Animates the diagram to centre the item nearest to {@link #AUTO_CENTER_ANGLE}, turning
+     * the shorter way. The animation ends by returning the diagram to its software layer.
+     */
+    private void autoCenter() {
+        float angle = ((AUTO_CENTER_ANGLE - mDiagramRotation) % 360);
+        if (angle < 0) {
+            angle += 360;
+        }
+        int id = mGraph.findItemAt(angle);
+        if (id == GraphStore.NO_ID) {
+            onScrollFinished();
+            return;
+        }
+        float delta = ((angle - mGraph.getCenterAngle(id)) % 360);
+        if (delta > 180) {
+            delta -= 360;
+        } else if (delta < -180) {
+            delta += 360;
+        }
+        mAutoCenterAnimator.setFloatValues(mDiagramRotation, mDiagramRotation + delta);
+        mAutoCenterAnimator.start();
     }
 
     /**
@@ -525,16 +2193,24 @@ public class ChordDiagram extends ViewGroup {
      */
     private void onScrollFinished() {
         mChordDiagramView.setLayerType(View.LAYER_TYPE_SOFTWARE, null);
-        for (Map.Entry<String, Item> entry : mItems.entrySet()) {
-            entry.getValue().mTextView.setLayerType(View.LAYER_TYPE_SOFTWARE, null);
-        }
+        setLabelLayerType(View.LAYER_TYPE_SOFTWARE);
+    }
+
+    /**
+     * Sets the layer type of the label layer, which holds every label.
+     *
+     * @param layerType The layer type to use for the labels.
+     */
+    private void setLabelLayerType(int layerType) {
+        mLabelLayer.setLayerType(layerType, null);
     }
 
     /**
-     * Force a stop to all pie motion. Called when the user taps during a fling.
+     * Force a stop to all pie motion, such as when the data set changes during a fling.
      */
     private void stopScrolling() {
-        mScroller.forceFinished(true);
+        mRotationEngine.stop();
+        mAutoCenterAnimator.cancel();
         onScrollFinished();
     }
 
@@ -543,6 +2219,12 @@ public class ChordDiagram extends ViewGroup {
      * when necessary.
      */
     private class ChordDiagramView extends View {
+        // Ribbons drawn for hardware canvases, which cannot draw vertices before API 29
+        private Bitmap mRibbonBitmap;
+        private Canvas mRibbonCanvas;
+        private Geometry mRibbonBitmapGeometry; // The geometry whose mesh is in the bitmap
+        private int mRibbonBitmapVersion;
+
         /**
          * Construct a ChordDiagramView
          *
@@ -552,134 +2234,575 @@ public class ChordDiagram extends ViewGroup {
             super(context);
         }
 
+        /**
+         * Allocates the bitmap that ribbons are drawn into for hardware canvases, at the size
+         * of this view, or frees it.
+         *
+         * @param needed True if hardware canvases of this window need the bitmap.
+         */
+        private void updateRibbonBitmap(boolean needed) {
+            int width = getWidth();
+            int height = getHeight();
+            if (!needed || (width == 0) || (height == 0)) {
+                releaseRibbonBitmap();
+            } else if ((mRibbonBitmap == null) || (mRibbonBitmap.getWidth() != width)
+                    || (mRibbonBitmap.getHeight() != height)) {
+                mRibbonBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+                mRibbonCanvas = new Canvas(mRibbonBitmap);
+                mRibbonBitmapGeometry = null;
+            }
+        }
+
+        private void releaseRibbonBitmap() {
+            mRibbonBitmap = null;
+            mRibbonCanvas = null;
+            mRibbonBitmapGeometry = null;
+        }
+
         @Override
         protected void onDraw(Canvas canvas) {
             super.onDraw(canvas);
-            drawItems(canvas);
-            drawLinks(canvas);
-        }
-
-        private void drawItems(Canvas canvas) {
-            for (Map.Entry<String, Item> entry : mItems.entrySet()) {
-                Item item = entry.getValue();
-                mItemPaint.setColor(item.mColour);
-                if (mItemStyle == 0) { // Items are arcs
-                    mItemPaint.setStyle(Paint.Style.FILL);
-                    Path path = new Path();
-
-                    float sweepAngle = (item.mEndAngle - item.mStartAngle);
-                    if (mItems.size() == 1) {
-                        canvas.drawCircle(
-                                mViewBounds.centerX(),
-                                mViewBounds.centerY(),
-                                mDiagramRadius,
-                                mItemPaint);
-                    } else {
-                        path.moveTo(mViewBounds.centerX(), mViewBounds.centerY());
-                        path.lineTo(
-                                getXCoord(item.mStartAngle, mDiagramRadius),
-                                getYCoord(item.mStartAngle, mDiagramRadius));
-                        path.arcTo(mDiagramBounds, item.mStartAngle, sweepAngle);
-                        canvas.drawPath(path, mItemPaint);
-                    }
+            if (mMetricsListener == null) {
+                drawItems(canvas);
+                drawLinks(canvas);
+                return;
+            }
+            int allocations = Debug.getThreadAllocCount();
+            long start = System.nanoTime();
+            int numDrawCalls = drawItems(canvas);
+            long itemsEnd = System.nanoTime();
+            numDrawCalls += drawLinks(canvas);
+            long linksEnd = System.nanoTime();
+
+            DrawMetrics metrics = mDrawMetrics;
+            metrics.mDrawItemsNanos = (itemsEnd - start);
+            metrics.mDrawLinksNanos = (linksEnd - itemsEnd);
+            metrics.mNumDrawCalls = numDrawCalls;
+            metrics.mNumSegments = mGeometry.mNumChordSegments;
+            metrics.mNumAllocations = (Debug.getThreadAllocCount() - allocations);
+            mMetricsSummary.mDrawNanos.add(metrics.getTotalNanos());
+            mMetricsListener.onDrawMetrics(ChordDiagram.this, metrics);
+        }
 
-                    canvas.drawCircle(
-                            mViewBounds.centerX(),
-                            mViewBounds.centerY(),
-                            mDiagramRadius - mRingThickness,
-                            mInnerCirclePaint);
+        /**
+         * Draws the arcs or nodes of the items.
+         *
+         * @return The number of draw calls made.
+         */
+        private int drawItems(Canvas canvas) {
+            mItemPaint.setStyle(Paint.Style.FILL);
+            Geometry geometry = mGeometry;
+            for (int id = 0; id < geometry.mNumItems; id++) {
+                if (mItemStyle == ITEM_STYLE_ARC) {
+                    mArcPaint.setColor(geometry.mItemColours[id]);
+                    canvas.drawArc(mRingBounds, geometry.mStartAngles[id],
+                            geometry.mSweepAngles[id], false, mArcPaint);
                 } else { // Items are nodes
-                    mItemPaint.setStyle(Paint.Style.FILL);
-                    float centreAngle = ((item.mStartAngle + item.mEndAngle) / 2);
-                    // TODO: Soft-code node radius.
-                    canvas.drawCircle(
-                            getXCoord(centreAngle, mDiagramRadius),
-                            getYCoord(centreAngle, mDiagramRadius),
-                            20,
-                            mItemPaint);
+                    mItemPaint.setColor(geometry.mItemColours[id]);
+                    canvas.drawCircle(geometry.mNodeXs[id], geometry.mNodeYs[id], NODE_RADIUS, mItemPaint);
+                }
+            }
+            return geometry.mNumItems;
+        }
+
+        /**
+         * Draws the chords of the links.
+         *
+         * @return The number of draw calls made.
+         */
+        private int drawLinks(Canvas canvas) {
+            Geometry geometry = mGeometry;
+            if (geometry.mRibbons != null) {
+                return drawRibbons(canvas, geometry);
+            }
+            return drawChords(canvas, geometry);
+        }
+
+        /**
+         * Draws the chord paths of the links, which follow the centre lines of the ribbons in
+         * ribbon style.
+         *
+         * @return The number of draw calls made.
+         */
+        private int drawChords(Canvas canvas, Geometry geometry) {
+            int numDrawCalls = 0;
+            for (int slot = 0; slot < geometry.mNumLinkSlots; slot++) {
+                if (geometry.mLinkShaders[slot] == null) {
+                    continue; // Empty slot
                 }
+                mLinkPaint.setShader(geometry.mLinkShaders[slot]);
+                canvas.drawPath(geometry.mLinkPaths[slot], mLinkPaint);
+                numDrawCalls++;
+            }
+            mLinkPaint.setShader(null);
+            return numDrawCalls;
+        }
+
+        /**
+         * Draws every ribbon with a single call. Hardware canvases cannot draw vertices before
+         * API 29, so for them the mesh is drawn into a software bitmap, which is only redrawn
+         * when the mesh changes. The bitmap is allocated by {@link #updateRibbonTargets()};
+         * until it is, the centre lines of the ribbons are drawn instead.
+         *
+         * @return The number of draw calls made.
+         */
+        private int drawRibbons(Canvas canvas, Geometry geometry) {
+            RibbonMesh ribbons = geometry.mRibbons;
+            if (ribbons.getNumVertices() == 0) {
+                return 0;
             }
+            if (canDrawVertices(canvas)) {
+                drawMesh(canvas, ribbons.getNumVertices(), ribbons.getVertices(),
+                        ribbons.getColours());
+                return 1;
+            }
+            if (mRibbonBitmap == null) {
+                return drawChords(canvas, geometry);
+            }
+            if ((mRibbonBitmapGeometry != geometry)
+                    || (mRibbonBitmapVersion != geometry.mRibbonVersion)) {
+                mRibbonBitmap.eraseColor(Color.TRANSPARENT);
+                drawMesh(mRibbonCanvas, ribbons.getNumVertices(), ribbons.getVertices(),
+                        ribbons.getColours());
+                mRibbonBitmapGeometry = geometry;
+                mRibbonBitmapVersion = geometry.mRibbonVersion;
+            }
+            canvas.drawBitmap(mRibbonBitmap, 0, 0, null);
+            return 1;
         }
+    }
+
+    /**
+     * Draws a triangle strip of ribbons, coloured by its vertices.
+     */
+    private void drawMesh(Canvas canvas, int numVertices, float[] vertices, int[] colours) {
+        canvas.drawVertices(Canvas.VertexMode.TRIANGLE_STRIP, 2 * numVertices, vertices, 0,
+                null, 0, colours, 0, null, 0, 0, mRibbonPaint);
+    }
 
-        private void drawLinks(Canvas canvas) {
-            mLinkPaint.setStrokeWidth(5);
-            for (Map.Entry<Integer, Link> entry : mLinks.entrySet()) {
-                Link link = entry.getValue();
-                Item item1 = link.mItem1;
-                Item item2 = link.mItem2;
+    /**
+     * Internal class that holds the cached geometry of the diagram, indexed by item id and link
+     * slot. It only depends on the model and the layout parameters it is built from, so it can
+     * be built off the UI thread and swapped in as a whole.
+     */
+    private static class Geometry {
+        private int[] mItemColours = new int[0];
+        private float[] mNodeXs = new float[0]; // Centres of the nodes drawn for node style
+        private float[] mNodeYs = new float[0];
+        private float[] mStartAngles = new float[0]; // Angles of the arcs drawn for arc style
+        private float[] mSweepAngles = new float[0];
+        private Path[] mLinkPaths = new Path[0];
+        private Shader[] mLinkShaders = new Shader[0]; // Null for empty slots
+        private int[] mLinkSegments = new int[0]; // Zero for empty slots
+        private float[][] mLinkPoints = new float[0][]; // Points of each chord path, for hit tests
+        private RibbonMesh mRibbons; // Null unless links are drawn as ribbons
+        private int mRibbonVersion; // Incremented each time mRibbons is rebuilt
+        private float[] mHighlightVertices = new float[0]; // One item's bands, for the overlay
+        private int[] mHighlightColours = new int[0];
+        private int mNumItems;
+        private int mNumLinkSlots;
+        private int mNumChordSegments; // Total number of line segments in the chord paths
+        private float mCentreX;
+        private float mCentreY;
+        private float mRadius;
+        private ChordGrid mLinkGrid; // Built with the links, for hit tests
 
-                int startX = getXCoord(link.mEndpointAngle1, mDiagramRadius);
-                int startY = getYCoord(link.mEndpointAngle1, mDiagramRadius);
-                int endX = getXCoord(link.mEndpointAngle2, mDiagramRadius);
-                int endY = getYCoord(link.mEndpointAngle2, mDiagramRadius);
+        /**
+         * Builds the geometry of a laid out model, reusing paths from the previous build.
+         *
+         * @return True if the geometry was built, false if the thread was interrupted first.
+         */
+        private boolean build(GraphStore graph, RectF viewBounds, float radius, float tolerance,
+                              boolean ribbons) {
+            float centreX = viewBounds.centerX();
+            float centreY = viewBounds.centerY();
+            mCentreX = centreX;
+            mCentreY = centreY;
+            mRadius = radius;
+
+            int numItems = graph.getNumItems();
+            if (mItemColours.length < numItems) {
+                mItemColours = new int[numItems];
+                mNodeXs = new float[numItems];
+                mNodeYs = new float[numItems];
+                mStartAngles = new float[numItems];
+                mSweepAngles = new float[numItems];
+            }
+            for (int id = 0; id < numItems; id++) {
+                float startAngle = graph.getStartAngle(id);
+                float endAngle = graph.getEndAngle(id);
+                float centreAngle = graph.getCenterAngle(id);
+                mItemColours[id] = graph.getColour(id);
+                mNodeXs[id] = getXCoord(centreX, centreAngle, radius);
+                mNodeYs[id] = getYCoord(centreY, centreAngle, radius);
+                mStartAngles[id] = startAngle;
+                mSweepAngles[id] = (numItems == 1) ? 360.0f : (endAngle - startAngle);
+            }
 
-                drawBezier(canvas, item1.mColour, item2.mColour, startX, startY, endX, endY);
+            mNumItems = numItems;
+            // The chord paths of ribbons follow their centre lines, so the mesh comes first.
+            if (!buildRibbons(graph, centreX, centreY, radius, tolerance, ribbons)
+                    || !buildLinks(graph, centreX, centreY, radius, tolerance)) {
+                return false;
             }
+            buildLinkGrid();
+            return true;
         }
 
-        private void drawBezier(Canvas canvas, int firstColour, int secondColour, int startX,
-                                int startY, int endX, int endY) {
-            int firstRed = Color.red(firstColour);
-            int firstGreen = Color.green(firstColour);
-            int firstBlue = Color.blue(firstColour);
-            int secondRed = Color.red(secondColour);
-            int secondGreen = Color.green(secondColour);
-            int secondBlue = Color.blue(secondColour);
+        /**
+         * Builds the ribbon mesh, or drops it if links are drawn as lines. The chord paths are
+         * still kept in ribbon style, along the centre line of each ribbon, for hit tests.
+         *
+         * @return True if the mesh was built, false if the thread was interrupted first.
+         */
+        private boolean buildRibbons(GraphStore graph, float centreX, float centreY,
+                                     float radius, float tolerance, boolean ribbons) {
+            if (!ribbons) {
+                mRibbons = null;
+                mHighlightVertices = new float[0];
+                mHighlightColours = new int[0];
+                return true;
+            }
+            if (mRibbons == null) {
+                mRibbons = new RibbonMesh();
+            }
+            mRibbonVersion++;
+            if (!mRibbons.build(graph, centreX, centreY, radius, tolerance, RIBBON_ALPHA)) {
+                return false;
+            }
+            // Sized here so that drawing a highlighted item's bands never allocates.
+            int capacity = (2 * mRibbons.getMaxItemVertices());
+            if (mHighlightVertices.length < capacity) {
+                mHighlightVertices = new float[capacity];
+                mHighlightColours = new int[capacity];
+            }
+            return true;
+        }
 
-            float previousX = 0.0f;
-            float previousY = 0.0f;
-            float centreX = mViewBounds.centerX();
-            float centreY = mViewBounds.centerY();
+        /**
+         * Rebuilds the links of the items whose links changed since the graph's changes were
+         * last cleared, leaving the rest of the geometry as it is. The items themselves must not
+         * have changed since the last call to {@link #build}.
+         */
+        private void updateLinks(GraphStore graph, RectF viewBounds, float radius,
+                                 float tolerance, boolean ribbons) {
+            float centreX = viewBounds.centerX();
+            float centreY = viewBounds.centerY();
+            // Each ribbon's share of its arcs depends on every other link of its items, so the
+            // mesh is always rebuilt as a whole.
+            buildRibbons(graph, centreX, centreY, radius, tolerance, ribbons);
+            if (graph.haveSlotsMoved()) {
+                buildLinks(graph, centreX, centreY, radius, tolerance);
+                buildLinkGrid();
+                return;
+            }
 
-            for (float t = 0; t < 1; t += 0.01) {
-                Path path = new Path();
+            int numLinkSlots = graph.getNumLinkSlots();
+            ensureLinkCapacity(numLinkSlots);
+            for (int i = 0; i < graph.getNumRemovedSlots(); i++) {
+                int slot = graph.getRemovedSlot(i);
+                mNumChordSegments -= mLinkSegments[slot];
+                mLinkSegments[slot] = 0;
+                mLinkShaders[slot] = null;
+            }
+            for (int i = 0; i < graph.getNumChangedItems(); i++) {
+                int id = graph.getChangedItem(i);
+                for (int index = 0; index < graph.getNumConnections(id); index++) {
+                    int slot = graph.getIncidentSlot(id, index);
+                    buildLink(graph, slot, centreX, centreY, radius, tolerance);
+                }
+            }
+            mNumLinkSlots = numLinkSlots;
+            buildLinkGrid();
+        }
 
-                if (t == 0) {
-                    previousX = startX;
-                    previousY = startY;
+        /**
+         * Builds the geometry of every link slot.
+         *
+         * @return True if the links were built, false if the thread was interrupted first.
+         */
+        private boolean buildLinks(GraphStore graph, float centreX, float centreY, float radius,
+                                   float tolerance) {
+            int numLinkSlots = graph.getNumLinkSlots();
+            mNumChordSegments = 0;
+            ensureLinkCapacity(numLinkSlots);
+            for (int slot = 0; slot < numLinkSlots; slot++) {
+                if ((slot % 1024 == 0) && Thread.currentThread().isInterrupted()) {
+                    return false;
+                }
+                mLinkSegments[slot] = 0;
+                if (graph.getLinkItem1(slot) != GraphStore.NO_ID) {
+                    buildLink(graph, slot, centreX, centreY, radius, tolerance);
+                } else {
+                    mLinkShaders[slot] = null;
                 }
+            }
+            // Release shaders of links that are no longer in the data set.
+            Arrays.fill(mLinkShaders, numLinkSlots, mLinkShaders.length, null);
+            Arrays.fill(mLinkSegments, numLinkSlots, mLinkSegments.length, 0);
+            mNumLinkSlots = numLinkSlots;
+            return true;
+        }
 
-                path.moveTo(previousX, previousY);
+        private void ensureLinkCapacity(int numLinkSlots) {
+            if (mLinkPaths.length < numLinkSlots) {
+                int capacity = Math.max(numLinkSlots, mLinkPaths.length * 2);
+                mLinkPaths = Arrays.copyOf(mLinkPaths, capacity);
+                mLinkShaders = Arrays.copyOf(mLinkShaders, capacity);
+                mLinkSegments = Arrays.copyOf(mLinkSegments, capacity);
+                mLinkPoints = Arrays.copyOf(mLinkPoints, capacity);
+            }
+        }
 
-                float bx = (((1 - t) * (((1 - t) * startX) + (t * centreX))) + (t * (((1 - t) * centreX) + (t * endX))));
-                float by = (((1 - t) * (((1 - t) * startY) + (t * centreY))) + (t * (((1 - t) * centreY) + (t * endY))));
+        /**
+         * Indexes the tessellated paths of the links in a grid for hit tests. It is built with
+         * the rest of the geometry, so in asynchronous mode a tap never pays for it on the UI
+         * thread.
+         */
+        private void buildLinkGrid() {
+            mLinkGrid = new ChordGrid(mLinkPoints, mLinkSegments, mNumLinkSlots,
+                    mCentreX - mRadius, mCentreY - mRadius, 2 * mRadius);
+        }
 
-                int red = (int) Math.abs((t * secondRed) + ((1 - t) * firstRed));
-                int green = (int) Math.abs((t * secondGreen) + ((1 - t) * firstGreen));
-                int blue = (int) Math.abs((t * secondBlue) + ((1 - t) * firstBlue));
+        /**
+         * Returns the slot of the chord nearest to a point in the unrotated frame of the
+         * diagram, if it is within a distance. Only the segments in the grid cells near the
+         * point are tested.
+         */
+        private int findLink(float x, float y, float tolerance) {
+            if (mLinkGrid == null) {
+                return GraphStore.NO_ID; // Not built yet
+            }
+            return mLinkGrid.findLink(x, y, tolerance);
+        }
 
-                mLinkPaint.setARGB(255, red, green, blue);
-                path.lineTo(bx, by);
-                canvas.drawPath(path, mLinkPaint);
+        /**
+         * Builds the cached path and shader of a link. Each link is a quadratic Bezier curve
+         * with its control point at the centre of the diagram, flattened to the tessellation
+         * tolerance and shaded with a gradient that runs from the colour of its first item to
+         * the colour of its second. In ribbon style it runs along the centre of the link's
+         * ribbon, so the mesh must be built first.
+         */
+        private void buildLink(GraphStore graph, int slot, float centreX, float centreY,
+                               float radius, float tolerance) {
+            float endpointAngle1 = (mRibbons != null)
+                    ? mRibbons.getBandMidAngle1(slot) : graph.getEndpointAngle1(slot);
+            float endpointAngle2 = (mRibbons != null)
+                    ? mRibbons.getBandMidAngle2(slot) : graph.getEndpointAngle2(slot);
+            int startX = getXCoord(centreX, endpointAngle1, radius);
+            int startY = getYCoord(centreY, endpointAngle1, radius);
+            int endX = getXCoord(centreX, endpointAngle2, radius);
+            int endY = getYCoord(centreY, endpointAngle2, radius);
+
+            int segments = BezierTessellator.segmentCount(
+                    startX, startY, centreX, centreY, endX, endY, tolerance);
+            float[] points = mLinkPoints[slot];
+            if ((points == null) || (points.length < (2 * (segments + 1)))) {
+                points = new float[2 * (segments + 1)];
+                mLinkPoints[slot] = points;
+            }
+            BezierTessellator.tessellate(
+                    startX, startY, centreX, centreY, endX, endY, segments, points, 0);
+            mNumChordSegments += (segments - mLinkSegments[slot]);
+            mLinkSegments[slot] = segments;
 
-                previousX = bx;
-                previousY = by;
+            if (mLinkPaths[slot] == null) {
+                mLinkPaths[slot] = new Path();
+            }
+            Path path = mLinkPaths[slot];
+            path.reset();
+            path.moveTo(points[0], points[1]);
+            for (int i = 1; i <= segments; i++) {
+                path.lineTo(points[2 * i], points[(2 * i) + 1]);
             }
+
+            // Links are always drawn fully opaque.
+            mLinkShaders[slot] = new LinearGradient(
+                    startX,
+                    startY,
+                    endX,
+                    endY,
+                    graph.getColour(graph.getLinkItem1(slot)) | 0xFF000000,
+                    graph.getColour(graph.getLinkItem2(slot)) | 0xFF000000,
+                    Shader.TileMode.CLAMP);
+        }
+
+        private static int getXCoord(float centreX, float theta, float radius) {
+            return (int) ((radius * Math.cos(Math.toRadians(theta))) + centreX);
+        }
+
+        private static int getYCoord(float centreY, float theta, float radius) {
+            return (int) ((radius * Math.sin(Math.toRadians(theta))) + centreY);
         }
     }
 
     /**
-     * Helper method for translating (x,y) scroll vectors into scalar rotation of the pie.
-     *
-     * @param dx The x component of the current scroll vector.
-     * @param dy The y component of the current scroll vector.
-     * @param x  The x position of the current touch, relative to the pie center.
-     * @param y  The y position of the current touch, relative to the pie center.
-     * @return The scalar representing the change in angular position for this scroll.
+     * Internal child class that draws the highlighted item and its chords over the diagram. The
+     * chords are found through the item's list of incident links, so drawing the overlay costs
+     * O(degree) no matter how many links the diagram has. Ribbons are drawn as the item's own
+     * part of the mesh, opaque, in one call.
+     */
+    private class HighlightLayer extends View {
+        /**
+         * Construct a HighlightLayer
+         *
+         * @param context
+         */
+        public HighlightLayer(Context context) {
+            super(context);
+        }
+
+        @Override
+        protected void onDraw(Canvas canvas) {
+            super.onDraw(canvas);
+            if (mHighlightedLabel == null) {
+                return;
+            }
+            Geometry geometry = mGeometry;
+            int id = mGraph.getItemId(mHighlightedLabel);
+            if ((id == GraphStore.NO_ID) || (id >= geometry.mNumItems)) {
+                return; // Not laid out yet
+            }
+            drawItem(canvas, geometry, id);
+            if ((geometry.mRibbons != null) && canDrawVertices(canvas)) {
+                drawRibbons(canvas, geometry, id);
+            } else {
+                drawLinks(canvas, geometry, id);
+            }
+        }
+
+        private void drawItem(Canvas canvas, Geometry geometry, int id) {
+            if (mItemStyle == ITEM_STYLE_ARC) {
+                mArcPaint.setColor(geometry.mItemColours[id]);
+                canvas.drawArc(mRingBounds, geometry.mStartAngles[id], geometry.mSweepAngles[id],
+                        false, mArcPaint);
+            } else {
+                mItemPaint.setStyle(Paint.Style.FILL);
+                mItemPaint.setColor(geometry.mItemColours[id]);
+                canvas.drawCircle(geometry.mNodeXs[id], geometry.mNodeYs[id], NODE_RADIUS, mItemPaint);
+            }
+        }
+
+        private void drawLinks(Canvas canvas, Geometry geometry, int id) {
+            GraphStore graph = mGraph;
+            for (int index = 0; index < graph.getNumConnections(id); index++) {
+                int slot = graph.getIncidentSlot(id, index);
+                // In async mode the geometry can lag behind the data, so skip slots it lacks.
+                if ((slot >= geometry.mNumLinkSlots) || (geometry.mLinkShaders[slot] == null)) {
+                    continue;
+                }
+                mLinkPaint.setShader(geometry.mLinkShaders[slot]);
+                canvas.drawPath(geometry.mLinkPaths[slot], mLinkPaint);
+            }
+            mLinkPaint.setShader(null);
+        }
+
+        private void drawRibbons(Canvas canvas, Geometry geometry, int id) {
+            int numVertices = geometry.mRibbons.copyItemBands(mGraph, id, 0xFF,
+                    geometry.mHighlightVertices, geometry.mHighlightColours);
+            if (numVertices > 0) {
+                drawMesh(canvas, numVertices, geometry.mHighlightVertices,
+                        geometry.mHighlightColours);
+            }
+        }
+    }
+
+    /**
+     * Internal child class that holds the item labels, either as TextView children or drawn
+     * directly onto its canvas. It is rotated as one unit together with the ChordDiagramView,
+     * so rotating the diagram costs the same no matter how many labels there are.
      */
-    private static float vectorToScalarScroll(float dx, float dy, float x, float y) {
-        // get the length of the vector
-        float l = (float) Math.sqrt(dx * dx + dy * dy);
+    private class LabelLayer extends ViewGroup {
+        private float mLabelRotation;
+
+        /**
+         * Construct a LabelLayer
+         *
+         * @param context
+         */
+        public LabelLayer(Context context) {
+            super(context);
+            setWillNotDraw(false);
+        }
+
+        @Override
+        protected void onLayout(boolean changed, int l, int t, int r, int b) {
+            // Do nothing. The labels are positioned by layoutLabels().
+        }
+
+        /**
+         * Adds labels without requesting a layout pass for each of them.
+         *
+         * @param textViews The labels to add.
+         */
+        private void attachLabels(Set<TextView> textViews) {
+            for (TextView textView : textViews) {
+                addViewInLayout(textView, -1, generateDefaultLayoutParams(), true);
+            }
+            invalidate();
+        }
+
+        /**
+         * Removes labels in one pass over the children, rather than one search per label.
+         *
+         * @param textViews The labels to remove.
+         */
+        private void detachLabels(Set<TextView> textViews) {
+            List<View> remaining = new ArrayList<>(getChildCount());
+            for (int i = 0; i < getChildCount(); i++) {
+                View child = getChildAt(i);
+                if (!textViews.contains(child)) {
+                    remaining.add(child);
+                }
+            }
+            removeAllViewsInLayout();
+            for (View child : remaining) {
+                addViewInLayout(child, -1, child.getLayoutParams(), true);
+            }
+            invalidate();
+        }
 
-        // decide if the scalar should be negative or positive by finding
-        // the dot product of the vector perpendicular to (x,y).
-        float crossX = -y;
-        float crossY = x;
+        /**
+         * Rotates every label about its own centre, on top of the rotation of the layer. Used
+         * to counter-rotate the labels so that they stay upright.
+         *
+         * @param rotation The rotation of the diagram, in degrees.
+         */
+        private void setLabelRotation(float rotation) {
+            mLabelRotation = rotation;
+            if (mLabelMode == LABEL_MODE_VIEW) {
+                for (int i = 0; i < getChildCount(); i++) {
+                    getChildAt(i).setRotation(-rotation);
+                }
+            } else {
+                invalidate();
+            }
+        }
 
-        float dot = (crossX * dx + crossY * dy);
-        float sign = Math.signum(dot);
+        @Override
+        protected void onDraw(Canvas canvas) {
+            super.onDraw(canvas);
+            if (mLabelMode == LABEL_MODE_CANVAS) {
+                drawLabels(canvas);
+            }
+        }
 
-        return l * sign;
+        private void drawLabels(Canvas canvas) {
+            for (int id = 0; id < mGraph.getNumItems(); id++) {
+                if (mLabelRotation != 0) {
+                    canvas.save();
+                    canvas.rotate(-mLabelRotation, mLabelXs[id], mLabelYs[id]);
+                }
+                canvas.drawText(
+                        mGraph.getLabel(id),
+                        mLabelXs[id] - (mLabelWidths[id] / 2),
+                        mLabelYs[id] + mLabelBaselineOffset,
+                        mLabelPaint);
+                if (mLabelRotation != 0) {
+                    canvas.restore();
+                }
+            }
+        }
     }
 
     private int getXCoord(float theta, float radius) {
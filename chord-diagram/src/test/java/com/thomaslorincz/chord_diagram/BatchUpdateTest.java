@@ -0,0 +1,105 @@
+package com.thomaslorincz.chord_diagram;
+
+import android.view.View;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for batched updates through {@link ChordDiagram#beginUpdate()} and
+ * {@link ChordDiagram#endUpdate()}. Layouts are counted through the metrics listener.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class BatchUpdateTest {
+    private static final int SIZE = 500;
+
+    @Test
+    public void endUpdate_laysOutOnce() throws Exception {
+        ChordDiagram chordDiagram = newLaidOutDiagram();
+        LayoutCounter counter = new LayoutCounter();
+        chordDiagram.setOnMetricsListener(counter);
+
+        chordDiagram.beginUpdate();
+        load(chordDiagram, 300, 2000);
+        chordDiagram.beginUpdate(); // Nested batches end with the outermost one
+        for (int i = 0; i < 300; i += 3) {
+            chordDiagram.deleteItem("Item " + i);
+        }
+        chordDiagram.endUpdate();
+        assertEquals(0, counter.mNumLayouts);
+        chordDiagram.endUpdate();
+        assertEquals(1, counter.mNumLayouts);
+
+        // Deleting attached labels in a batch detaches them in the same single pass.
+        chordDiagram.beginUpdate();
+        for (int i = 1; i < 300; i += 3) {
+            chordDiagram.deleteItem("Item " + i);
+        }
+        chordDiagram.endUpdate();
+        assertEquals(2, counter.mNumLayouts);
+        assertEquals(100, chordDiagram.getGraph().getNumItems());
+    }
+
+    @Test
+    public void bulkLoad_laysOutOnceWhateverItsSize() throws Exception {
+        // One layout pass is linear in items and links, so a batch of any size costs one.
+        assertLoadLaysOutOnce(1500, 20000);
+        assertLoadLaysOutOnce(3000, 40000);
+    }
+
+    private static void assertLoadLaysOutOnce(int numItems, int numLinks) {
+        ChordDiagram chordDiagram = newLaidOutDiagram();
+        chordDiagram.setLabelMode(ChordDiagram.LABEL_MODE_CANVAS);
+        LayoutCounter counter = new LayoutCounter();
+        chordDiagram.setOnMetricsListener(counter);
+        chordDiagram.beginUpdate();
+        load(chordDiagram, numItems, numLinks);
+        chordDiagram.endUpdate();
+        assertEquals(1, counter.mNumLayouts);
+        assertEquals(numItems, chordDiagram.getGraph().getNumItems());
+        assertEquals(numLinks, chordDiagram.getGraph().getNumLinks());
+    }
+
+    /**
+     * Adds items and distinct links between them. Links join each item to the items a fixed
+     * set of offsets after it, so no pair repeats while numLinks / numItems < numItems / 2.
+     */
+    private static void load(ChordDiagram chordDiagram, int numItems, int numLinks) {
+        for (int i = 0; i < numItems; i++) {
+            chordDiagram.addItem("Item " + i, 0xFF000000 | (i * 0x010203));
+        }
+        for (int link = 0; link < numLinks; link++) {
+            int item = (link % numItems);
+            int offset = (1 + (link / numItems));
+            chordDiagram.addLink("Item " + item, "Item " + ((item + offset) % numItems));
+        }
+    }
+
+    private static ChordDiagram newLaidOutDiagram() {
+        ChordDiagram chordDiagram = new ChordDiagram(RuntimeEnvironment.application);
+        chordDiagram.measure(
+                View.MeasureSpec.makeMeasureSpec(SIZE, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(SIZE, View.MeasureSpec.EXACTLY));
+        chordDiagram.layout(0, 0, SIZE, SIZE);
+        return chordDiagram;
+    }
+
+    private static class LayoutCounter implements ChordDiagram.OnMetricsListener {
+        private int mNumLayouts;
+
+        @Override
+        public void onDrawMetrics(ChordDiagram chordDiagram, ChordDiagram.DrawMetrics metrics) {}
+
+        @Override
+        public void onLayoutMetrics(ChordDiagram chordDiagram,
+                                    ChordDiagram.LayoutMetrics metrics) {
+            mNumLayouts++;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.thomaslorincz.chord_diagram;
+
+import android.view.View;
+
+import com.thomaslorincz.chord_diagram.core.GraphFile;
+import com.thomaslorincz.chord_diagram.core.GraphStore;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests that check a data set opened from a graph file only has its labels created,
+ * and so decoded, once they are shown.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class DeferredLabelTest {
+    private static final int SIZE = 500;
+    private static final int NUM_ITEMS = 50;
+
+    @Test
+    public void openGraphFile_createsLabelsWhenShown() throws Exception {
+        File file = writeGraphFile();
+        ChordDiagram chordDiagram = new ChordDiagram(RuntimeEnvironment.application);
+        chordDiagram.setShowText(false);
+        chordDiagram.openGraphFile(file);
+        layout(chordDiagram);
+        assertEquals(0, chordDiagram.getLabelView().getChildCount());
+
+        chordDiagram.setShowText(true);
+        assertEquals(NUM_ITEMS, chordDiagram.getLabelView().getChildCount());
+
+        // Switching modes leaves the labels to be created again, in the new mode.
+        chordDiagram.setLabelMode(ChordDiagram.LABEL_MODE_CANVAS);
+        assertEquals(0, chordDiagram.getLabelView().getChildCount());
+        chordDiagram.setLabelMode(ChordDiagram.LABEL_MODE_VIEW);
+        assertEquals(NUM_ITEMS, chordDiagram.getLabelView().getChildCount());
+        file.delete();
+    }
+
+    @Test
+    public void openGraphFile_beforeLayoutCreatesLabelsOnLayout() throws Exception {
+        File file = writeGraphFile();
+        ChordDiagram chordDiagram = new ChordDiagram(RuntimeEnvironment.application);
+        chordDiagram.setShowText(true);
+        chordDiagram.openGraphFile(file);
+        assertEquals(0, chordDiagram.getLabelView().getChildCount());
+        layout(chordDiagram);
+        assertEquals(NUM_ITEMS, chordDiagram.getLabelView().getChildCount());
+        file.delete();
+    }
+
+    private static File writeGraphFile() throws Exception {
+        GraphStore graph = new GraphStore();
+        for (int i = 0; i < NUM_ITEMS; i++) {
+            graph.addItem("Item " + i, 0xFF000000 | (i * 0x050403));
+        }
+        for (int i = 0; i < NUM_ITEMS; i++) {
+            graph.addLink(i, (i + 1) % NUM_ITEMS);
+        }
+        File file = File.createTempFile("labels", ".bin", RuntimeEnvironment.application.getCacheDir());
+        GraphFile.write(graph, file);
+        return file;
+    }
+
+    private static void layout(ChordDiagram chordDiagram) {
+        chordDiagram.measure(
+                View.MeasureSpec.makeMeasureSpec(SIZE, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(SIZE, View.MeasureSpec.EXACTLY));
+        chordDiagram.layout(0, 0, SIZE, SIZE);
+    }
+}
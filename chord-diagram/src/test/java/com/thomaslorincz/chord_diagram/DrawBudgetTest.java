@@ -0,0 +1,167 @@
+package com.thomaslorincz.chord_diagram;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Path;
+import android.view.View;
+
+import com.thomaslorincz.chord_diagram.core.BezierTessellator;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.util.ReflectionHelpers;
+import org.robolectric.util.ReflectionHelpers.ClassParameter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests that draw the diagram onto a {@link RecordingCanvas} and hold it to a
+ * budget of draw calls, so that a change which draws chords segment by segment, or rebuilds
+ * paths on every frame, fails here rather than on a device.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class DrawBudgetTest {
+    private static final int SIZE = 500;
+    private static final int NUM_ITEMS = 40;
+    private static final int LINKS_PER_ITEM = 7; // Less than NUM_ITEMS / 2, so pairs are distinct
+    private static final int NUM_LINKS = (NUM_ITEMS * LINKS_PER_ITEM);
+
+    private final RecordingCanvas mCanvas = new RecordingCanvas(); // Reset before each draw
+
+    @Test
+    public void arcStyle_drawCallsWithinBudget() throws Exception {
+        ChordDiagram chordDiagram = newLaidOutDiagram(ChordDiagram.ITEM_STYLE_ARC);
+        RecordingCanvas canvas = drawDiagram(chordDiagram);
+        assertTrue("Too many draw calls: " + canvas.mNumDrawCalls,
+                canvas.mNumDrawCalls <= (NUM_ITEMS + NUM_LINKS));
+        // The ring is stroked, so only the chords are paths.
+        assertEquals(NUM_LINKS, canvas.mNumPathDraws);
+    }
+
+    @Test
+    public void nodeStyle_drawCallsWithinBudget() throws Exception {
+        ChordDiagram chordDiagram = newLaidOutDiagram(ChordDiagram.ITEM_STYLE_NODE);
+        RecordingCanvas canvas = drawDiagram(chordDiagram);
+        assertTrue("Too many draw calls: " + canvas.mNumDrawCalls,
+                canvas.mNumDrawCalls <= (NUM_ITEMS + NUM_LINKS));
+    }
+
+    @Test
+    public void ribbonStyle_drawsAllLinksInOneCall() throws Exception {
+        ChordDiagram chordDiagram = newLaidOutDiagram(ChordDiagram.ITEM_STYLE_ARC);
+        chordDiagram.setConnectionStyle(ChordDiagram.CONNECTION_STYLE_RIBBON);
+        RecordingCanvas canvas = drawDiagram(chordDiagram);
+        assertEquals(1, canvas.mNumVertexDraws);
+        assertEquals(0, canvas.mNumPathDraws);
+        assertEquals(NUM_ITEMS + 1, canvas.mNumDrawCalls);
+
+        // Nodes are always joined by lines.
+        chordDiagram.setItemStyle(ChordDiagram.ITEM_STYLE_NODE);
+        canvas = drawDiagram(chordDiagram);
+        assertEquals(0, canvas.mNumVertexDraws);
+        assertEquals(NUM_LINKS, canvas.mNumPathDraws);
+    }
+
+    @Test
+    public void ribbonHighlight_drawsItemRibbonsInOneCall() throws Exception {
+        ChordDiagram chordDiagram = newLaidOutDiagram(ChordDiagram.ITEM_STYLE_ARC);
+        chordDiagram.setConnectionStyle(ChordDiagram.CONNECTION_STYLE_RIBBON);
+        chordDiagram.setHighlightedItem("Item 3");
+        mCanvas.reset();
+        callOnDraw(chordDiagram.getHighlightView(), mCanvas);
+        assertEquals(1, mCanvas.mNumVertexDraws);
+        assertEquals(0, mCanvas.mNumPathDraws);
+        assertEquals(2, mCanvas.mNumDrawCalls); // The item's arc and its ribbons
+    }
+
+    @Test
+    public void steadyStateDraw_reusesPaths() throws Exception {
+        ChordDiagram chordDiagram = newLaidOutDiagram(ChordDiagram.ITEM_STYLE_ARC);
+        RecordingCanvas canvas = drawDiagram(chordDiagram);
+        int numDrawCalls = canvas.mNumDrawCalls;
+        List<Path> paths = new ArrayList<>(canvas.mPaths);
+        canvas = drawDiagram(chordDiagram);
+        assertEquals(numDrawCalls, canvas.mNumDrawCalls);
+        assertEquals(paths.size(), canvas.mPaths.size());
+        assertTrue("Paths were rebuilt between frames", canvas.mPaths.containsAll(paths));
+    }
+
+    @Test
+    public void drawCalls_doNotGrowWithSegments() throws Exception {
+        ChordDiagram chordDiagram = newLaidOutDiagram(ChordDiagram.ITEM_STYLE_ARC);
+        RecordingMetricsListener listener = new RecordingMetricsListener();
+        chordDiagram.setOnMetricsListener(listener);
+
+        chordDiagram.setTessellationTolerance(BezierTessellator.DEFAULT_TOLERANCE);
+        int fineDrawCalls = drawDiagram(chordDiagram).mNumDrawCalls;
+        int fineSegments = listener.mNumSegments;
+        assertEquals(fineDrawCalls, listener.mNumDrawCalls);
+        assertTrue(fineSegments >= NUM_LINKS);
+        assertTrue(fineSegments <= (NUM_LINKS * BezierTessellator.MAX_SEGMENTS));
+
+        chordDiagram.setTessellationTolerance(8 * BezierTessellator.DEFAULT_TOLERANCE);
+        int coarseDrawCalls = drawDiagram(chordDiagram).mNumDrawCalls;
+        assertTrue(listener.mNumSegments < fineSegments);
+        assertEquals(fineDrawCalls, coarseDrawCalls);
+    }
+
+    private static ChordDiagram newLaidOutDiagram(int itemStyle) {
+        ChordDiagram chordDiagram = new ChordDiagram(RuntimeEnvironment.application);
+        chordDiagram.setItemStyle(itemStyle);
+        chordDiagram.beginUpdate();
+        for (int i = 0; i < NUM_ITEMS; i++) {
+            chordDiagram.addItem("Item " + i, Color.HSVToColor(new float[] {i * 9.0f, 1.0f, 1.0f}));
+        }
+        for (int offset = 1; offset <= LINKS_PER_ITEM; offset++) {
+            for (int i = 0; i < NUM_ITEMS; i++) {
+                chordDiagram.addLink("Item " + i, "Item " + ((i + offset) % NUM_ITEMS));
+            }
+        }
+        chordDiagram.endUpdate();
+        chordDiagram.measure(
+                View.MeasureSpec.makeMeasureSpec(SIZE, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(SIZE, View.MeasureSpec.EXACTLY));
+        chordDiagram.layout(0, 0, SIZE, SIZE);
+        return chordDiagram;
+    }
+
+    /**
+     * Draws a frame of the diagram onto the test's canvas, clearing what it recorded before.
+     */
+    private RecordingCanvas drawDiagram(ChordDiagram chordDiagram) {
+        mCanvas.reset();
+        callOnDraw(chordDiagram.getDiagramView(), mCanvas);
+        return mCanvas;
+    }
+
+    /**
+     * Calls the view's {@code onDraw()} directly. Robolectric's {@code View.draw()} only draws
+     * the background, so it would leave the canvas empty and every budget trivially met.
+     */
+    private static void callOnDraw(View view, Canvas canvas) {
+        ReflectionHelpers.callInstanceMethod(view, "onDraw",
+                ClassParameter.from(Canvas.class, canvas));
+    }
+
+    private static class RecordingMetricsListener implements ChordDiagram.OnMetricsListener {
+        private int mNumDrawCalls;
+        private int mNumSegments;
+
+        @Override
+        public void onDrawMetrics(ChordDiagram chordDiagram, ChordDiagram.DrawMetrics metrics) {
+            mNumDrawCalls = metrics.getNumDrawCalls();
+            mNumSegments = metrics.getNumSegments();
+        }
+
+        @Override
+        public void onLayoutMetrics(ChordDiagram chordDiagram,
+                                    ChordDiagram.LayoutMetrics metrics) {}
+    }
+}
@@ -0,0 +1,267 @@
+package com.thomaslorincz.chord_diagram;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Picture;
+import android.graphics.PorterDuff;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * RecordingCanvas counts the draw calls made to it instead of drawing, so tests can check what
+ * a view draws without a display. Paths are recorded by identity, so a test can tell whether
+ * the same paths are drawn from frame to frame or new ones are built. Every public draw method
+ * of {@link Canvas} is overridden, so a change that moves drawing to another method is still
+ * counted, and nothing reaches the real canvas.
+ */
+class RecordingCanvas extends Canvas {
+    int mNumDrawCalls;
+    int mNumPathDraws;
+    int mNumVertexDraws;
+    final Set<Path> mPaths = Collections.newSetFromMap(new IdentityHashMap<Path, Boolean>());
+
+    void reset() {
+        mNumDrawCalls = 0;
+        mNumPathDraws = 0;
+        mNumVertexDraws = 0;
+        mPaths.clear();
+    }
+
+    @Override
+    public void drawPath(Path path, Paint paint) {
+        mNumDrawCalls++;
+        mNumPathDraws++;
+        mPaths.add(path);
+    }
+
+    @Override
+    public void drawPaint(Paint paint) {
+        mNumDrawCalls++;
+    }
+
+    @Override
+    public void drawColor(int color) {
+        mNumDrawCalls++;
+    }
+
+    @Override
+    public void drawColor(int color, PorterDuff.Mode mode) {
+        mNumDrawCalls++;
+    }
+
+    @Override
+    public void drawARGB(int a, int r, int g, int b) {
+        mNumDrawCalls++;
+    }
+
+    @Override
+    public void drawRGB(int r, int g, int b) {
+        mNumDrawCalls++;
+    }
+
+    @Override
+    public void drawPoint(float x, float y, Paint paint) {
+        mNumDrawCalls++;
+    }
+
+    @Override
+    public void drawPoints(float[] pts, int offset, int count, Paint paint) {
+        mNumDrawCalls++;
+    }
+
+    @Override
+    public void drawPoints(float[] pts, Paint paint) {
+        mNumDrawCalls++;
+    }
+
+    @Override
+    public void drawCircle(float cx, float cy, float radius, Paint paint) {
+        mNumDrawCalls++;
+    }
+
+    @Override
+    public void drawArc(RectF oval, float startAngle, float sweepAngle, boolean useCenter,
+                        Paint paint) {
+        mNumDrawCalls++;
+    }
+
+    @Override
+    public void drawArc(float left, float top, float right, float bottom, float startAngle,
+                        float sweepAngle, boolean useCenter, Paint paint) {
+        mNumDrawCalls++;
+    }
+
+    @Override
+    public void drawOval(RectF oval, Paint paint) {
+        mNumDrawCalls++;
+    }
+
+    @Override
+    public void drawOval(float left, float top, float right, float bottom, Paint paint) {
+        mNumDrawCalls++;
+    }
+
+    @Override
+    public void drawRoundRect(RectF rect, float rx, float ry, Paint paint) {
+        mNumDrawCalls++;
+    }
+
+    @Override
+    public void drawRoundRect(float left, float top, float right, float bottom, float rx,
+                              float ry, Paint paint) {
+        mNumDrawCalls++;
+    }
+
+    @Override
+    public void drawRect(Rect rect, Paint paint) {
+        mNumDrawCalls++;
+    }
+
+    @Override
+    public void drawRect(RectF rect, Paint paint) {
+        mNumDrawCalls++;
+    }
+
+    @Override
+    public void drawRect(float left, float top, float right, float bottom, Paint paint) {
+        mNumDrawCalls++;
+    }
+
+    @Override
+    public void drawLine(float startX, float startY, float stopX, float stopY, Paint paint) {
+        mNumDrawCalls++;
+    }
+
+    @Override
+    public void drawLines(float[] pts, int offset, int count, Paint paint) {
+        mNumDrawCalls++;
+    }
+
+    @Override
+    public void drawLines(float[] pts, Paint paint) {
+        mNumDrawCalls++;
+    }
+
+    @Override
+    public void drawText(String text, float x, float y, Paint paint) {
+        mNumDrawCalls++;
+    }
+
+    @Override
+    public void drawText(String text, int start, int end, float x, float y, Paint paint) {
+        mNumDrawCalls++;
+    }
+
+    @Override
+    public void drawText(char[] text, int index, int count, float x, float y, Paint paint) {
+        mNumDrawCalls++;
+    }
+
+    @Override
+    public void drawText(CharSequence text, int start, int end, float x, float y,
+                         Paint paint) {
+        mNumDrawCalls++;
+    }
+
+    @Override
+    public void drawTextRun(char[] text, int index, int count, int contextIndex,
+                            int contextCount, float x, float y, boolean isRtl, Paint paint) {
+        mNumDrawCalls++;
+    }
+
+    @Override
+    public void drawTextRun(CharSequence text, int start, int end, int contextStart,
+                            int contextEnd, float x, float y, boolean isRtl, Paint paint) {
+        mNumDrawCalls++;
+    }
+
+    @Override
+    public void drawPosText(char[] text, int index, int count, float[] pos, Paint paint) {
+        mNumDrawCalls++;
+    }
+
+    @Override
+    public void drawPosText(String text, float[] pos, Paint paint) {
+        mNumDrawCalls++;
+    }
+
+    @Override
+    public void drawTextOnPath(char[] text, int index, int count, Path path, float hOffset,
+                               float vOffset, Paint paint) {
+        mNumDrawCalls++;
+    }
+
+    @Override
+    public void drawTextOnPath(String text, Path path, float hOffset, float vOffset,
+                               Paint paint) {
+        mNumDrawCalls++;
+    }
+
+    @Override
+    public void drawBitmap(Bitmap bitmap, float left, float top, Paint paint) {
+        mNumDrawCalls++;
+    }
+
+    @Override
+    public void drawBitmap(Bitmap bitmap, Rect src, RectF dst, Paint paint) {
+        mNumDrawCalls++;
+    }
+
+    @Override
+    public void drawBitmap(Bitmap bitmap, Rect src, Rect dst, Paint paint) {
+        mNumDrawCalls++;
+    }
+
+    @Override
+    public void drawBitmap(Bitmap bitmap, Matrix matrix, Paint paint) {
+        mNumDrawCalls++;
+    }
+
+    @Override
+    public void drawBitmap(int[] colors, int offset, int stride, float x, float y, int width,
+                           int height, boolean hasAlpha, Paint paint) {
+        mNumDrawCalls++;
+    }
+
+    @Override
+    public void drawBitmap(int[] colors, int offset, int stride, int x, int y, int width,
+                           int height, boolean hasAlpha, Paint paint) {
+        mNumDrawCalls++;
+    }
+
+    @Override
+    public void drawBitmapMesh(Bitmap bitmap, int meshWidth, int meshHeight, float[] verts,
+                               int vertOffset, int[] colors, int colorOffset, Paint paint) {
+        mNumDrawCalls++;
+    }
+
+    @Override
+    public void drawPicture(Picture picture) {
+        mNumDrawCalls++;
+    }
+
+    @Override
+    public void drawPicture(Picture picture, RectF dst) {
+        mNumDrawCalls++;
+    }
+
+    @Override
+    public void drawPicture(Picture picture, Rect dst) {
+        mNumDrawCalls++;
+    }
+
+    @Override
+    public void drawVertices(VertexMode mode, int vertexCount, float[] verts, int vertOffset,
+                             float[] texs, int texOffset, int[] colors, int colorOffset,
+                             short[] indices, int indexOffset, int indexCount, Paint paint) {
+        mNumDrawCalls++;
+        mNumVertexDraws++;
+    }
+}